@@ -1,7 +1,6 @@
 import java.awt.BorderLayout;
 import java.awt.FlowLayout;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
 
@@ -15,6 +14,8 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
@@ -24,15 +25,22 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
-import boid.FlockingBoid;
-import boid.FoodBoid;
-import boid.PredatorBoid;
-import boid.StaticPredatorBoid;
-import boid.Boid;
+import boid.NeighbourCache;
+import boid.Species;
 import drawing.Canvas;
+import simulation.Checkpoint;
+import simulation.FixedStepScheduler;
+import simulation.FlockingEngine;
+import simulation.LevelOfDetail;
+import simulation.RenderState;
+import simulation.SimulationCommand;
+import simulation.TickStats;
+import simulation.TrajectoryRecorder;
+import simulation.TrajectoryReplay;
 import tools.Utils;
 
 /**
@@ -42,8 +50,10 @@ public class FlockingMain {
     // **************************************************
     // Fields
     // **************************************************
-	//Polymorphic array of boids
-	private List<Boid> boids = new ArrayList<Boid>();
+	//Runs the simulation - the GUI only draws it and passes on control changes
+	private final FlockingEngine engine = new FlockingEngine(simulationThreads);
+	//Values shared by every flocking boid - the sliders change them directly, as a change is a single write
+	private final Species flockingSpecies = engine.getFlockingSpecies();
 	private final int WINDOW_X_SIZE = Utils.SCREEN_X_SIZE;
 	private final int WINDOW_Y_SIZE = Utils.SCREEN_Y_SIZE;
 	
@@ -66,9 +76,39 @@ public class FlockingMain {
 	static int sliderMax = (int) (sliderSensitivity * sliderResolution);
 	static int sliderMin = 0;
 
+	//Number of threads the boid behaviours are spread across each frame (1 runs them on the game loop thread)
+	static int simulationThreads = Runtime.getRuntime().availableProcessors();
+
+	//Set from the command line - a file to record every frame to, or a recording to play back instead of simulating
+	static String recordFileName = "";
+	static String replayFileName = "";
+	static int replayFrom = 0;
+	//Seconds between printed tick statistics (0 leaves them off until enabled over JMX)
+	static int statsPeriod = 0;
+	//Time step each tick moves the boids by (milliseconds)
+	static int stepMillis = 20;
+	//Rate the render thread draws at
+	static int framesPerSecond = 60;
+	//FixedStepScheduler.REAL_TIME, a number of ticks to run for every frame drawn, or FixedStepScheduler.UNTHROTTLED
+	static int stepsPerFrame = FixedStepScheduler.REAL_TIME;
+	//When the flocking boids are drawn as a heatmap instead of one by one
+	static int detailMode = LevelOfDetail.AUTO;
+	static int detailPopulation = LevelOfDetail.DEFAULT_POPULATION;
+	static int detailFrameMillis = LevelOfDetail.DEFAULT_FRAME_MILLIS;
+	static boolean heatmapHeadings = false;
+	//Distance beyond the radius that neighbour lists cover (0 searches the grid every tick)
+	static double neighbourSkin = 0;
+	//Most neighbours each flocking boid steers by (0 steers by every boid within the radius)
+	static int neighbourLimit = 0;
+
 	public FlockingMain() {
-		//boids list is synchronised to avoid multiple threads interacting with it - Contains all boids active in the simulation
-		boids = (List<Boid>) Collections.synchronizedList(boids);
+		//Scaled in the same way as the sliders' listeners, so boids added before a slider moves match the sliders
+		flockingSpecies.set(initialRadius / 4, initialSpeed / 4, initialCohesion, initialSeparation, initialAlignment);
+		flockingSpecies.setNeighbourLimit(neighbourLimit);
+		if (neighbourSkin > 0) {
+			//Moving the radius slider changes the species radius, which builds the lists again on the next tick
+			engine.getStore().setNeighbourCache(new NeighbourCache(neighbourSkin));
+		}
 		
 		// **************************************************
 		// Frames, Canvas, and JPanel Initialisation
@@ -111,8 +151,8 @@ public class FlockingMain {
 		
 		//1.
 		//**********SAVE/LOAD ComboBox***********
-		//Contains the options to save or load the flocking controls
-		String[] saveLoad = new String[] { "Save Controls", "Load Controls" };
+		//Contains the options to save or load the flocking controls, or every boid in the simulation
+		String[] saveLoad = new String[] { "Save Controls", "Load Controls", "Save Simulation", "Load Simulation" };
 		JComboBox<String> fileOptions = new JComboBox<>(saveLoad);
 		upperControlPanel.add(fileOptions);
 
@@ -211,14 +251,12 @@ public class FlockingMain {
 		
 		speedSlider.addChangeListener(new ChangeListener() {
 			public void stateChanged(ChangeEvent e) {
-				for (Boid s : boids) {
-					if (s.getClass() == FlockingBoid.class) {
-						s.setSpeed(speedSlider.getValue()/4);
-						//String is shortened to avoid bug where some of the value isn't displayed
-						speedLabel.setText("Sp: " + speedSlider.getValue()/4);
-						//Speed is limited between 0 and 250 by dividing the sliders resolution by 4.
-					}
-				}
+				//Speed is limited between 0 and 250 by dividing the sliders resolution by 4.
+				int speed = speedSlider.getValue() / 4;
+				//String is shortened to avoid bug where some of the value isn't displayed
+				speedLabel.setText("Sp: " + speed);
+				//Every flocking boid picks the new speed up at the start of the next frame
+				flockingSpecies.setSpeed(speed);
 			}
 		});
 
@@ -227,14 +265,13 @@ public class FlockingMain {
 			@Override
 			//Anonymous class used as action listener for multiple buttons
 			public void actionPerformed(ActionEvent e) {
-				//Instantiates a new boid at the centre of the screen with the slider values applied to it
-				Boid t = new FlockingBoid(canvas, 400, 400);
-				boids.add(t);
-				t.setRadius(radiusSlider.getValue()/4);
-				t.setSpeed(speedSlider.getValue()/4);
-				t.setAlignmentControl(alignmentSlider.getValue());
-				t.setSeparationControl(separationSlider.getValue());
-				t.setcohesionControl(cohesionSlider.getValue());
+				//Instantiates a new boid at the centre of the screen, sharing the slider values through the flocking species
+				//The boid is created by the game loop so the store isn't changed mid-frame
+				engine.post(new SimulationCommand() {
+					public void apply(FlockingEngine engine) {
+						engine.addFlockingBoid(400, 400, flockingSpecies);
+					}
+				});
 			}
 		});
 
@@ -251,9 +288,10 @@ public class FlockingMain {
 				JComboBox<String> combo = (JComboBox<String>) event.getSource();
 				String option = (String) combo.getSelectedItem();
 				String fileName = "savedSettings.txt";
+				String simulationFileName = "savedSimulation.flock";
 				//**********SAVING METHOD**********
 				if (option.equals("Save Controls")) {
-					if (boids.size() > 0) {
+					if (engine.getBoidCount() > 0) {
 						
 						double currentCohesion = cohesionSlider.getValue();
 						double currentSeparation = separationSlider.getValue();
@@ -299,14 +337,52 @@ public class FlockingMain {
 						 System.exit(0);
 					}//end try/catch
 					
-					for (Boid s : boids) {
-						//Values are rescaled by multiplying by slider resolution
-						s.setcohesionControl(Double.valueOf(Values.get(0)) / sliderResolution);
-						s.setSeparationControl(Double.valueOf(Values.get(1)) / sliderResolution);
-						s.setAlignmentControl(Double.valueOf(Values.get(2)) / sliderResolution);
-					}//end for
+					//Values are rescaled by multiplying by slider resolution
+					//Set together, so no frame sees some of the loaded values but not the others
+					flockingSpecies.setSteering(Double.valueOf(Values.get(0)) / sliderResolution,
+							Double.valueOf(Values.get(1)) / sliderResolution,
+							Double.valueOf(Values.get(2)) / sliderResolution);
 					
 					displayLoadedMessage(Values,frame);
+					
+					//**********SAVING THE SIMULATION**********
+				} else if (option.equals("Save Simulation")) {
+					//The copy is taken between frames by the game loop, and the file is written in the background
+					//so neither the game loop nor this listener waits for the disk
+					engine.post(new SimulationCommand() {
+						public void apply(FlockingEngine engine) {
+							final Checkpoint checkpoint = engine.checkpoint();
+							new Thread(new Runnable() {
+								public void run() {
+									String message;
+									try {
+										checkpoint.write(Paths.get(simulationFileName));
+										message = checkpoint.getCount() + " boids successfully saved!";
+									} catch (IOException e) {
+										e.printStackTrace();
+										message = "Simulation could not be saved: " + e.getMessage();
+									}
+									displayMessageLater(message, frame);
+								}
+							}, "Checkpoint writer").start();
+						}
+					});
+					
+					//**********LOADING THE SIMULATION**********
+				} else if (option.equals("Load Simulation")) {
+					try {
+						final Checkpoint checkpoint = Checkpoint.read(Paths.get(simulationFileName));
+						//Restored by the simulation thread at the start of its next tick
+						engine.post(new SimulationCommand() {
+							public void apply(FlockingEngine engine) {
+								engine.restore(checkpoint);
+							}
+						});
+						JOptionPane.showMessageDialog(frame, checkpoint.getCount() + " boids successfully loaded!");
+					} catch (IOException e) {
+						e.printStackTrace();
+						JOptionPane.showMessageDialog(frame, "Simulation could not be loaded: " + e.getMessage());
+					}//end try/catch
 				}//end if
 			}
 		});
@@ -321,7 +397,11 @@ public class FlockingMain {
 
 				switch (option) {
 				case "Add Predator":
-					boids.add(new PredatorBoid(canvas, 300, 400));
+					engine.post(new SimulationCommand() {
+						public void apply(FlockingEngine engine) {
+							engine.addPredator(300, 400);
+						}
+					});
 					foodEnable = false;
 					staticPredatorEnable = false;
 					break;
@@ -336,15 +416,13 @@ public class FlockingMain {
 					foodEnable = false;
 					break;
 				case "Add 10X Flocking Boids":
-					for (int i = 0; i < 9; i++) {
-						Boid t = new FlockingBoid(canvas, 400, 400);
-						boids.add(t);
-						t.setRadius(radiusSlider.getValue() / 2);
-						t.setSpeed(speedSlider.getValue() / 4);
-						t.setAlignmentControl(alignmentSlider.getValue());
-						t.setSeparationControl(separationSlider.getValue());
-						t.setcohesionControl(cohesionSlider.getValue());
-					}
+					engine.post(new SimulationCommand() {
+						public void apply(FlockingEngine engine) {
+							for (int i = 0; i < 10; i++) {
+								engine.addFlockingBoid(400, 400, flockingSpecies);
+							}
+						}
+					});
 					foodEnable = false;
 					staticPredatorEnable = false;
 					break;
@@ -356,10 +434,12 @@ public class FlockingMain {
 		clearButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				for (Boid s : boids) {
-					s.undraw();
-				}
-				boids.clear();
+				//Cleared by the simulation thread at the start of its next tick
+				engine.post(new SimulationCommand() {
+					public void apply(FlockingEngine engine) {
+						engine.clear();
+					}
+				});
 			}
 
 		});
@@ -374,11 +454,9 @@ public class FlockingMain {
 				double val = (double) (cohesionSlider.getValue()) / sliderResolution;
 				//Slider resolution used to scale the value to be between 0 and 1
 				initialCohesion = val;
-				for (Boid s : boids) {
-					s.setcohesionControl(val);
-					//String truncates to fix bug causing some of the value to not be displayed
-					cohesionLabel.setText("C " + String.format("%.2f", val));
-				}
+				//String truncates to fix bug causing some of the value to not be displayed
+				cohesionLabel.setText("C " + String.format("%.2f", val));
+				flockingSpecies.setCohesion(val);
 			}
 		});
 
@@ -386,10 +464,8 @@ public class FlockingMain {
 			public void stateChanged(ChangeEvent e) {
 				double val = (double) (alignmentSlider.getValue()) / sliderResolution;
 				initialAlignment = val;
-				for (Boid s : boids) {
-					s.setAlignmentControl(val);
-					alignmentLabel.setText("A " + String.format("%.2f", val));
-				}
+				alignmentLabel.setText("A " + String.format("%.2f", val));
+				flockingSpecies.setAlignment(val);
 			}
 		});
 
@@ -397,23 +473,18 @@ public class FlockingMain {
 			public void stateChanged(ChangeEvent e) {
 				double val = (double) (separationSlider.getValue()) / sliderResolution;
 				initialSeparation = val;
-				for (Boid s : boids) {
-					s.setSeparationControl(val);
-					separationLabel.setText("S " + String.format("%.2f", val));
-				}
+				separationLabel.setText("S " + String.format("%.2f", val));
+				flockingSpecies.setSeparation(val);
 			}
 		});
 
 		radiusSlider.addChangeListener(new ChangeListener() {
 			public void stateChanged(ChangeEvent e) {
-				for (Boid s : boids) {
-					if (s.getClass() != PredatorBoid.class) {
-						//Division by 4 limits the radius between 0 and 250.
-						//Values larger than 250 with separation cause bug in which boids congregate around the top of the canvas
-						s.setRadius(radiusSlider.getValue() / 4);
-						radiusLabel.setText("R " + radiusSlider.getValue() / 4);
-					}
-				}
+				//Division by 4 limits the radius between 0 and 250.
+				//Values larger than 250 with separation cause bug in which boids congregate around the top of the canvas
+				int radius = radiusSlider.getValue() / 4;
+				radiusLabel.setText("R " + radius);
+				flockingSpecies.setRadius(radius);
 			}
 		});
 
@@ -423,66 +494,171 @@ public class FlockingMain {
 		canvas.addMouseListener(new MouseAdapter() {
 			//Draws the relevant boid at the mouse's click location
 			public void mousePressed(MouseEvent e) {
-				int x = e.getX();
-				int y = e.getY();
+				final int x = e.getX();
+				final int y = e.getY();
 				//what gets drawn is dependent on the 2 boolean values state
 				if (staticPredatorEnable == true) {
-					boids.add(new StaticPredatorBoid(canvas, x, y));
+					engine.post(new SimulationCommand() {
+						public void apply(FlockingEngine engine) {
+							engine.addStaticPredator(x, y);
+						}
+					});
 				}
 				else if (foodEnable == true) {
-					boids.add(new FoodBoid(canvas, x, y));
+					engine.post(new SimulationCommand() {
+						public void apply(FlockingEngine engine) {
+							engine.addFood(x, y);
+						}
+					});
 				}//end if
 			}
 		});
 		
 		//******************************
 		
-		//To determine the time between frames
-		int deltaTime = 20;
-		gameLoop(deltaTime);
+		gameLoop(canvas);
 	}
 
     /**
-    * Used to control the methods needed to update the simulation frame by frame
+    * Used to control the methods needed to update the simulation frame by frame. The simulation
+    * runs on this thread at a fixed time step, while a separate thread draws it. A recording
+    * given on the command line is played back the same way in place of the simulation.
     *
-    * @param deltaTime The time used to pause in between frame (milliseconds)
+    * @param canvas The canvas the boids are drawn on
     */
-	private void gameLoop(int deltaTime) {
-		boolean continueRunning = true;
+	private void gameLoop(final Canvas canvas) {
+		final FixedStepScheduler scheduler = new FixedStepScheduler(engine, stepMillis);
+		scheduler.setStepsPerFrame(stepsPerFrame);
+		if (!replayFileName.isEmpty()) {
+			TrajectoryReplay replay = startReplay();
+			if (replay == null) {
+				return;
+			}
+			scheduler.setReplay(replay, replayFrom);
+		} else if (!recordFileName.isEmpty()) {
+			scheduler.setRecorder(startRecorder());
+		}
+		final TickStats stats = startStats();
 		
-		while (continueRunning) {
-			Utils.pause(deltaTime);
-			// Synchronisation used to prevent methods interleaving on boids
-			synchronized (boids) {
-	
-				for (Boid s : boids) {
-					s.undraw();
-				}
-				
-				for (Boid s : boids) {
-					s.flee(boids);
-				}
-	
-				for (Boid s : boids) {
-					s.flock(boids);
-				}
-				for (Boid s : boids) {
-					s.hunt(boids);
-				}
-				for (Boid s : boids) {
-					s.update(deltaTime);
-				}
-				for (int i = 0; i < boids.size(); i++) {
-					if (boids.get(i).isEaten() == true) {
-						boids.remove(i);
-					}
-				}
-				for (Boid s : boids) {
-					s.draw();
-				}
+		Thread renderThread = new Thread(new Runnable() {
+			public void run() {
+				renderLoop(scheduler, stats, canvas);
 			}
+		}, "Render");
+		//Closing the window ends the program whatever the render thread is doing
+		renderThread.setDaemon(true);
+		renderThread.start();
+		
+		scheduler.run();
+	}
+
+    /**
+    * Draws the newest simulation step at the display rate, blending between the last two steps
+    * so the boids move smoothly even when frames and steps don't line up
+    *
+    * @param scheduler The scheduler running the simulation
+    * @param stats The statistics the drawing time is added to
+    * @param canvas The canvas the boids are drawn on
+    */
+	private void renderLoop(FixedStepScheduler scheduler, TickStats stats, Canvas canvas) {
+		long frameNanos = 1000000000L / framesPerSecond;
+		long nextFrame = System.nanoTime();
+		RenderState state = new RenderState();
+		LevelOfDetail detail = new LevelOfDetail(WINDOW_X_SIZE, WINDOW_Y_SIZE);
+		detail.setMode(detailMode);
+		detail.setPopulationLimit(detailPopulation);
+		detail.setFrameMillisLimit(detailFrameMillis);
+		detail.setShowHeading(heatmapHeadings);
+		while (true) {
+			//Statistics can be switched on and off over JMX at any time, so this is checked every frame
+			boolean timed = stats.isEnabled();
+			canvas.setPaintTimes(timed ? stats.getHistogram(TickStats.PAINT) : null);
+			long time = System.nanoTime();
+			state = scheduler.takeFrame(state);
+			canvas.startFrame();
+			//Large flocks are drawn as a heatmap instead of boid by boid
+			detail.draw(state, canvas, scheduler.getAlpha(state, time));
+			//One repaint for the whole frame, painted from a copy so the painter never holds up the next frame
+			canvas.showFrame();
+			if (timed) {
+				stats.lap(TickStats.DRAW, time);
+				stats.setCanvasLines(canvas.getLineCount() + canvas.getStampCount());
+			}
+			
+			nextFrame += frameNanos;
+			long wait = nextFrame - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			} else {
+				//Frames that were missed are skipped rather than drawn back to back
+				nextFrame = System.nanoTime();
+			}
+		}
+	}
+
+    /**
+    * Publishes the engine's tick statistics over JMX, and turns them on straight away if a
+    * logging period was given on the command line
+    *
+    * @return the statistics
+    */
+	private TickStats startStats() {
+		TickStats stats = engine.getStats();
+		try {
+			stats.register();
+		} catch (IllegalStateException e) {
+			//The simulation runs the same without JMX
+			System.out.println(e.getMessage());
+		}
+		if (statsPeriod > 0) {
+			stats.setEnabled(true);
+			stats.startLogging(statsPeriod);
+		}
+		return stats;
+	}
+
+    /**
+    * Opens the recording given on the command line. It is only read, so it is left open until
+    * the program exits rather than closed from a shutdown hook.
+    *
+    * @return the recording, or null if it can't be opened
+    */
+	private TrajectoryReplay startReplay() {
+		try {
+			return new TrajectoryReplay(Paths.get(replayFileName));
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Recording could not be played: \"" + replayFileName + "\"");
+			return null;
 		}
 	}
+
+    /**
+    * Opens the file every frame is recorded to. The window closes the program with System.exit,
+    * so the recording is finished from a shutdown hook.
+    *
+    * @return the recorder, or null if the file can't be created
+    */
+	private TrajectoryRecorder startRecorder() {
+		final TrajectoryRecorder recorder;
+		try {
+			recorder = new TrajectoryRecorder(Paths.get(recordFileName), WINDOW_X_SIZE, WINDOW_Y_SIZE);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Recording could not be started: \"" + recordFileName + "\"");
+			return null;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				try {
+					recorder.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}, "Recording closer"));
+		return recorder;
+	}
 	
     /**
     * Displays the dialog box to confirm contents have been successfully saved
@@ -514,7 +690,67 @@ public class FlockingMain {
 		JOptionPane.showMessageDialog(frame, displayMessage);
 	}
 
+    /**
+    * Displays a dialog box from a thread other than the Swing event thread
+    *
+    * @param message The message to display
+    * @param frame The frame in which the dialog box is being displayed
+    */
+	private void displayMessageLater(final String message, final JFrame frame) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				JOptionPane.showMessageDialog(frame, message);
+			}
+		});
+	}
+
 	public static void main(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "--record":
+				recordFileName = args[i + 1];
+				break;
+			case "--replay":
+				replayFileName = args[i + 1];
+				break;
+			case "--from":
+				replayFrom = Integer.parseInt(args[i + 1]);
+				break;
+			case "--stats":
+				statsPeriod = Integer.parseInt(args[i + 1]);
+				break;
+			case "--step-ms":
+				stepMillis = Integer.parseInt(args[i + 1]);
+				break;
+			case "--fps":
+				framesPerSecond = Integer.parseInt(args[i + 1]);
+				break;
+			case "--fast-forward":
+				stepsPerFrame = args[i + 1].equals("max") ? FixedStepScheduler.UNTHROTTLED : Integer.parseInt(args[i + 1]);
+				break;
+			case "--lod":
+				detailMode = args[i + 1].equals("on") ? LevelOfDetail.DENSITY
+						: args[i + 1].equals("off") ? LevelOfDetail.INDIVIDUAL : LevelOfDetail.AUTO;
+				break;
+			case "--lod-boids":
+				detailPopulation = Integer.parseInt(args[i + 1]);
+				break;
+			case "--lod-ms":
+				detailFrameMillis = Integer.parseInt(args[i + 1]);
+				break;
+			case "--heatmap":
+				heatmapHeadings = args[i + 1].equals("heading");
+				break;
+			case "--neighbour-skin":
+				neighbourSkin = Double.parseDouble(args[i + 1]);
+				break;
+			case "--neighbour-limit":
+				neighbourLimit = Integer.parseInt(args[i + 1]);
+				break;
+			default:
+				System.out.println("Unknown option: " + args[i]);
+			}
+		}
 		new FlockingMain();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+
+import simulation.FlockingEngine;
+import simulation.HeadlessRunner;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Self-check that a warmed-up tick creates no objects, run from the command line with no extra
+ * libraries.
+ *
+ * <P>Each flocking path (angle and vector steering, the neighbour kernel, Verlet neighbour lists,
+ * the neighbour limit and the parallel tick) is run in its own engine. Once the engine has been
+ * warmed up, the bytes allocated by every thread are read before and after a run of ticks, less
+ * what reading the counters costs, and the check fails if any were allocated.
+ *
+ * <P>Predators and food are only added to the single-threaded runs. Eaten boids change the number
+ * of boids, which makes the parallel tick split the flock into new ranges.
+ *
+ * <P>Usage: java benchmark.AllocationCheck [--option value]...
+ * <BR>Options (defaults in brackets): --flocking (2000), --warmup ticks (2000), --ticks (1000),
+ * --threads for the parallel run (4)
+ * <BR>Exits with 1 if any run allocated, or 2 if the JVM can't count allocations per thread.
+ */
+public class AllocationCheck {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Name of each run, and the HeadlessRunner options it adds to the common ones
+	private static final String[] RUN_NAMES = { "angle", "vector", "kernel", "verlet", "nearest", "parallel" };
+	private static final String[][] RUN_OPTIONS = {
+			{ "--predators", "3", "--food", "2", "--static-predators", "2" },
+			{ "--predators", "3", "--food", "2", "--steering", "vector" },
+			{ "--predators", "3", "--neighbour-kernel", "true" },
+			{ "--predators", "3", "--neighbour-skin", "10" },
+			{ "--predators", "3", "--radius", "100", "--neighbour-limit", "7" },
+			{} };
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final com.sun.management.ThreadMXBean threads;
+	private String flocking = "2000";
+	private int warmupTicks = 2000;
+	private int ticks = 1000;
+	private String parallelThreads = "4";
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create a check with the default options
+    *
+    * @throws UnsupportedOperationException if the JVM can't count the bytes each thread allocates
+    */
+	public AllocationCheck() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)
+				|| !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			throw new UnsupportedOperationException("This JVM can't count the bytes each thread allocates");
+		}
+		threads = (com.sun.management.ThreadMXBean) bean;
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Reads "--option value" pairs from the command line, replacing the defaults
+	 *
+	 * @param args the command line arguments
+	 * @throws IllegalArgumentException if an option is unknown or has no value
+	 */
+	public void parse(String[] args) {
+		for (int i = 0; i < args.length; i += 2) {
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for option: " + args[i]);
+			}
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--flocking":
+				flocking = value;
+				break;
+			case "--warmup":
+				warmupTicks = Integer.parseInt(value);
+				break;
+			case "--ticks":
+				ticks = Integer.parseInt(value);
+				break;
+			case "--threads":
+				parallelThreads = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+	}
+
+	/**
+	 * Runs every flocking path and prints the bytes each allocated
+	 *
+	 * @return the number of runs that allocated
+	 */
+	public int run() {
+		System.out.println(String.format("%-10s %8s %8s %14s", "run", "boids", "ticks", "bytes"));
+		int failures = 0;
+		for (int run = 0; run < RUN_NAMES.length; run++) {
+			long allocated = measure(RUN_NAMES[run], RUN_OPTIONS[run]);
+			System.out.println(String.format("%-10s %8s %8d %14d%s", RUN_NAMES[run], flocking, ticks, allocated,
+					allocated == 0 ? "" : "  ALLOCATES"));
+			if (allocated != 0) {
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Builds an engine for a run, warms it up and counts the bytes allocated by its ticks
+	 *
+	 * @param name the name of the run, which is parallel for the run on several threads
+	 * @param options the HeadlessRunner options the run adds to the common ones
+	 * @return the bytes allocated by every thread over the measured ticks
+	 */
+	private long measure(String name, String[] options) {
+		String[] common = { "--flocking", flocking, "--threads", name.equals("parallel") ? parallelThreads : "1" };
+		String[] args = new String[common.length + options.length];
+		System.arraycopy(common, 0, args, 0, common.length);
+		System.arraycopy(options, 0, args, common.length, options.length);
+		HeadlessRunner runner = new HeadlessRunner();
+		runner.parse(args);
+		FlockingEngine engine = runner.createEngine(1);
+		try {
+			for (int tick = 0; tick < warmupTicks; tick++) {
+				engine.tick(20);
+			}
+			//Reading the counters allocates the arrays they are returned in
+			long overhead = allocatedBytes();
+			overhead = allocatedBytes() - overhead;
+
+			long before = allocatedBytes();
+			for (int tick = 0; tick < ticks; tick++) {
+				engine.tick(20);
+			}
+			return allocatedBytes() - before - overhead;
+		} finally {
+			engine.shutdown();
+		}
+	}
+
+	private long allocatedBytes() {
+		long total = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			//Threads that have ended report -1
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	public static void main(String[] args) {
+		try {
+			AllocationCheck check = new AllocationCheck();
+			check.parse(args);
+			if (check.run() > 0) {
+				System.out.println("FAILED: a warmed-up tick allocated");
+				System.exit(1);
+			}
+			System.out.println("OK: no allocation in any warmed-up tick");
+		} catch (UnsupportedOperationException e) {
+			System.out.println(e.getMessage());
+			System.exit(2);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("Usage: java benchmark.AllocationCheck [--option value]... (see class documentation)");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,364 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import boid.Boid;
+import boid.FlockScratch;
+import boid.FlockStore;
+import simulation.FlockingEngine;
+import simulation.HeadlessRunner;
+import simulation.SpatialGrid;
+import tools.IntList;
+import tools.Utils;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Microbenchmarks for the flocking hot paths, run from the command line with no extra libraries.
+ *
+ * <P>Each benchmark is warmed up and then run for a fixed time, and reports the average time
+ * per operation and the bytes allocated per operation (summed over every thread, so the
+ * parallel tick is included). The tick benchmark also reports bytes allocated per boid per tick.
+ * The private helpers behind flock and hunt (findNearbyBoids, calculateNearbyAverages,
+ * calculateCohesionAngle, findPrey) are measured through the public methods that call them.
+ * flockKernel measures flocking with the neighbour kernel, which finds and averages the nearby
+ * boids in one pass over the grid, against flockGrid's list of nearby boids. flockNearest measures
+ * flocking with the neighbour limit, on a grid with the cells the engine would pick for it.
+ *
+ * <P>Usage: java benchmark.FlockingBenchmark [--option value]...
+ * <BR>Options (defaults in brackets): --populations (100,1000,10000,100000), --radii (30),
+ * --mixes as predators:food pairs (0:0,3:2), --threads (1), --warmup ms (1000), --time ms (2000),
+ * --steering as angle or vector (angle), --fast-trig (false), --neighbour-kernel for the tick
+ * benchmark (false), --neighbour-skin for the tick benchmark's neighbour lists (0, off),
+ * --neighbour-limit for flockNearest and the tick benchmark (0, off and flockNearest skipped)
+ */
+public class FlockingBenchmark {
+    // **************************************************
+    // Fields
+    // **************************************************
+	//Results are added here so the JIT can't remove the work being measured
+	private static volatile double sink;
+
+	private final com.sun.management.ThreadMXBean threads;
+	private int[] populations = { 100, 1000, 10000, 100000 };
+	private int[] radii = { 30 };
+	private String[] mixes = { "0:0", "3:2" };
+	private String simulationThreads = "1";
+	private String steering = "angle";
+	private String fastTrig = "false";
+	private String neighbourKernel = "false";
+	private String neighbourSkin = "0";
+	private int neighbourLimit = 0;
+	private long warmupMillis = 1000;
+	private long timeMillis = 2000;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create a benchmark runner with the default options
+    */
+	public FlockingBenchmark() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threads = (com.sun.management.ThreadMXBean) bean;
+			threads.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			//Allocation is reported as n/a on JVMs without per-thread allocation counters
+			threads = null;
+		}
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Reads "--option value" pairs from the command line, replacing the defaults
+	 *
+	 * @param args the command line arguments
+	 * @throws IllegalArgumentException if an option is unknown or has no value
+	 */
+	public void parse(String[] args) {
+		for (int i = 0; i < args.length; i += 2) {
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for option: " + args[i]);
+			}
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--populations":
+				populations = parseInts(value);
+				break;
+			case "--radii":
+				radii = parseInts(value);
+				break;
+			case "--mixes":
+				mixes = value.split(",");
+				break;
+			case "--threads":
+				simulationThreads = value;
+				break;
+			case "--steering":
+				steering = value;
+				break;
+			case "--fast-trig":
+				fastTrig = value;
+				break;
+			case "--neighbour-kernel":
+				neighbourKernel = value;
+				break;
+			case "--neighbour-skin":
+				neighbourSkin = value;
+				break;
+			case "--neighbour-limit":
+				neighbourLimit = Integer.parseInt(value);
+				break;
+			case "--warmup":
+				warmupMillis = Long.parseLong(value);
+				break;
+			case "--time":
+				timeMillis = Long.parseLong(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+	}
+
+	/**
+	 * Runs every benchmark for every combination of population, radius and mix
+	 */
+	public void run() {
+		System.out.println(String.format("%-14s %8s %6s %6s %14s %12s %16s", "benchmark", "boids", "radius",
+				"mix", "ns/op", "bytes/op", "bytes/boid/tick"));
+		for (int population : populations) {
+			for (int radius : radii) {
+				for (String mix : mixes) {
+					runAll(population, radius, mix);
+				}
+			}
+		}
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	private void runAll(int population, int radius, String mix) {
+		String[] counts = mix.split(":");
+		HeadlessRunner runner = new HeadlessRunner();
+		runner.parse(new String[] { "--flocking", Integer.toString(population), "--predators", counts[0],
+				"--food", counts[1], "--radius", Integer.toString(radius), "--threads", simulationThreads,
+				"--steering", steering, "--fast-trig", fastTrig, "--neighbour-kernel", neighbourKernel,
+				"--neighbour-skin", neighbourSkin, "--neighbour-limit", Integer.toString(neighbourLimit) });
+		FlockingEngine engine = runner.createEngine(1);
+		final FlockStore store = engine.getStore();
+		//The per-boid benchmarks other than flockNearest flock with every neighbour
+		engine.getFlockingSpecies().setNeighbourLimit(0);
+
+		//Frame is frozen and indexed once, so the per-boid benchmarks all see the same neighbours. The
+		//neighbour kernel is turned on first so the snapshot holds what it reads, but it is only
+		//used while values are sorted into the grid
+		store.setNeighbourKernel(true);
+		store.snapshot();
+		final SpatialGrid grid = new SpatialGrid(Utils.SCREEN_X_SIZE, Utils.SCREEN_Y_SIZE, true);
+		grid.rebuild(store.getFrontXPositions(), store.getFrontYPositions(), store.size(), radius);
+
+		final List<Boid> flockers = new ArrayList<Boid>();
+		final List<Boid> predators = new ArrayList<Boid>();
+		for (int slot = 0; slot < store.size(); slot++) {
+			if (store.getKind(slot) == FlockStore.FLOCKING) {
+				flockers.add(store.getBoid(slot));
+			} else if (store.getKind(slot) == FlockStore.PREDATOR) {
+				predators.add(store.getBoid(slot));
+			}
+		}
+		final double searchRadius = radius;
+		final IntList found = new IntList();
+		final FlockScratch scratch = new FlockScratch();
+
+		measure("checkAngle", population, radius, mix, 1 << 16, new Operation() {
+			public int run(int i) {
+				//Angles between -900 and +900 degrees, so up to two turns need removing
+				sink += Utils.checkAngle((i % 2000) * 0.9 - 900);
+				return 0;
+			}
+		});
+		measure("gridQuery", population, radius, mix, flockers.size(), new Operation() {
+			public int run(int i) {
+				Boid boid = flockers.get(i % flockers.size());
+				found.clear();
+				grid.query(boid.getX(), boid.getY(), searchRadius, found);
+				sink += found.size();
+				return 1;
+			}
+		});
+		measure("flockGrid", population, radius, mix, flockers.size(), new Operation() {
+			public int run(int i) {
+				flockers.get(i % flockers.size()).flock(grid, scratch);
+				return 1;
+			}
+		});
+		//Values are only sorted into the grid for this benchmark, and the rebuild after it drops them again
+		store.sortNeighbourValues(grid);
+		measure("flockKernel", population, radius, mix, flockers.size(), new Operation() {
+			public int run(int i) {
+				flockers.get(i % flockers.size()).flock(grid, scratch);
+				return 1;
+			}
+		});
+		grid.rebuild(store.getFrontXPositions(), store.getFrontYPositions(), store.size(), radius);
+		if (neighbourLimit > 0) {
+			engine.getFlockingSpecies().setNeighbourLimit(neighbourLimit);
+			store.refreshSpecies();
+			final SpatialGrid nearestGrid = new SpatialGrid(Utils.SCREEN_X_SIZE, Utils.SCREEN_Y_SIZE, true);
+			nearestGrid.rebuild(store.getFrontXPositions(), store.getFrontYPositions(), store.size(),
+					engine.gridCellSize());
+			measure("flockNearest", population, radius, mix, flockers.size(), new Operation() {
+				public int run(int i) {
+					flockers.get(i % flockers.size()).flock(nearestGrid, scratch);
+					return 1;
+				}
+			});
+			engine.getFlockingSpecies().setNeighbourLimit(0);
+			store.refreshSpecies();
+		}
+		measure("flockBrute", population, radius, mix, flockers.size(), new Operation() {
+			public int run(int i) {
+				flockers.get(i % flockers.size()).flock(scratch);
+				return 1;
+			}
+		});
+		measure("flee", population, radius, mix, flockers.size(), new Operation() {
+			public int run(int i) {
+				flockers.get(i % flockers.size()).flee();
+				return 1;
+			}
+		});
+		if (predators.size() > 0) {
+			measure("huntGrid", population, radius, mix, predators.size(), new Operation() {
+				public int run(int i) {
+					Boid predator = predators.get(i % predators.size());
+					predator.hunt(grid);
+					//Catches are applied as they are in a tick, otherwise the predator's list of them keeps growing
+					predator.applyEffects();
+					return 1;
+				}
+			});
+			measure("huntBrute", population, radius, mix, predators.size(), new Operation() {
+				public int run(int i) {
+					Boid predator = predators.get(i % predators.size());
+					predator.hunt();
+					predator.applyEffects();
+					return 1;
+				}
+			});
+		}
+
+		final FlockingEngine tickEngine = runner.createEngine(1);
+		measure("tick", population, radius, mix, 1, new Operation() {
+			public int run(int i) {
+				//Predators shrink the population as the benchmark runs, so the live count is reported
+				int boids = tickEngine.getBoids().size();
+				tickEngine.tick(20);
+				return boids;
+			}
+		});
+		tickEngine.shutdown();
+		engine.shutdown();
+	}
+
+	/**
+	 * Warms up an operation, then runs it in batches until the measurement time has passed
+	 *
+	 * @param batch the number of operations run between checks of the clock
+	 */
+	private void measure(String name, int population, int radius, String mix, int batch, Operation operation) {
+		int index = 0;
+		long end = System.nanoTime() + warmupMillis * 1000000L;
+		while (System.nanoTime() < end) {
+			for (int b = 0; b < batch; b++) {
+				operation.run(index++);
+			}
+		}
+
+		long ops = 0;
+		long boidTicks = 0;
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		end = start + timeMillis * 1000000L;
+		long now;
+		do {
+			for (int b = 0; b < batch; b++) {
+				boidTicks += operation.run(index++);
+			}
+			ops += batch;
+			now = System.nanoTime();
+		} while (now < end);
+		long allocated = allocatedBytes() - allocatedBefore;
+
+		double nsPerOp = (double) (now - start) / ops;
+		String bytesPerOp = "n/a";
+		String bytesPerBoid = "";
+		if (threads != null) {
+			bytesPerOp = String.format("%.1f", (double) allocated / ops);
+			if (name.equals("tick") && boidTicks > 0) {
+				bytesPerBoid = String.format("%.2f", (double) allocated / boidTicks);
+			}
+		}
+		System.out.println(String.format("%-14s %8d %6d %6s %14.1f %12s %16s", name, population, radius, mix,
+				nsPerOp, bytesPerOp, bytesPerBoid));
+	}
+
+	private long allocatedBytes() {
+		if (threads == null) {
+			return 0;
+		}
+		long total = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			//Threads that have ended report -1
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	private static int[] parseInts(String list) {
+		String[] parts = list.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}
+
+    // **************************************************
+    // Operations
+    // **************************************************
+	/**
+	 * A single step of work to be measured
+	 */
+	private interface Operation {
+		/**
+		 * @param index the number of times the operation has been run
+		 * @return the number of boids the step moved (0 for anything other than a tick)
+		 */
+		int run(int index);
+	}
+
+	public static void main(String[] args) {
+		FlockingBenchmark benchmark = new FlockingBenchmark();
+		try {
+			benchmark.parse(args);
+			benchmark.run();
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("Usage: java benchmark.FlockingBenchmark [--option value]... (see class documentation)");
+			System.exit(1);
+		}
+	}
+}
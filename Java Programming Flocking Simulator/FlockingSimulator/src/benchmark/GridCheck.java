@@ -0,0 +1,265 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import boid.FlockStore;
+import simulation.FlockingEngine;
+import simulation.HeadlessRunner;
+import simulation.SpatialGrid;
+import tools.IntList;
+import tools.Utils;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Self-check that the spatial grid finds exactly the boids a brute-force search finds, run from
+ * the command line with no extra libraries.
+ *
+ * <P>Two sets of positions are checked: a seeded flock after it has run for a number of ticks,
+ * and random positions with a third of them packed against the edges and corners of the screen,
+ * where a search wraps around to the other side. For every position, radius and cell size, on
+ * grids that do and don't wrap, the slots the grid's query finds are sorted and compared with
+ * those found by checking every position in turn, in the same way as Boid.findNearbyBoids
+ * (strictly within the radius, with distances taken the shortest way around the screen when
+ * the grid wraps).
+ *
+ * <P>Usage: java benchmark.GridCheck [--option value]...
+ * <BR>Options (defaults in brackets): --boids (2000), --seed (1), --ticks the flock runs for
+ * before it is checked (100), --radii (5,30,100,400)
+ * <BR>Exits with 1 if any query found a different set of boids.
+ */
+public class GridCheck {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Cell sizes checked for each radius, as fractions of the radius - the engine uses the radius,
+	//smaller cells make a search span several cells and larger ones leave it inside a few
+	private static final double[] CELL_FRACTIONS = { 1, 0.3, 2.5 };
+	//Number of mismatches described in full before the rest are only counted
+	private static final int REPORTED_MISMATCHES = 5;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private int boids = 2000;
+	private long seed = 1;
+	private int ticks = 100;
+	private int[] radii = { 5, 30, 100, 400 };
+	private final IntList gridFound = new IntList();
+	private final IntList bruteFound = new IntList();
+	private int reported = 0;
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Reads "--option value" pairs from the command line, replacing the defaults
+	 *
+	 * @param args the command line arguments
+	 * @throws IllegalArgumentException if an option is unknown or has no value
+	 */
+	public void parse(String[] args) {
+		for (int i = 0; i < args.length; i += 2) {
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for option: " + args[i]);
+			}
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--boids":
+				boids = Integer.parseInt(value);
+				break;
+			case "--seed":
+				seed = Long.parseLong(value);
+				break;
+			case "--ticks":
+				ticks = Integer.parseInt(value);
+				break;
+			case "--radii":
+				String[] parts = value.split(",");
+				radii = new int[parts.length];
+				for (int r = 0; r < parts.length; r++) {
+					radii[r] = Integer.parseInt(parts[r].trim());
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+	}
+
+	/**
+	 * Checks both sets of positions on every grid and prints the number of mismatches for each
+	 *
+	 * @return the total number of queries that found a different set of boids
+	 */
+	public int run() {
+		System.out.println(String.format("%-6s %5s %6s %8s %8s %10s", "set", "wrap", "radius", "cell", "queries",
+				"mismatches"));
+		int mismatches = 0;
+
+		HeadlessRunner runner = new HeadlessRunner();
+		runner.parse(new String[] { "--flocking", Integer.toString(boids), "--threads", "1" });
+		FlockingEngine engine = runner.createEngine(seed);
+		for (int tick = 0; tick < ticks; tick++) {
+			engine.tick(20);
+		}
+		FlockStore store = engine.getStore();
+		int flockCount = store.size();
+		double[] flockX = Arrays.copyOf(store.getFrontXPositions(), flockCount);
+		double[] flockY = Arrays.copyOf(store.getFrontYPositions(), flockCount);
+		engine.shutdown();
+		mismatches += checkSet("flock", flockX, flockY, flockCount);
+
+		double[] edgeX = new double[boids];
+		double[] edgeY = new double[boids];
+		placeAtEdges(edgeX, edgeY, new Random(seed));
+		mismatches += checkSet("edges", edgeX, edgeY, boids);
+		return mismatches;
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Checks a set of positions on wrapping and non-wrapping grids at every radius and cell size
+	 *
+	 * @return the number of queries that found a different set of boids
+	 */
+	private int checkSet(String name, double[] xs, double[] ys, int count) {
+		int mismatches = 0;
+		for (boolean wrap : new boolean[] { false, true }) {
+			SpatialGrid grid = new SpatialGrid(Utils.SCREEN_X_SIZE, Utils.SCREEN_Y_SIZE, wrap);
+			for (int radius : radii) {
+				for (double fraction : CELL_FRACTIONS) {
+					double cellSize = radius * fraction;
+					grid.rebuild(xs, ys, count, cellSize);
+					int found = 0;
+					for (int i = 0; i < count; i++) {
+						if (!sameBoids(grid, xs, ys, count, i, radius)) {
+							found++;
+						}
+					}
+					System.out.println(String.format("%-6s %5s %6d %8.1f %8d %10d", name, wrap, radius, cellSize,
+							count, found));
+					mismatches += found;
+				}
+			}
+		}
+		return mismatches;
+	}
+
+	/**
+	 * Finds the boids around one position with the grid and by brute force, and compares them
+	 *
+	 * @return true if both found the same slots
+	 */
+	private boolean sameBoids(SpatialGrid grid, double[] xs, double[] ys, int count, int i, int radius) {
+		gridFound.clear();
+		grid.query(xs[i], ys[i], radius, gridFound);
+
+		bruteFound.clear();
+		double radiusSq = (double) radius * radius;
+		for (int j = 0; j < count; j++) {
+			double xDistance = Math.abs(xs[j] - xs[i]);
+			double yDistance = Math.abs(ys[j] - ys[i]);
+			if (grid.isWrapping()) {
+				//Shortest way around the screen, worked out separately from the grid's own deltaX
+				xDistance = Math.min(xDistance, grid.getWidth() - xDistance);
+				yDistance = Math.min(yDistance, grid.getHeight() - yDistance);
+			}
+			if (xDistance * xDistance + yDistance * yDistance < radiusSq) {
+				bruteFound.add(j);
+			}
+		}
+
+		int[] fromGrid = sorted(gridFound);
+		int[] fromBrute = sorted(bruteFound);
+		if (Arrays.equals(fromGrid, fromBrute)) {
+			return true;
+		}
+		if (reported++ < REPORTED_MISMATCHES) {
+			System.out.println(String.format("  boid %d at (%.3f, %.3f) radius %d wrap %s: grid found %d, brute force %d,"
+					+ " only by grid %s, only by brute force %s", i, xs[i], ys[i], radius, grid.isWrapping(),
+					fromGrid.length, fromBrute.length, onlyIn(fromGrid, fromBrute), onlyIn(fromBrute, fromGrid)));
+		}
+		return false;
+	}
+
+	/**
+	 * Places positions at random, with a third of them within a few pixels of an edge or corner
+	 * (including exactly on the edges) so searches have to wrap around the screen
+	 */
+	private static void placeAtEdges(double[] xs, double[] ys, Random random) {
+		double width = Utils.SCREEN_X_SIZE;
+		double height = Utils.SCREEN_Y_SIZE;
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = random.nextDouble() * width;
+			ys[i] = random.nextDouble() * height;
+			switch (i % 6) {
+			case 0:
+				//Near the left or right edge
+				xs[i] = random.nextBoolean() ? random.nextDouble() * 10 : width - random.nextDouble() * 10;
+				break;
+			case 1:
+				//Near a corner, or exactly on an edge
+				xs[i] = random.nextBoolean() ? 0 : width - random.nextDouble() * 10;
+				ys[i] = random.nextBoolean() ? 0 : height - random.nextDouble() * 10;
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Lists the first few values of one sorted array that aren't matched in another, counting
+	 * repeats, so a slot found twice shows up once
+	 */
+	private static String onlyIn(int[] values, int[] others) {
+		IntList missing = new IntList();
+		int o = 0;
+		for (int v = 0; v < values.length && missing.size() < 10; v++) {
+			while (o < others.length && others[o] < values[v]) {
+				o++;
+			}
+			if (o < others.length && others[o] == values[v]) {
+				o++;
+			} else {
+				missing.add(values[v]);
+			}
+		}
+		return Arrays.toString(sorted(missing));
+	}
+
+	/**
+	 * Copies a list of slots into an array and sorts it
+	 */
+	private static int[] sorted(IntList list) {
+		int[] values = new int[list.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = list.get(i);
+		}
+		Arrays.sort(values);
+		return values;
+	}
+
+	public static void main(String[] args) {
+		GridCheck check = new GridCheck();
+		try {
+			check.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("Usage: java benchmark.GridCheck [--option value]... (see class documentation)");
+			System.exit(1);
+		}
+		int mismatches = check.run();
+		if (mismatches > 0) {
+			System.out.println("FAILED: " + mismatches + " queries found different boids to a brute-force search");
+			System.exit(1);
+		}
+		System.out.println("OK: every query found the same boids as a brute-force search");
+	}
+}
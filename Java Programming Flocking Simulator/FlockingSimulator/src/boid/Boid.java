@@ -1,11 +1,11 @@
 package boid;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import drawing.Canvas;
 import geometry.CartesianCoordinate;
+import simulation.SpatialGrid;
+import tools.IntList;
 import tools.Utils;
 
 /**
@@ -16,14 +16,16 @@ public abstract class Boid {
     // **************************************************
     // Fields
     // **************************************************
-	static int lastId = 0;
-	public final int id; //Each boid assigned unique ID - used for debugging (incremented from lastId)
-	protected Canvas myCanvas;
-	protected CartesianCoordinate location;
-	protected double angleRadians;
+	//Boids can be created and respawned from more than one thread, so the last ID is taken atomically
+	private static final AtomicInteger lastId = new AtomicInteger();
+	//Each boid assigned unique ID - used for debugging. Not final, as a respawned boid gets a new one
+	private int id;
+	//Position and angle are held in the store, and behaviour values in the boid's species - the boid only knows its slot
+	protected final FlockStore store;
+	private final byte kind;
+	int slot;
 	private boolean isPenDown;
 	protected int size;
-	protected int radius;
 	
     // **************************************************
     // Constructors
@@ -31,19 +33,17 @@ public abstract class Boid {
     /**
     * Default constructor to create and initialise a boid
 	*
-    * @param myCanvas the canvas to add the boid to
+    * @param store the store holding the state of every boid in the simulation
+    * @param kind the kind of boid, one of the FlockStore kind definitions
     * @param xPos the initial x position of the boid
     * @param yPos the initial y position of the boid
     */
 	
-	public Boid(Canvas myCanvas, double xPos, double yPos) {
-		this.myCanvas = myCanvas;
-		this.location = new CartesianCoordinate(xPos, yPos);
-		this.angleRadians = 0;
-		this.isPenDown = false;
+	public Boid(FlockStore store, byte kind, double xPos, double yPos) {
+		this.store = store;
+		this.kind = kind;
 		this.size = 20;
-		this.radius = 100;
-		id = ++lastId; 
+		attach(xPos, yPos);
 	}
 
 	
@@ -52,19 +52,29 @@ public abstract class Boid {
     // **************************************************
 	/**
 	 * The boid is moved in its current direction for the given number of pixels.
-	 * If the pen is down when the robot moves, a line will be drawn on the floor.
 	 * 
 	 * @param i The number of pixels to move.
 	 */
 	public void move(double i) {
-		double x = location.getX() + (i * Math.sin(angleRadians));
-		double y = location.getY() + (i * Math.cos(angleRadians));
-		CartesianCoordinate currentPos = new CartesianCoordinate(x, y);
+		store.x[slot] = getX() + (i * store.sin(getAngleRadians()));
+		store.y[slot] = getY() + (i * store.cos(getAngleRadians()));
+	}
+
+	/**
+	 * The boid is moved in its current direction for the given number of pixels.
+	 * If the pen is down when the robot moves, a line will be drawn on the canvas.
+	 * 
+	 * @param canvas The canvas to draw on.
+	 * @param i The number of pixels to move.
+	 */
+	public void move(Canvas canvas, double i) {
+		//Start and end points are kept as plain numbers so drawing doesn't create any objects
+		double startX = getX();
+		double startY = getY();
+		move(i);
 		if (isPenDown) {
-			myCanvas.drawLineBetweenPoints(currentPos, location);
+			canvas.drawLine(getX(), getY(), startX, startY);
 		}
-
-		location = currentPos;
 	}
 	
 	/**
@@ -76,8 +86,8 @@ public abstract class Boid {
 	 * @return calculatedDistance the direct distance between the boid and the coordinate 
 	 */
 	public double computeDist(double x, double y) {
-		double xDistance = x - this.getLocation().getX();
-		double yDistance = y - this.getLocation().getY();
+		double xDistance = x - getX();
+		double yDistance = y - getY();
 		double calculatedDistance =  Math.sqrt(Math.pow(xDistance, 2) + Math.pow(yDistance, 2));
 		return calculatedDistance;
 	}
@@ -88,7 +98,7 @@ public abstract class Boid {
 	 * @param i The number of degrees to turn.
 	 */
 	public void turn(double i) {
-		angleRadians += Math.toRadians(i);
+		store.heading[slot] += Math.toRadians(i);
 	}
 
 	/**
@@ -110,6 +120,20 @@ public abstract class Boid {
     // **************************************************
     // Protected methods
     // **************************************************
+	/**
+	 * Gives the boid a new slot in the store, as if it had just been created. Used by the
+	 * constructor, and to put a boid that was removed back into the simulation. The boid
+	 * starts in the store's default species for its kind.
+	 * 
+	 * @param xPos the initial x position of the boid
+	 * @param yPos the initial y position of the boid
+	 */
+	final void attach(double xPos, double yPos) {
+		this.slot = store.add(this, kind, xPos, yPos);
+		this.isPenDown = false;
+		id = lastId.incrementAndGet();
+	}
+
 	/**
 	 * For both x and y components:
 	 * 		-if max position is exceeded, the boids coordinates are reset to the min position
@@ -118,88 +142,137 @@ public abstract class Boid {
 	 */
 	protected void screenBuffer() {
 	
-		if (location.getX() > Utils.SCREEN_X_SIZE) {
-			location.setxPosition(0);
-		} else if (location.getX() < 0) {
-			location.setxPosition(Utils.SCREEN_X_SIZE);
+		if (store.x[slot] > Utils.SCREEN_X_SIZE) {
+			store.x[slot] = 0;
+		} else if (store.x[slot] < 0) {
+			store.x[slot] = Utils.SCREEN_X_SIZE;
 		}
 		
-		if (location.getY() > Utils.SCREEN_Y_SIZE) {
-			location.setyPosition(0);
-		} else if (location.getY() < 0) {
-			location.setyPosition(Utils.SCREEN_Y_SIZE);
+		if (store.y[slot] > Utils.SCREEN_Y_SIZE) {
+			store.y[slot] = 0;
+		} else if (store.y[slot] < 0) {
+			store.y[slot] = Utils.SCREEN_Y_SIZE;
 		}
 	}
 	
 	/**
-	 * Finds all boids whose locations are within the search radius
+	 * Finds all boids whose locations (in the previous frame) are within the search radius
+	 * by checking every slot in the store
 	 * 
-	 * @param allBoids boid object array to fill with those nearby
 	 * @param radius the radius in which to search for boids
-	 * @return allboids containing boids within the radius
+	 * @param nearbyBoids list to fill with the slots of boids within the radius
+	 * 		  (this boid's slot is added last if any were found)
 	 */
-	protected ArrayList<Boid> findNearbyBoids(List<Boid> allBoids, int radius) {
-		HashSet<Boid> nearbyBoids = new HashSet<Boid>();
-		for (Boid boidToCheck : allBoids) {
-			if (boidToCheck != this) {
+	protected void findNearbyBoids(int radius, IntList nearbyBoids) {
+		double ownX = getX();
+		double ownY = getY();
+		double radiusSq = (double) radius * radius;
+		for (int j = 0; j < store.size(); j++) {
+			if (j != slot) {
 				//Sqrt function avoided when checking distance to increase efficiency of code
-				double xDistance = boidToCheck.getLocation().getX() - this.getLocation().getX();
-				double yDistance = boidToCheck.getLocation().getY() - this.getLocation().getY();
-				double absDistanceSq =(Math.pow(xDistance, 2) + Math.pow(yDistance, 2));
-				if (absDistanceSq < radius*radius) {
-					nearbyBoids.add(boidToCheck);
+				double xDistance = store.frontX[j] - ownX;
+				double yDistance = store.frontY[j] - ownY;
+				if (xDistance * xDistance + yDistance * yDistance < radiusSq) {
+					nearbyBoids.add(j);
 				}
 			}
 		}
 		if (nearbyBoids.size() > 0) {
 			// add this
-			nearbyBoids.add(this);
+			nearbyBoids.add(slot);
 		}
-		return new ArrayList<Boid>(nearbyBoids);
 	}
-	
+
+	/**
+	 * Finds all boids whose locations are within the search radius using a spatial grid,
+	 * so only boids in the surrounding cells are checked
+	 *
+	 * @param grid spatial grid built from the store's snapshot positions this frame
+	 * @param radius the radius in which to search for boids
+	 * @param nearbyBoids list to fill with the slots of boids within the radius
+	 * 		  (this boid's slot is added last if any were found)
+	 */
+	protected void findNearbyBoids(SpatialGrid grid, int radius, IntList nearbyBoids) {
+		grid.query(getX(), getY(), radius, nearbyBoids);
+		//The query also finds this boid - it is moved to the end, or dropped if nothing else was found
+		int last = nearbyBoids.size() - 1;
+		for (int i = 0; i <= last; i++) {
+			if (nearbyBoids.get(i) == slot) {
+				nearbyBoids.set(i, nearbyBoids.get(last));
+				nearbyBoids.set(last, slot);
+				break;
+			}
+		}
+		if (nearbyBoids.size() == 1 && nearbyBoids.get(0) == slot) {
+			nearbyBoids.clear();
+		}
+	}
+
     // **************************************************
     // Protected methods
     // **************************************************
-	public abstract void draw();
-	
-	public abstract void undraw();
+	public abstract void draw(Canvas canvas);
 	
     // **************************************************
     // Getters/setters 
     // **************************************************
 	
-	public void setRadius(int radius) {
-		this.radius = radius;
+	//Moves the boid into another species - call while the simulation isn't ticking
+	public void setSpecies(Species species) {
+		store.setSpecies(slot, species);
+	}
+
+	public Species getSpecies() {
+		return store.getSpecies(store.species[slot]);
 	}
 	
 	public void setAngleRadians(double angle) {
-		this.angleRadians = angle;
+		store.heading[slot] = angle;
 	}
 	
 	public void setAngleDegrees(double deg) {
-		this.angleRadians = Math.toRadians(deg);
+		store.heading[slot] = Math.toRadians(deg);
 	}
 
+	//Returns a copy - the position itself lives in the store
 	public CartesianCoordinate getLocation() {
-		return location;
+		return new CartesianCoordinate(getX(), getY());
+	}
+
+	public double getX() {
+		return store.x[slot];
+	}
+
+	public double getY() {
+		return store.y[slot];
 	}
 
 	public double getAngleRadians() {
-		return angleRadians;
+		return store.heading[slot];
 	}
 
 	public double getAngleDegrees() {
-		return Math.toDegrees(angleRadians);
+		return Math.toDegrees(store.heading[slot]);
 	}
 
+	//Radius of the boid's species as of the start of the frame
 	public int getRadius() {
-		return radius;
+		return store.speciesRadius[store.species[slot]];
 	}
 	
 	public int getId() {
 		return id;
 	}
+
+	//Length used to draw the boid's shape
+	public int getSize() {
+		return size;
+	}
+
+	//Handle that keeps identifying this boid while it is in the simulation, or -1 once it has been removed
+	public long getHandle() {
+		return slot < 0 ? -1 : store.getHandle(slot);
+	}
 	
     // **************************************************
     // Methods to be overridden (Not used by all child classes)
@@ -209,13 +282,30 @@ public abstract class Boid {
 		
 	}
 	
-	public void flock(List<Boid> allBoids) {
+	//The scratch is working space the thread running the boid lends it
+	public void flock(FlockScratch scratch) {
+	}
+
+	public void flock(SpatialGrid grid, FlockScratch scratch) {
+		flock(scratch);
+	}
+
+	public void hunt() {
 	}
 
-	public void hunt(List<Boid> allBoids) {
+	public void hunt(SpatialGrid grid) {
+		hunt();
 	}
 	
-	public void flee(List<Boid> allBoids) {
+	public void flee() {
+	}
+
+	/**
+	 * Applies any effects this boid had on other boids during the frame. Called on one thread
+	 * after every boid has run its behaviours, so boids never write to each other's slots
+	 * while the frame is being computed.
+	 */
+	public void applyEffects() {
 	}
 	
 	
@@ -223,30 +313,11 @@ public abstract class Boid {
     // Getters/setters to be overridden
     // **************************************************
 
-	public void setcohesionControl(double cohesion) {
-	}
-
-	public void setAlignmentControl(double alignment) {
-	}
 	public void setEaten(boolean eaten) {
 	}
-
-	public void setSeparationControl(double separationControl) {
-	}
-	public double getcohesionControl() {
-		return 0;
-	}
-	public double getSeparationControl() {
-		return 0;
-	}
-	public double getAlignmentControl() {
-		return 0;
-	}
 	public boolean isEaten() {
 		return false;
 	}
-	public void setSpeed(int i) {		
-	}
 
 
 }
\ No newline at end of file
@@ -1,104 +1,105 @@
-package boid;
-
-import java.util.ArrayList;
-import drawing.Canvas;
-
-/**
- * @author Y3848937
- */
-
-public abstract class DynamicBoid extends Boid {
-	// **************************************************
-	// Fields
-	// **************************************************
-	private int speed = 100;
-	
-    // **************************************************
-    // Constructors
-    // **************************************************
-    /**
-    * Default constructor to create and initialise a boid
-    *
-    * @param myCanvas the canvas to add the boid to
-    * @param xPos the initial x position of the boid
-    * @param yPos the initial y position of the boid
-    */
-	public DynamicBoid(Canvas canvas, double xpos, double ypos) {
-		super(canvas, xpos, ypos);
-	}
-    // **************************************************
-    // Public methods
-    // **************************************************
-	/**
-	 * Draws the triangular shape used by dynamic Boids
-	 */
-	public void draw() {		
-		
-		//Current angle of the boid needs to be saved to be reinstantiated after it is drawn
-		double angle = getAngleRadians();	
-		
-		//boid is drawn from the tip of the triangle
-		turn(150);
-		putPenDown();
-		//Size scaler used to determine the lengths of the sides
-		move(size);
-		turn(120);
-		putPenUp();
-		move(size);
-		turn(120);
-		putPenDown();
-		move(size);
-		turn(-30);
-		putPenUp();
-		setAngleRadians(angle);
-	}
-
-	/**
-	 * Undraws the boid
-	 */
-	public void undraw() {
-		//The last 2 lines on the canvas are removed
-		myCanvas.removeMostRecentLine();
-		myCanvas.removeMostRecentLine();
-		myCanvas.updateUI();
-	}
-	
-	/**
-	 * Moves the boid on the screen
-	 * 
-	 * @param time  Uses the deltaTime value to control the movement of the boids
-	 */
-	public void update(int time) {
-		//Distance = Speed*time (using deltatime and the given speed of the boid)
-		double distance = (double) (getSpeed() * (time * 0.001));
-		move(distance);
-		this.screenBuffer();
-	}
-
-    // **************************************************
-    // Getters/setters 
-    // **************************************************
-	public int getSpeed() {
-		return speed;
-	}
-
-	public void setSpeed(int speed) {
-		this.speed = speed;
-	}
-    // **************************************************
-    // Getters/setters to be overridden 
-    // **************************************************
-	public void flock(ArrayList<Boid> allBoids) {
-
-	}
-	public void setAlignmentControl(double alignment) {
-	}
-	public double getAlignmentControl() {
-		return 0;
-	}
-	public boolean isEaten() {
-		return false;
-	}
-	public void setEaten(boolean eaten) {
-	}
-}
+package boid;
+
+import java.util.ArrayList;
+import drawing.Canvas;
+import drawing.Stamp;
+
+/**
+ * @author Y3848937
+ */
+
+public abstract class DynamicBoid extends Boid {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Directions of the two sides drawn, relative to the heading
+	private static final double FIRST_SIDE = Math.toRadians(150);
+	private static final double HIDDEN_SIDE = Math.toRadians(270);
+	//Triangle with sides of 1, scaled to each boid's size when drawn
+	private static final Stamp SHAPE = makeShape();
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create and initialise a boid
+    *
+    * @param store the store holding the state of every boid in the simulation
+    * @param kind the kind of boid, one of the FlockStore kind definitions
+    * @param xPos the initial x position of the boid
+    * @param yPos the initial y position of the boid
+    */
+	public DynamicBoid(FlockStore store, byte kind, double xpos, double ypos) {
+		super(store, kind, xpos, ypos);
+	}
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Draws the triangular shape used by dynamic Boids
+	 * 
+	 * @param canvas the canvas to draw on
+	 */
+	public void draw(Canvas canvas) {		
+		drawShape(canvas, getX(), getY(), getAngleRadians(), size);
+	}
+
+	/**
+	 * Draws the triangular shape used by dynamic boids at a position, without moving any boid.
+	 * Two sides are drawn from the tip of the triangle, leaving the back open.
+	 * 
+	 * @param canvas the canvas to draw on
+	 * @param x the x position of the tip of the triangle
+	 * @param y the y position of the tip of the triangle
+	 * @param heading the heading of the boid (radians)
+	 * @param size the length of the sides
+	 */
+	public static void drawShape(Canvas canvas, double x, double y, double heading, int size) {
+		canvas.drawStamp(SHAPE, x, y, heading, size);
+	}
+	
+	/**
+	 * Moves the boid on the screen
+	 * 
+	 * @param time  Uses the deltaTime value to control the movement of the boids
+	 */
+	public void update(int time) {
+		//Distance = Speed*time (using deltatime and the given speed of the boid)
+		double distance = (double) (getSpeed() * (time * 0.001));
+		move(distance);
+		this.screenBuffer();
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Works out the two sides of the triangle once, as drawn from the tip at a heading of 0
+	 */
+	private static Stamp makeShape() {
+		double firstX = Math.sin(FIRST_SIDE);
+		double firstY = Math.cos(FIRST_SIDE);
+		double secondX = firstX + Math.sin(HIDDEN_SIDE);
+		double secondY = firstY + Math.cos(HIDDEN_SIDE);
+		return new Stamp(new double[] { firstX, firstY, 0, 0, 0, 0, secondX, secondY });
+	}
+
+    // **************************************************
+    // Getters/setters 
+    // **************************************************
+	//Speed of the boid's species as of the start of the frame
+	public int getSpeed() {
+		return store.speciesSpeed[store.species[slot]];
+	}
+    // **************************************************
+    // Getters/setters to be overridden 
+    // **************************************************
+	public void flock(ArrayList<Boid> allBoids) {
+
+	}
+	public boolean isEaten() {
+		return false;
+	}
+	public void setEaten(boolean eaten) {
+	}
+}
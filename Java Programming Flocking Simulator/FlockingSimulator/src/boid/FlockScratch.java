@@ -0,0 +1,52 @@
+package boid;
+
+import simulation.SpatialGrid;
+import tools.IntList;
+import tools.NearestHeap;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Working space a flocking boid uses while it flocks - the list of nearby boids, the sums the
+ * neighbour kernel adds them up into, the heap the nearest are picked with and the averages
+ * found from them.
+ *
+ * <P>Nothing in it is kept from one boid to the next, so rather than every boid holding its
+ * own, each thread that runs boids holds one and hands it to every boid it runs. A scratch
+ * must only be used by one thread at a time. Its list grows to the most neighbours any boid
+ * run with it has found, so the memory it holds depends on the number of threads rather than
+ * the number of boids.
+ */
+public class FlockScratch {
+    // **************************************************
+    // Fields
+    // **************************************************
+	//Slots of the boids found near the boid flocking, with its own slot last
+	final IntList nearbyBoids = new IntList();
+	//Sums of the nearby boids' values from the neighbour kernel, indexed by SpatialGrid.SUM_*
+	final double[] nearbySums = new double[SpatialGrid.SUM_COUNT];
+	double averageX;
+	double averageY;
+	double averageAngle;
+	double headingSumX;
+	double headingSumY;
+	//Picks the nearest boids for species with a neighbour limit - only made once one is used
+	private NearestHeap nearestBoids;
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	/**
+	 * Gets the heap used to pick out the nearest boids, making it the first time it is needed
+	 * 
+	 * @return the scratch's heap
+	 */
+	NearestHeap nearestBoids() {
+		if (nearestBoids == null) {
+			nearestBoids = new NearestHeap();
+		}
+		return nearestBoids;
+	}
+}
@@ -0,0 +1,694 @@
+package boid;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import simulation.SpatialGrid;
+import tools.FastTrig;
+import tools.IntList;
+import tools.RandomStreams;
+import tools.Utils;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Holds the state of every boid in the simulation in parallel primitive arrays.
+ *
+ * <P>Each boid owns one slot, and the slots are kept dense (0 to size - 1) so the
+ * neighbour searches in flock, flee and hunt are linear scans over arrays of doubles
+ * rather than walks over boid objects. Boid objects are light views that only hold
+ * their slot number. When a boid is removed the last boid is moved into its slot.
+ * The slots of each kind of boid are also listed separately, so a behaviour that only
+ * cares about predators, food or flocking boids never visits the others.
+ *
+ * <P>Because slots move when boids are removed, code outside the simulation should hold a
+ * boid's handle rather than its slot. A handle is a stable index together with a generation
+ * number that changes when the boid is removed, so an old handle resolves to nothing rather
+ * than to whichever boid later takes over the index.
+ *
+ * <P>Position and heading are double buffered. At the start of a frame snapshot() copies
+ * them into the front arrays, and boids only read other boids from the front arrays while
+ * writing their own new heading and position into the live arrays. Every boid therefore
+ * sees the previous frame whatever order (or thread) the boids are updated in.
+ *
+ * <P>In vector steering mode the snapshot also stores each boid's heading as a unit vector,
+ * so flocking boids can add up their neighbours' headings without any trigonometry.
+ *
+ * <P>With the neighbour kernel on, flocking boids find and add up their neighbours in one pass
+ * over the spatial grid (see SpatialGrid.sumNeighbours) rather than listing them first. The
+ * snapshot then also stores each heading in degrees, as angle steering averages it. Boids of a
+ * species with a neighbour limit still list their neighbours, as a sum can't say which are nearest.
+ *
+ * <P>Every flocking boid has its own random stream, held as one long per slot. Stream n is
+ * started from the store's seed and n, and boids are given streams in the order they are
+ * added, so the same seed and the same additions give the same run on any number of threads.
+ *
+ * <P>Radius, speed, the steering weights and the neighbour limit belong to a boid's Species rather than to the boid,
+ * so each slot only holds the number of its species in the store's species table. Every kind
+ * starts in a default species of its own. The newest values of every species are copied into
+ * the table by snapshot(), so a species changed mid-frame only takes effect from the next one.
+ */
+public class FlockStore {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	public static final byte FLOCKING = 0;
+	public static final byte PREDATOR = 1;
+	public static final byte FOOD = 2;
+	public static final byte STATIC_PREDATOR = 3;
+	//Names of the kinds, which are also the names of their default species
+	private static final String[] KIND_NAMES = { "flocking", "predator", "food", "static predator" };
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private int size = 0;
+	double[] x;
+	double[] y;
+	double[] heading; //radians
+	//Frozen copy of the previous frame - read when looking at other boids
+	double[] frontX = new double[0];
+	double[] frontY = new double[0];
+	double[] frontHeading = new double[0];
+	//Unit heading vectors (sin, cos of frontHeading) - only filled in vector steering mode
+	double[] frontDirX = new double[0];
+	double[] frontDirY = new double[0];
+	//Headings in degrees (-179 to 180) - only filled in angle steering mode with the neighbour kernel on
+	double[] frontDegrees = new double[0];
+	byte[] kind;
+	//Position of each boid's species in the species table
+	int[] species;
+	boolean[] eaten;
+	//State of each boid's random stream (see RandomStreams)
+	long[] randomState;
+	//Number of boids each flocking boid found nearby the last time it flocked
+	int[] neighbourCount;
+	Boid[] views;
+	//Slots of each kind of boid, indexed by kind, and where each slot sits in its kind's list
+	final IntList[] kindSlots = { new IntList(), new IntList(), new IntList(), new IntList() };
+	int[] kindPosition;
+	//Handle index held by each slot, and the slot and generation of each handle index (-1 if free)
+	int[] slotHandle;
+	int[] handleSlot;
+	private int[] handleGeneration;
+	private int handleCount = 0;
+	//Sized with the handle arrays, so removing a boid never has to grow it
+	private final IntList freeHandles = new IntList();
+	//Number of boids ever added, so neighbour lists know when a new boid could be missing from them
+	long additions = 0;
+	//Species table - every species a boid has been given, and its values as of the last snapshot
+	private Species[] speciesTable = new Species[8];
+	private long[] speciesVersion = new long[8];
+	private int speciesCount = 0;
+	int[] speciesRadius = new int[8];
+	int[] speciesSpeed = new int[8];
+	double[] speciesCohesion = new double[8];
+	double[] speciesSeparation = new double[8];
+	double[] speciesAlignment = new double[8];
+	int[] speciesNeighbourLimit = new int[8];
+	//Species given to new boids of each kind, indexed by kind - also the first entries of the table
+	private final Species[] defaultSpecies = {
+			new Species(KIND_NAMES[FLOCKING], 100, 100, 0, 0, 0),
+			new Species(KIND_NAMES[PREDATOR], 50, 150, 0, 0, 0),
+			new Species(KIND_NAMES[FOOD], 100, 0, 0, 0, 0),
+			new Species(KIND_NAMES[STATIC_PREDATOR], 100, 0, 0, 0, 0) };
+	private boolean vectorSteering = false;
+	private boolean fastTrig = false;
+	private boolean neighbourKernel = false;
+	//Verlet neighbour lists flocking boids use in place of a grid search, or null if they search every tick
+	private NeighbourCache neighbourCache;
+	//Unseeded stores differ from run to run, as the single shared generator used to
+	private long seed = RandomStreams.mix(System.nanoTime());
+	private long nextStream = 0;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create an empty store
+    */
+	public FlockStore() {
+		this(64);
+	}
+
+    /**
+    * Constructor to create an empty store with room for the given number of boids
+    *
+    * @param capacity the number of boids the store can hold before growing
+    */
+	public FlockStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		x = new double[capacity];
+		y = new double[capacity];
+		heading = new double[capacity];
+		kind = new byte[capacity];
+		species = new int[capacity];
+		eaten = new boolean[capacity];
+		randomState = new long[capacity];
+		neighbourCount = new int[capacity];
+		views = new Boid[capacity];
+		kindPosition = new int[capacity];
+		slotHandle = new int[capacity];
+		handleSlot = new int[capacity];
+		handleGeneration = new int[capacity];
+		freeHandles.ensureCapacity(capacity);
+		for (Species kindSpecies : defaultSpecies) {
+			indexOf(kindSpecies);
+		}
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Removes a boid from the store. The boid in the last slot is moved into the
+	 * freed slot so the slots stay dense.
+	 *
+	 * @param boid the boid to remove
+	 */
+	public void remove(Boid boid) {
+		int slot = boid.slot;
+		if (slot < 0 || slot >= size || views[slot] != boid) {
+			return;
+		}
+		//Removed from its kind's list by moving the last slot of that kind into its place
+		IntList sameKind = kindSlots[kind[slot]];
+		int lastOfKind = sameKind.removeLast();
+		if (lastOfKind != slot) {
+			sameKind.set(kindPosition[slot], lastOfKind);
+			kindPosition[lastOfKind] = kindPosition[slot];
+		}
+
+		releaseHandle(slotHandle[slot]);
+
+		int last = size - 1;
+		if (slot != last) {
+			x[slot] = x[last];
+			y[slot] = y[last];
+			heading[slot] = heading[last];
+			kind[slot] = kind[last];
+			species[slot] = species[last];
+			eaten[slot] = eaten[last];
+			randomState[slot] = randomState[last];
+			neighbourCount[slot] = neighbourCount[last];
+			views[slot] = views[last];
+			views[slot].slot = slot;
+			kindPosition[slot] = kindPosition[last];
+			kindSlots[kind[slot]].set(kindPosition[slot], slot);
+			slotHandle[slot] = slotHandle[last];
+			handleSlot[slotHandle[slot]] = slot;
+		}
+		views[last] = null;
+		boid.slot = -1;
+		size--;
+	}
+
+	/**
+	 * Grows the store so it can hold the given number of boids without growing again,
+	 * used before adding a large number of boids at once
+	 *
+	 * @param capacity the number of boids the store should be able to hold
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > x.length) {
+			grow(capacity);
+		}
+	}
+
+	/**
+	 * Finds the slot of the boid a handle was given to
+	 *
+	 * @param handle a handle from getHandle()
+	 * @return the boid's current slot, or -1 if the boid has since been removed
+	 */
+	public int slotOf(long handle) {
+		int index = (int) handle;
+		if (handle < 0 || index >= handleCount || handleGeneration[index] != (int) (handle >>> 32)) {
+			return -1;
+		}
+		return handleSlot[index];
+	}
+
+	/**
+	 * Finds the boid a handle was given to
+	 *
+	 * @param handle a handle from getHandle()
+	 * @return the boid, or null if it has since been removed
+	 */
+	public Boid resolve(long handle) {
+		int slot = slotOf(handle);
+		return slot < 0 ? null : views[slot];
+	}
+
+	/**
+	 * Puts the boids of each kind back into a saved order. Removing boids shuffles the order
+	 * the boids of a kind are visited in, and flee adds up predators in that order, so a
+	 * restored simulation needs the same order to carry on exactly as the saved one.
+	 *
+	 * @param positions where each slot sat in its kind's list, for the first size() slots - the
+	 *                  positions of each kind must be 0 to count - 1 in any order
+	 */
+	public void setKindPositions(int[] positions) {
+		for (int slot = 0; slot < size; slot++) {
+			kindPosition[slot] = positions[slot];
+			kindSlots[kind[slot]].set(positions[slot], slot);
+		}
+	}
+
+	/**
+	 * Finds the position of a species in the species table, adding it if no boid in this
+	 * store has used it before
+	 *
+	 * @param boidSpecies the species to find
+	 * @return the position of the species in the table
+	 */
+	public int indexOf(Species boidSpecies) {
+		Objects.requireNonNull(boidSpecies, "species");
+		//There are only ever a handful of species, so a scan is quicker than a map
+		for (int i = 0; i < speciesCount; i++) {
+			if (speciesTable[i] == boidSpecies) {
+				return i;
+			}
+		}
+		if (speciesCount == speciesTable.length) {
+			int capacity = speciesCount * 2;
+			speciesTable = Arrays.copyOf(speciesTable, capacity);
+			speciesVersion = Arrays.copyOf(speciesVersion, capacity);
+			speciesRadius = Arrays.copyOf(speciesRadius, capacity);
+			speciesSpeed = Arrays.copyOf(speciesSpeed, capacity);
+			speciesCohesion = Arrays.copyOf(speciesCohesion, capacity);
+			speciesSeparation = Arrays.copyOf(speciesSeparation, capacity);
+			speciesAlignment = Arrays.copyOf(speciesAlignment, capacity);
+			speciesNeighbourLimit = Arrays.copyOf(speciesNeighbourLimit, capacity);
+		}
+		int index = speciesCount++;
+		speciesTable[index] = boidSpecies;
+		copySpecies(index, boidSpecies.getValues());
+		return index;
+	}
+
+	/**
+	 * Finds a species in the species table by name
+	 *
+	 * @param name the name of the species
+	 * @return the first species in the table with that name, or null if there is none
+	 */
+	public Species findSpecies(String name) {
+		for (int i = 0; i < speciesCount; i++) {
+			if (speciesTable[i].getName().equals(name)) {
+				return speciesTable[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Copies the newest values of every species that has changed into the species table.
+	 * Called by snapshot(), and by code that needs the table up to date between frames.
+	 */
+	public void refreshSpecies() {
+		for (int i = 0; i < speciesCount; i++) {
+			Species.Values values = speciesTable[i].getValues();
+			if (values.version != speciesVersion[i]) {
+				copySpecies(i, values);
+			}
+		}
+	}
+
+	/**
+	 * Copies the live positions and headings into the front arrays, and the newest species
+	 * values into the species table. Called once at the start of each frame, before any boid
+	 * looks at its neighbours.
+	 */
+	public void snapshot() {
+		refreshSpecies();
+		if (frontX.length < x.length) {
+			frontX = new double[x.length];
+			frontY = new double[x.length];
+			frontHeading = new double[x.length];
+			frontDirX = new double[x.length];
+			frontDirY = new double[x.length];
+			frontDegrees = new double[x.length];
+		}
+		System.arraycopy(x, 0, frontX, 0, size);
+		System.arraycopy(y, 0, frontY, 0, size);
+		System.arraycopy(heading, 0, frontHeading, 0, size);
+		if (vectorSteering) {
+			//One sin and cos per boid here saves one per neighbour when the headings are averaged
+			for (int i = 0; i < size; i++) {
+				frontDirX[i] = sin(heading[i]);
+				frontDirY[i] = cos(heading[i]);
+			}
+		} else if (neighbourKernel) {
+			//Converted once per boid rather than once per neighbour
+			for (int i = 0; i < size; i++) {
+				frontDegrees[i] = Utils.checkAngle(Math.toDegrees(heading[i]));
+			}
+		}
+	}
+
+	/**
+	 * Hands a grid the snapshot values flocking boids add up for their neighbours, so they can
+	 * be found and added up in one pass. Does nothing unless the neighbour kernel is on.
+	 *
+	 * @param grid the grid, just rebuilt from this store's snapshot positions
+	 */
+	public void sortNeighbourValues(SpatialGrid grid) {
+		if (!neighbourKernel) {
+			return;
+		}
+		if (vectorSteering) {
+			grid.sortValues(frontDirX, frontDirY, kind);
+		} else {
+			grid.sortValues(frontDegrees, null, kind);
+		}
+	}
+
+	/**
+	 * Sine using the trigonometry chosen for this store
+	 *
+	 * @param radians the angle
+	 * @return the sine of the angle, approximated if fast trigonometry is on
+	 */
+	public double sin(double radians) {
+		return fastTrig ? FastTrig.sin(radians) : Math.sin(radians);
+	}
+
+	/**
+	 * Cosine using the trigonometry chosen for this store
+	 *
+	 * @param radians the angle
+	 * @return the cosine of the angle, approximated if fast trigonometry is on
+	 */
+	public double cos(double radians) {
+		return fastTrig ? FastTrig.cos(radians) : Math.cos(radians);
+	}
+
+	/**
+	 * Math.atan2 using the trigonometry chosen for this store
+	 *
+	 * @param y the first argument of Math.atan2
+	 * @param x the second argument of Math.atan2
+	 * @return the angle in radians, approximated if fast trigonometry is on
+	 */
+	public double atan2(double y, double x) {
+		return fastTrig ? FastTrig.atan2(y, x) : Math.atan2(y, x);
+	}
+
+	/**
+	 * Removes every boid from the store
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			views[i].slot = -1;
+			views[i] = null;
+			releaseHandle(slotHandle[i]);
+		}
+		for (IntList slots : kindSlots) {
+			slots.clear();
+		}
+		size = 0;
+	}
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	/**
+	 * Gives a new boid a slot at the end of the store
+	 *
+	 * @param view the boid object the slot belongs to
+	 * @param boidKind one of FLOCKING, PREDATOR, FOOD or STATIC_PREDATOR
+	 * @param xPos the initial x position of the boid
+	 * @param yPos the initial y position of the boid
+	 * @return the slot given to the boid
+	 */
+	int add(Boid view, byte boidKind, double xPos, double yPos) {
+		if (size == x.length) {
+			grow(size * 2);
+		}
+		int slot = size++;
+		x[slot] = xPos;
+		y[slot] = yPos;
+		heading[slot] = 0;
+		kind[slot] = boidKind;
+		//The default species of each kind sits at the kind's own position in the table
+		species[slot] = boidKind;
+		eaten[slot] = false;
+		randomState[slot] = 0;
+		neighbourCount[slot] = 0;
+		views[slot] = view;
+		kindPosition[slot] = kindSlots[boidKind].size();
+		kindSlots[boidKind].add(slot);
+		//Handles are never in use by more boids than there are slots, so the handle arrays grow with the slots
+		int handle = freeHandles.size() > 0 ? freeHandles.removeLast() : handleCount++;
+		slotHandle[slot] = handle;
+		handleSlot[handle] = slot;
+		additions++;
+		return slot;
+	}
+
+	/**
+	 * Moves the boid in a slot into a species
+	 *
+	 * @param slot the slot of the boid
+	 * @param boidSpecies the boid's new species
+	 */
+	void setSpecies(int slot, Species boidSpecies) {
+		species[slot] = indexOf(boidSpecies);
+	}
+
+	/**
+	 * Gives the boid in a slot the next unused random stream
+	 *
+	 * @param slot the slot of the boid
+	 */
+	void startRandomStream(int slot) {
+		randomState[slot] = RandomStreams.streamState(seed, nextStream++);
+	}
+
+	/**
+	 * Draws a random double from a boid's stream
+	 *
+	 * @param slot the slot of the boid
+	 * @return a random double from 0 (inclusive) to 1 (exclusive)
+	 */
+	double nextRandomDouble(int slot) {
+		return RandomStreams.nextDouble(randomState, slot);
+	}
+
+	/**
+	 * Draws a random int below a bound from a boid's stream
+	 *
+	 * @param slot the slot of the boid
+	 * @param bound the upper bound (exclusive)
+	 * @return a random int from 0 to bound - 1
+	 */
+	int nextRandomInt(int slot, int bound) {
+		return RandomStreams.nextInt(randomState, slot, bound);
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	private void grow(int capacity) {
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		heading = Arrays.copyOf(heading, capacity);
+		kind = Arrays.copyOf(kind, capacity);
+		species = Arrays.copyOf(species, capacity);
+		eaten = Arrays.copyOf(eaten, capacity);
+		randomState = Arrays.copyOf(randomState, capacity);
+		neighbourCount = Arrays.copyOf(neighbourCount, capacity);
+		views = Arrays.copyOf(views, capacity);
+		kindPosition = Arrays.copyOf(kindPosition, capacity);
+		slotHandle = Arrays.copyOf(slotHandle, capacity);
+		handleSlot = Arrays.copyOf(handleSlot, capacity);
+		handleGeneration = Arrays.copyOf(handleGeneration, capacity);
+		freeHandles.ensureCapacity(capacity);
+	}
+
+	private void copySpecies(int index, Species.Values values) {
+		speciesVersion[index] = values.version;
+		speciesRadius[index] = values.radius;
+		speciesSpeed[index] = values.speed;
+		speciesCohesion[index] = values.cohesion;
+		speciesSeparation[index] = values.separation;
+		speciesAlignment[index] = values.alignment;
+		speciesNeighbourLimit[index] = values.neighbourLimit;
+	}
+
+	private void releaseHandle(int handle) {
+		handleSlot[handle] = -1;
+		//Kept positive so a valid handle is never negative
+		handleGeneration[handle] = (handleGeneration[handle] + 1) & Integer.MAX_VALUE;
+		freeHandles.add(handle);
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public static String getKindName(byte boidKind) {
+		return KIND_NAMES[boidKind];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Boid getBoid(int slot) {
+		return views[slot];
+	}
+
+	public byte getKind(int slot) {
+		return kind[slot];
+	}
+
+	//Generation in the top 32 bits, handle index in the bottom 32
+	public long getHandle(int slot) {
+		int handle = slotHandle[slot];
+		return ((long) handleGeneration[handle] << 32) | handle;
+	}
+
+	//Live list of the slots holding one kind of boid - read only, and only valid until a boid is added or removed
+	public IntList getSlots(byte boidKind) {
+		return kindSlots[boidKind];
+	}
+
+	public int count(byte boidKind) {
+		return kindSlots[boidKind].size();
+	}
+
+	public Species getSpecies(int index) {
+		return speciesTable[index];
+	}
+
+	public int getSpeciesCount() {
+		return speciesCount;
+	}
+
+	//Species new boids of a kind are put in
+	public Species getDefaultSpecies(byte boidKind) {
+		return defaultSpecies[boidKind];
+	}
+
+	//Values of a species in the table as of the last snapshot or refreshSpecies()
+	public int getSpeciesRadius(int index) {
+		return speciesRadius[index];
+	}
+
+	public int getSpeciesSpeed(int index) {
+		return speciesSpeed[index];
+	}
+
+	public double getSpeciesCohesion(int index) {
+		return speciesCohesion[index];
+	}
+
+	public double getSpeciesSeparation(int index) {
+		return speciesSeparation[index];
+	}
+
+	public double getSpeciesAlignment(int index) {
+		return speciesAlignment[index];
+	}
+
+	public int getSpeciesNeighbourLimit(int index) {
+		return speciesNeighbourLimit[index];
+	}
+
+	public boolean isVectorSteering() {
+		return vectorSteering;
+	}
+
+	//Takes effect from the next snapshot
+	public void setVectorSteering(boolean vectorSteering) {
+		this.vectorSteering = vectorSteering;
+	}
+
+	public boolean isFastTrig() {
+		return fastTrig;
+	}
+
+	public void setFastTrig(boolean fastTrig) {
+		this.fastTrig = fastTrig;
+	}
+
+	public boolean isNeighbourKernel() {
+		return neighbourKernel;
+	}
+
+	//Takes effect from the next snapshot
+	public void setNeighbourKernel(boolean neighbourKernel) {
+		this.neighbourKernel = neighbourKernel;
+	}
+
+	public NeighbourCache getNeighbourCache() {
+		return neighbourCache;
+	}
+
+	//Null turns the neighbour lists off - a new cache builds its lists on the next tick
+	public void setNeighbourCache(NeighbourCache neighbourCache) {
+		this.neighbourCache = neighbourCache;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	//Boids added from now on are given streams 0, 1, 2... from the new seed - set before adding any
+	public void setSeed(long seed) {
+		this.seed = seed;
+		this.nextStream = 0;
+	}
+
+	//Number of random streams given out so far, which is also the number of the next one
+	public long getNextStream() {
+		return nextStream;
+	}
+
+	public void setNextStream(long nextStream) {
+		this.nextStream = nextStream;
+	}
+
+	//Live arrays are read and filled in bulk by checkpoints - only the first size() entries are valid,
+	//and they are replaced when the store grows
+	public byte[] getKinds() {
+		return kind;
+	}
+
+	public double[] getXPositions() {
+		return x;
+	}
+
+	public double[] getYPositions() {
+		return y;
+	}
+
+	public double[] getHeadings() {
+		return heading;
+	}
+
+	//Position of each boid's species in the species table
+	public int[] getSpeciesIndices() {
+		return species;
+	}
+
+	public long[] getRandomStates() {
+		return randomState;
+	}
+
+	public int[] getKindPositions() {
+		return kindPosition;
+	}
+
+	//Snapshot position arrays are handed to the spatial grid - only the first size() entries are valid
+	public double[] getFrontXPositions() {
+		return frontX;
+	}
+
+	public double[] getFrontYPositions() {
+		return frontY;
+	}
+}
@@ -1,10 +1,8 @@
 package boid;
 
-import java.util.List;
-import java.util.Random;
-
-import drawing.Canvas;
-import geometry.DirectedCoordinate;
+import simulation.SpatialGrid;
+import tools.IntList;
+import tools.NearestHeap;
 import tools.Utils;
 
 /**
@@ -15,13 +13,10 @@ public class FlockingBoid extends DynamicBoid {
 	// **************************************************
 	// Fields
 	// **************************************************
-	private double cohesionControl;
-	private double separationControl;
-	private double alignmentControl;
-	public boolean eaten = false;
-	private static Random randomGenerator = new Random();
-	private double maxAngle = 3;
-	float maxAngleDelta = 6;
+	//Every value that changes is kept in the store, so a flocking boid object is only its
+	//header and the fields of Boid
+	private static final double MAX_ANGLE = 3;
+	static final float MAX_ANGLE_DELTA = 6;
 	
     // **************************************************
     // Constructors
@@ -29,89 +24,115 @@ public class FlockingBoid extends DynamicBoid {
     /**
     * Default constructor to create and initialise a boid
 	*
-    * @param myCanvas the canvas to add the boid to
+    * @param store the store holding the state of every boid in the simulation
     * @param xPos the initial x position of the boid
     * @param yPos the initial y position of the boid
     */
-	public FlockingBoid(Canvas canvas, double xpos, double ypos) {
-		super(canvas, xpos, ypos);
+	public FlockingBoid(FlockStore store, double xpos, double ypos) {
+		super(store, FlockStore.FLOCKING, xpos, ypos);
 		this.size = 5;
-		//On entry, a random starting angle is calculated
-		setAngleDegrees(randomGenerator.nextInt(360));
+		startRandomMovement();
 	}
 	
     // **************************************************
     // Public methods
     // **************************************************
 	/**
-	 * Method to control the flocking interactions between other boids
+	 * Puts a flocking boid that has been removed from the store back into the simulation at a
+	 * new position, with the same starting values as a newly created boid (including the
+	 * default flocking species). The object is reused, so adding
+	 * boids to replace eaten ones creates no garbage.
 	 * 
-	 * @param allBoids array containing all the nearby boids within the search radius
+	 * @param xPos the new x position of the boid
+	 * @param yPos the new y position of the boid
 	 */
-	public void flock(List<Boid> allBoids) {
+	public void respawn(double xPos, double yPos) {
+		if (slot >= 0) {
+			throw new IllegalStateException("Boid " + getId() + " is still in the simulation");
+		}
+		attach(xPos, yPos);
+		startRandomMovement();
+	}
 
-		//Useful References: 
-		// 1. 0 degrees is down
-		// 2. 90 degrees is right
-		// 3. Math.atan2(0, 1) is down
-		// 4. Math.atan2(1, 0) is right
-		
-		List<Boid> nearbyBoids = findNearbyBoids(allBoids, this.radius);
-		if (nearbyBoids.size() > 0) {
-			
-			DirectedCoordinate nearbyAverages = calculateNearbyAverages(nearbyBoids);
-			double cohesionAngle = calculateCohesionAngle(nearbyAverages);
-			double distToCenter = computeDist(nearbyAverages.getX(), nearbyAverages.getY());
-			double scaledDist = distToCenter / radius;
-			
-			//Scaler used to control the amount of cohesion depending on the distance to the centre of the flock
-			scaledDist = Math.pow(scaledDist, 2);
-			
-			if (predatorCheck(nearbyBoids))
-			{
-				//Any nearby predators cause separation
-				this.turn(0.1*Utils.checkAngle(cohesionAngle + 180));
-			}
-			else if (foodCheck(nearbyBoids)) 
-			{
-				//Any nearby food causes cohesion on the food
-				this.turn(0.3*Utils.checkAngle(cohesionAngle));
+	/**
+	 * Method to control the flocking interactions between other boids, checking every
+	 * boid in the store
+	 * 
+	 * @param scratch working space for the thread running this boid
+	 */
+	@Override
+	public void flock(FlockScratch scratch) {
+		IntList nearbyBoids = scratch.nearbyBoids;
+		nearbyBoids.clear();
+		findNearbyBoids(getRadius(), nearbyBoids);
+		int limit = store.speciesNeighbourLimit[store.species[slot]];
+		if (limit > 0) {
+			keepNearest(nearbyBoids, limit, null, scratch);
+		}
+		store.neighbourCount[slot] = Math.max(nearbyBoids.size() - 1, 0);
+		steer(nearbyBoids, null, scratch);
+	}
+
+	/**
+	 * Method to control the flocking interactions between other boids, using a spatial grid
+	 * to find the nearby boids. If the store's values have been sorted into the grid (the
+	 * neighbour kernel), the nearby boids are found and averaged in one pass. Otherwise, if the
+	 * store has neighbour lists, the nearby boids are picked out of this boid's list.
+	 * 
+	 * <P>If the boid's species has a neighbour limit, only that many of the nearest boids
+	 * within the radius are used. They are picked out of the neighbour list if there is one,
+	 * or found by searching outwards from the boid through the grid, and the kernel isn't used.
+	 * 
+	 * @param grid spatial grid built from the store's snapshot positions this frame
+	 * @param scratch working space for the thread running this boid
+	 */
+	@Override
+	public void flock(SpatialGrid grid, FlockScratch scratch) {
+		int limit = store.speciesNeighbourLimit[store.species[slot]];
+		if (grid.hasSortedValues() && limit == 0) {
+			flockSums(grid, scratch);
+			return;
+		}
+		IntList nearbyBoids = scratch.nearbyBoids;
+		nearbyBoids.clear();
+		NeighbourCache cache = store.getNeighbourCache();
+		if (cache != null && cache.isListed(store.slotHandle[slot])) {
+			findCachedBoids(grid, cache, nearbyBoids);
+			if (limit > 0) {
+				keepNearest(nearbyBoids, limit, grid, scratch);
 			}
-			else {
-				//The current angle of the boid has to be taken into account when implementing alignment 
-				double origAngle = this.getAngleDegrees();
-				//Alignment, separation and cohesion implemented into one angle, resulting in smoother movement
-				double angleDelta = cohesionControl * cohesionAngle * scaledDist
-						+ separationControl * Utils.checkAngle(cohesionAngle + 180) * (1 - scaledDist)
-						+ alignmentControl * (nearbyAverages.getAngleDegrees() - origAngle);
-				// 	Clamp change in angle per frame to avoid "shakiness" 
-				angleDelta = Math.min(Math.max(angleDelta, -maxAngleDelta), maxAngleDelta);
-				this.turn(angleDelta);
-			} // end if
-		} // end if
+		} else if (limit > 0) {
+			findNearestBoids(grid, limit, scratch);
+		} else {
+			findNearbyBoids(grid, getRadius(), nearbyBoids);
+		}
+		store.neighbourCount[slot] = Math.max(nearbyBoids.size() - 1, 0);
+		steer(nearbyBoids, grid, scratch);
 	}
 	
 	/**
 	 * Method to control the behaviour of boids around predators
-	 * 
-	 * @param allBoids array containing all the nearby boids within the search
-	 *                   radius
 	 */
-	public void flee(List<Boid> allBoids) {
+	public void flee() {
+		if (store.isVectorSteering()) {
+			fleeVectors();
+			return;
+		}
 		double tempX;
 		double tempY;
 		double angleToPredator = 0;
+		double ownX = getX();
+		double ownY = getY();
 
-		
-		for (Boid boidToCheck : allBoids) {
-			if (boidToCheck.getClass() == PredatorBoid.class || boidToCheck.getClass() == StaticPredatorBoid.class) {
-				//If a predator is identified, the angle to turn to face it is calculated
-				tempX = boidToCheck.getLocation().getX() - this.getLocation().getX();
-				tempY = boidToCheck.getLocation().getY() - this.getLocation().getY();
-				double tempAngle = Math.toDegrees(Math.atan2(tempX, tempY) - this.getAngleRadians());
-				//Multiple predator angles are accumulated, resulting in an angle facing the average position of the predators
-				angleToPredator += tempAngle;
-			} // end if
+		//Only the predators are visited, rather than every boid in the store
+		for (int p = 0; p < predatorCount(); p++) {
+			int j = predatorSlot(p);
+			//The angle to turn to face each predator is calculated
+			tempX = store.frontX[j] - ownX;
+			tempY = store.frontY[j] - ownY;
+			double tempAngle = Math.toDegrees(Math.atan2(tempX, tempY) - this.getAngleRadians());
+			//Multiple predator angles are accumulated, resulting in an angle facing the average position of the predators
+			angleToPredator += tempAngle;
 		} // end for
 		
 		//If any predators are found, the flocking boids will turn away from the direction of them 
@@ -130,7 +151,9 @@ public class FlockingBoid extends DynamicBoid {
 	public void update(int time) {
 		{
 			// add random motion
-			double angle = randomGenerator.nextDouble() * 2 * maxAngle - maxAngle;
+			//Each boid draws from its own stream in the store, so the turn doesn't depend on
+			//which thread updates the boid or in what order
+			double angle = store.nextRandomDouble(slot) * 2 * MAX_ANGLE - MAX_ANGLE;
 			this.turn(angle);
 		}
 		//Boid is moved forward using the DynamicBoid's update function
@@ -141,55 +164,327 @@ public class FlockingBoid extends DynamicBoid {
     // Private  methods
     // **************************************************
 	/**
-	 * Calculates the average values of neary boids
+	 * Gives the boid a new random stream from the store and picks a random starting angle
+	 */
+	private void startRandomMovement() {
+		store.startRandomStream(slot);
+		//On entry, a random starting angle is calculated
+		setAngleDegrees(store.nextRandomInt(slot, 360));
+	}
+
+	/**
+	 * Vector steering version of flee - the boid turns to face directly away from the sum of
+	 * the directions to every predator, which needs one square root per predator and a single
+	 * atan2 rather than an atan2 per predator
+	 */
+	private void fleeVectors() {
+		double awayX = 0;
+		double awayY = 0;
+		double ownX = getX();
+		double ownY = getY();
+
+		for (int p = 0; p < predatorCount(); p++) {
+			int j = predatorSlot(p);
+			double tempX = store.frontX[j] - ownX;
+			double tempY = store.frontY[j] - ownY;
+			double distance = Math.sqrt(tempX * tempX + tempY * tempY);
+			if (distance > 0) {
+				awayX -= tempX / distance;
+				awayY -= tempY / distance;
+			}
+		}
+		if (awayX != 0 || awayY != 0) {
+			this.setAngleRadians(store.atan2(awayX, awayY));
+		}
+	}
+
+	/**
+	 * Turns the boid using the cohesion, separation and alignment of the nearby boids.
+	 * 
+	 * <P>In vector steering mode the neighbours' headings are added as unit vectors, so the
+	 * average heading is correct either side of +/-180 degrees, and the cohesion and alignment
+	 * angles are each found with one atan2 however many neighbours there are. The blend of the
+	 * three rules and the clamp on the turn per frame are the same in both modes.
+	 * 
+	 * @param nearbyBoids slots of the boids inside the search radius
+	 * @param grid the grid used to find them, or null if positions do not wrap around the screen
+	 * @param scratch working space the averages are kept in
+	 */
+	private void steer(IntList nearbyBoids, SpatialGrid grid, FlockScratch scratch) {
+		if (nearbyBoids.size() > 0) {
+			calculateNearbyAverages(nearbyBoids, grid, scratch);
+			steerFromAverages(scratch, predatorCheck(nearbyBoids), foodCheck(nearbyBoids));
+		}
+	}
+
+	/**
+	 * Finds the boids within this boid's radius from its list in the neighbour cache
 	 * 
-	 * @param nearbyBoids boid list containing those inside the search radius
+	 * @param grid spatial grid built from the store's snapshot positions this frame
+	 * @param cache the store's neighbour lists, which include one for this boid
+	 * @param nearbyBoids list to fill with the slots of boids within the radius
+	 * 		  (this boid's slot is added last if any were found)
+	 */
+	private void findCachedBoids(SpatialGrid grid, NeighbourCache cache, IntList nearbyBoids) {
+		int radius = getRadius();
+		double ownX = getX();
+		double ownY = getY();
+		int handle = store.slotHandle[slot];
+		int[] candidates = cache.candidates;
+
+		double radiusSq = (double) radius * radius;
+		for (int i = cache.listStart[handle]; i < cache.listEnd[handle]; i++) {
+			int j = store.handleSlot[candidates[i]];
+			//Boids removed since the list was built are skipped
+			if (j >= 0) {
+				double xDistance = grid.deltaX(ownX, store.frontX[j]);
+				double yDistance = grid.deltaY(ownY, store.frontY[j]);
+				if (xDistance * xDistance + yDistance * yDistance < radiusSq) {
+					nearbyBoids.add(j);
+				}
+			}
+		}
+		if (nearbyBoids.size() > 0) {
+			nearbyBoids.add(slot);
+		}
+	}
+
+	/**
+	 * Finds the nearest boids within this boid's radius, up to a limit, by searching outwards
+	 * through the grid
 	 * 
-	 * @return the average xPosition, yPosition and angle of boids in the list in the form of a
-	 * 		   DirectedCoordinate
+	 * @param grid spatial grid built from the store's snapshot positions this frame
+	 * @param limit the most boids to find
+	 * @param scratch working space whose nearby list is filled with the slots of the boids
+	 * 		  found (this boid's slot is added last if any were found)
 	 */
-	private DirectedCoordinate calculateNearbyAverages(List<Boid> nearbyBoids) {
+	private void findNearestBoids(SpatialGrid grid, int limit, FlockScratch scratch) {
+		IntList nearbyBoids = scratch.nearbyBoids;
+		NearestHeap nearestBoids = scratch.nearestBoids();
+		nearestBoids.clear(limit);
+		grid.nearestWithin(getX(), getY(), getRadius(), slot, nearestBoids);
+		//Nearest first, so the neighbours are averaged in the same order however they were found
+		nearestBoids.sort();
+		for (int i = 0; i < nearestBoids.size(); i++) {
+			nearbyBoids.add(nearestBoids.get(i));
+		}
+		if (nearbyBoids.size() > 0) {
+			nearbyBoids.add(slot);
+		}
+	}
+
+	/**
+	 * Cuts a list of nearby boids down to the nearest few
+	 * 
+	 * @param nearbyBoids slots of the boids inside the search radius, with this boid's slot last
+	 * @param limit the most boids to keep, not counting this boid
+	 * @param grid the grid used to find them, or null if positions do not wrap around the screen
+	 * @param scratch working space holding the heap the nearest are picked with
+	 */
+	private void keepNearest(IntList nearbyBoids, int limit, SpatialGrid grid, FlockScratch scratch) {
+		int others = nearbyBoids.size() - 1;
+		if (others <= limit) {
+			return;
+		}
+		NearestHeap nearestBoids = scratch.nearestBoids();
+		double ownX = getX();
+		double ownY = getY();
+		nearestBoids.clear(limit);
+		for (int i = 0; i < others; i++) {
+			int j = nearbyBoids.get(i);
+			double xDistance = grid != null ? grid.deltaX(ownX, store.frontX[j]) : store.frontX[j] - ownX;
+			double yDistance = grid != null ? grid.deltaY(ownY, store.frontY[j]) : store.frontY[j] - ownY;
+			nearestBoids.offer(j, xDistance * xDistance + yDistance * yDistance);
+		}
+		nearestBoids.sort();
+		nearbyBoids.clear();
+		for (int i = 0; i < nearestBoids.size(); i++) {
+			nearbyBoids.add(nearestBoids.get(i));
+		}
+		nearbyBoids.add(slot);
+	}
+
+	/**
+	 * Neighbour kernel version of flock - the grid finds the nearby boids and adds up their
+	 * positions, headings and kinds in one pass, then the boid steers from the averages in
+	 * the same way as steer
+	 * 
+	 * @param grid spatial grid built from the store's snapshot positions this frame, with the
+	 *             store's values sorted into it
+	 * @param scratch working space the averages are kept in
+	 */
+	private void flockSums(SpatialGrid grid, FlockScratch scratch) {
+		double[] nearbySums = scratch.nearbySums;
+		int neighbourCount = grid.sumNeighbours(getX(), getY(), getRadius(), slot, nearbySums);
+		store.neighbourCount[slot] = neighbourCount;
+		if (neighbourCount == 0) {
+			return;
+		}
+		//This boid counts towards the averages, as it is in the list calculateNearbyAverages is given
+		int boids = neighbourCount + 1;
+		scratch.averageX = getX() + nearbySums[SpatialGrid.SUM_X] / boids;
+		scratch.averageY = getY() + nearbySums[SpatialGrid.SUM_Y] / boids;
+		if (store.isVectorSteering()) {
+			scratch.averageAngle = 0;
+			scratch.headingSumX = nearbySums[SpatialGrid.SUM_A] + store.frontDirX[slot];
+			scratch.headingSumY = nearbySums[SpatialGrid.SUM_B] + store.frontDirY[slot];
+		} else {
+			scratch.averageAngle = (nearbySums[SpatialGrid.SUM_A] + store.frontDegrees[slot]) / boids;
+			scratch.headingSumX = 0;
+			scratch.headingSumY = 0;
+		}
+		int kinds = (int) nearbySums[SpatialGrid.TAGS];
+		boolean predator = (kinds & (1 << FlockStore.PREDATOR | 1 << FlockStore.STATIC_PREDATOR)) != 0;
+		boolean food = (kinds & (1 << FlockStore.FOOD)) != 0;
+		steerFromAverages(scratch, predator, food);
+	}
+
+	/**
+	 * Turns the boid using the averages found by calculateNearbyAverages or flockSums
+	 * 
+	 * @param scratch working space holding the averages
+	 * @param predatorNearby true if a predator is among the nearby boids
+	 * @param foodNearby true if food is among the nearby boids
+	 */
+	private void steerFromAverages(FlockScratch scratch, boolean predatorNearby, boolean foodNearby) {
+
+		//Useful References: 
+		// 1. 0 degrees is down
+		// 2. 90 degrees is right
+		// 3. Math.atan2(0, 1) is down
+		// 4. Math.atan2(1, 0) is right
+		
+		double cohesionAngle;
+		double alignmentAngle;
+		if (store.isVectorSteering()) {
+			double angle = this.getAngleRadians();
+			double dirX = store.sin(angle);
+			double dirY = store.cos(angle);
+			cohesionAngle = angleFromHeading(dirX, dirY, scratch.averageX - getX(),
+					scratch.averageY - getY());
+			alignmentAngle = angleFromHeading(dirX, dirY, scratch.headingSumX, scratch.headingSumY);
+		} else {
+			cohesionAngle = calculateCohesionAngle(scratch);
+			//The current angle of the boid has to be taken into account when implementing alignment 
+			alignmentAngle = scratch.averageAngle - this.getAngleDegrees();
+		}
+		double distToCenter = computeDist(scratch.averageX, scratch.averageY);
+		double scaledDist = distToCenter / getRadius();
+		
+		//Scaler used to control the amount of cohesion depending on the distance to the centre of the flock
+		scaledDist = Math.pow(scaledDist, 2);
+		
+		if (predatorNearby)
+		{
+			//Any nearby predators cause separation
+			this.turn(0.1*Utils.checkAngle(cohesionAngle + 180));
+		}
+		else if (foodNearby) 
+		{
+			//Any nearby food causes cohesion on the food
+			this.turn(0.3*Utils.checkAngle(cohesionAngle));
+		}
+		else {
+			//Alignment, separation and cohesion implemented into one angle, resulting in smoother movement
+			int species = store.species[slot];
+			double angleDelta = store.speciesCohesion[species] * cohesionAngle * scaledDist
+					+ store.speciesSeparation[species] * Utils.checkAngle(cohesionAngle + 180) * (1 - scaledDist)
+					+ store.speciesAlignment[species] * alignmentAngle;
+			// 	Clamp change in angle per frame to avoid "shakiness" 
+			angleDelta = Math.min(Math.max(angleDelta, -MAX_ANGLE_DELTA), MAX_ANGLE_DELTA);
+			this.turn(angleDelta);
+		} // end if
+	}
+
+	/**
+	 * Calculates the average values of neary boids, storing the average xPosition, yPosition
+	 * and angle in the scratch's averageX, averageY and averageAngle. In vector steering mode the
+	 * heading vectors are summed into headingSumX and headingSumY instead of averaging the angles.
+	 * 
+	 * @param nearbyBoids slots of the boids inside the search radius
+	 * @param grid the grid used to find them, or null if positions do not wrap around the screen
+	 * @param scratch working space the averages are kept in
+	 */
+	private void calculateNearbyAverages(IntList nearbyBoids, SpatialGrid grid, FlockScratch scratch) {
 		double totalX = 0;
 		double totalY = 0;
 		double totalAngle = 0;
+		double totalDirX = 0;
+		double totalDirY = 0;
+		boolean vectors = store.isVectorSteering();
+		double ownX = getX();
+		double ownY = getY();
 		
-		for (Boid boid : nearbyBoids) {
-			totalX += boid.getLocation().getX();
-			totalY += boid.getLocation().getY();
-			totalAngle += Utils.checkAngle(boid.getAngleDegrees());
+		//Positions are summed relative to this boid so that neighbours across a screen edge
+		//are averaged from the side nearest to it
+		for (int i = 0; i < nearbyBoids.size(); i++) {
+			int j = nearbyBoids.get(i);
+			if (grid != null) {
+				totalX += grid.deltaX(ownX, store.frontX[j]);
+				totalY += grid.deltaY(ownY, store.frontY[j]);
+			} else {
+				totalX += store.frontX[j] - ownX;
+				totalY += store.frontY[j] - ownY;
+			}
+			if (vectors) {
+				totalDirX += store.frontDirX[j];
+				totalDirY += store.frontDirY[j];
+			} else {
+				totalAngle += Utils.checkAngle(Math.toDegrees(store.frontHeading[j]));
+			}
 		} // end for
 		
-		double aveXPos = totalX / nearbyBoids.size();
-		double aveYPos = totalY / nearbyBoids.size();
-		double aveAngle = totalAngle / nearbyBoids.size();
-		return new DirectedCoordinate((aveXPos), (aveYPos), aveAngle);
+		scratch.averageX = ownX + totalX / nearbyBoids.size();
+		scratch.averageY = ownY + totalY / nearbyBoids.size();
+		scratch.averageAngle = totalAngle / nearbyBoids.size();
+		scratch.headingSumX = totalDirX;
+		scratch.headingSumY = totalDirY;
 	}
 	/**
-	 * Calculates the cohesion angle
+	 * Calculates the cohesion angle from the averages found by calculateNearbyAverages
 	 * 
-	 * @param nearbyBoids boid list containing those inside the search radius
-	 * 
-	 * @return the average xPosition, yPosition and angle of boids in the list in the form of a
-	 * 		   DirectedCoordinate
+	 * @param scratch working space holding the averages
+	 * @return the angle needed to turn to face the average position of the nearby boids
 	 */
-	private double calculateCohesionAngle(DirectedCoordinate averages) {
-		double xPart = averages.getX() - this.getLocation().getX();
-		double yPart = averages.getY() - this.getLocation().getY();
+	private double calculateCohesionAngle(FlockScratch scratch) {
+		double xPart = scratch.averageX - getX();
+		double yPart = scratch.averageY - getY();
 
 		double TurnAngle = Math.toDegrees(Math.atan2(xPart, yPart) - this.getAngleRadians());
 
 		return Utils.checkAngle(TurnAngle);
 	}
 	
+	/**
+	 * Calculates the angle to turn from the boid's heading to face along a vector, using the
+	 * cross and dot products rather than subtracting two angles
+	 * 
+	 * @param dirX x component of the boid's unit heading vector
+	 * @param dirY y component of the boid's unit heading vector
+	 * @param xPart x component of the vector to turn towards
+	 * @param yPart y component of the vector to turn towards
+	 * 
+	 * @return the turn in degrees, limited in the same way as the angle steering mode
+	 */
+	private double angleFromHeading(double dirX, double dirY, double xPart, double yPart) {
+		double cross = xPart * dirY - yPart * dirX;
+		double dot = xPart * dirX + yPart * dirY;
+		return Utils.checkAngle(Math.toDegrees(store.atan2(cross, dot)));
+	}
+	
 	/**
 	 * Flags any predators from a list of boids
 	 * 
-	 * @param allBoids boid list to check for predators
+	 * @param nearbyBoids slots of the boids to check for predators
 	 */
-	private boolean predatorCheck(List<Boid> allBoids) {
+	private boolean predatorCheck(IntList nearbyBoids) {
 		boolean found = false;
-		for (Boid boidToCheckToCheck : allBoids) {
-			if (boidToCheckToCheck.getClass() == PredatorBoid.class || boidToCheckToCheck.getClass() == StaticPredatorBoid.class) {
+		if (predatorCount() == 0) {
+			return false;
+		}
+		for (int i = 0; i < nearbyBoids.size(); i++) {
+			byte kind = store.kind[nearbyBoids.get(i)];
+			if (kind == FlockStore.PREDATOR || kind == FlockStore.STATIC_PREDATOR) {
 				found = true;
 				break;
 			}
@@ -200,12 +495,15 @@ public class FlockingBoid extends DynamicBoid {
 	/**
 	 * Flags any food from a list of boids
 	 * 
-	 * @param allBoids boid list to check for food
+	 * @param nearbyBoids slots of the boids to check for food
 	 */
-	private boolean foodCheck(List<Boid> allBoids) {
+	private boolean foodCheck(IntList nearbyBoids) {
 		boolean found = false;
-		for (Boid boidToCheck : allBoids) {
-			if (boidToCheck.getClass() == FoodBoid.class) {
+		if (store.count(FlockStore.FOOD) == 0) {
+			return false;
+		}
+		for (int i = 0; i < nearbyBoids.size(); i++) {
+			if (store.kind[nearbyBoids.get(i)] == FlockStore.FOOD) {
 				found = true;
 				break;
 			}
@@ -213,32 +511,38 @@ public class FlockingBoid extends DynamicBoid {
 		return found;
 	}
 
+	/**
+	 * Counts the moving and static predators in the simulation
+	 */
+	private int predatorCount() {
+		return store.kindSlots[FlockStore.PREDATOR].size() + store.kindSlots[FlockStore.STATIC_PREDATOR].size();
+	}
+
+	/**
+	 * Finds the slot of a predator, counting the moving predators first and then the static ones
+	 * 
+	 * @param index a number from 0 to predatorCount() - 1
+	 */
+	private int predatorSlot(int index) {
+		IntList predators = store.kindSlots[FlockStore.PREDATOR];
+		if (index < predators.size()) {
+			return predators.get(index);
+		}
+		return store.kindSlots[FlockStore.STATIC_PREDATOR].get(index - predators.size());
+	}
+
     // **************************************************
     // Getters/setters 
     // **************************************************
-	public double getAlignmentControl() {
-		return alignmentControl;
-	}
 	public boolean isEaten() {
-		return eaten;
-	}
-	public double getSeparationControl() {
-		return separationControl;
-	}
-	public double getcohesionControl() {
-		return cohesionControl;
-	}
-	public void setAlignmentControl(double alignment) {
-		alignmentControl = alignment;
-	}
-	public void setcohesionControl(double cohesion) {
-		cohesionControl = cohesion;
+		return store.eaten[slot];
 	}
-	public void setSeparationControl(double separationControl) {
-		this.separationControl = separationControl;
+	//Number of other boids flocked with by the last call to flock
+	public int getNeighbourCount() {
+		return store.neighbourCount[slot];
 	}
 	public void setEaten(boolean eaten) {
-		this.eaten = eaten;
+		store.eaten[slot] = eaten;
 	}
 }
 
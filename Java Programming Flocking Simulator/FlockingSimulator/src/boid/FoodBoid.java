@@ -1,49 +1,81 @@
-package boid;
-
-import drawing.Canvas;
-/**
- * @author Y3848937
- */
-public class FoodBoid extends Boid implements StaticBoid{
-    // **************************************************
-    // Constructors
-    // **************************************************
-    /**
-    * Default constructor to create and initialise a boid
-    *
-    * @param myCanvas the canvas to add the boid to
-    * @param xPos the initial x position of the boid
-    * @param yPos the initial y position of the boid
-    */
-	public FoodBoid(Canvas canvas, double xpos, double ypos) {
-		super(canvas, xpos, ypos);
-		draw();
-	}
-    // **************************************************
-    // Public methods
-    // **************************************************
-	/**
-	 * Draws the circular shape of the food
-	 */
-	public void draw() {
-		//Line is drawn as angle updates to 360 to complete a full circle
-		for (int i = 0; i <= 359; i++) {
-			putPenDown();
-			move(0.4);
-			turn(1);
-		}
-		//myCanvas.updateUI();
-	}
-	/**
-	 * Undraws the circular shape of the food
-	 */
-	public void undraw() {
-		for (int i = 0; i <= 359; i++) {
-			myCanvas.removeMostRecentLine();
-		}
-		//updateUI added to fix bug which prevented multiple foods being removed
-		myCanvas.updateUI();
-	}
-	
-	
+package boid;
+
+import drawing.Canvas;
+import drawing.Stamp;
+/**
+ * @author Y3848937
+ */
+public class FoodBoid extends Boid implements StaticBoid{
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//The circle is drawn as 360 short lines, turning one degree after each
+	private static final int SEGMENTS = 360;
+	private static final double SEGMENT_LENGTH = 0.4;
+	//Worked out once rather than every time a food is drawn
+	private static final Stamp SHAPE = makeShape();
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create and initialise a boid
+    *
+    * @param store the store holding the state of every boid in the simulation
+    * @param xPos the initial x position of the boid
+    * @param yPos the initial y position of the boid
+    */
+	public FoodBoid(FlockStore store, double xpos, double ypos) {
+		super(store, FlockStore.FOOD, xpos, ypos);
+	}
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Draws the circular shape of the food
+	 * 
+	 * @param canvas the canvas to draw on
+	 */
+	public void draw(Canvas canvas) {
+		drawShape(canvas, getX(), getY(), getAngleRadians());
+	}
+
+	/**
+	 * Draws the circular shape of the food at a position, without moving any boid
+	 * 
+	 * @param canvas the canvas to draw on
+	 * @param x the x position the circle starts from
+	 * @param y the y position the circle starts from
+	 * @param heading the direction the circle starts in (radians)
+	 */
+	public static void drawShape(Canvas canvas, double x, double y, double heading) {
+		canvas.drawStamp(SHAPE, x, y, heading, 1);
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Works out the circle once, as drawn at a heading of 0
+	 */
+	private static Stamp makeShape() {
+		double[] segments = new double[SEGMENTS * 4];
+		double x = 0;
+		double y = 0;
+		//Line is drawn as angle updates to 360 to complete a full circle
+		for (int i = 0; i < SEGMENTS; i++) {
+			double angle = Math.toRadians(i);
+			double nextX = x + SEGMENT_LENGTH * Math.sin(angle);
+			double nextY = y + SEGMENT_LENGTH * Math.cos(angle);
+			segments[i * 4] = nextX;
+			segments[i * 4 + 1] = nextY;
+			segments[i * 4 + 2] = x;
+			segments[i * 4 + 3] = y;
+			x = nextX;
+			y = nextY;
+		}
+		return new Stamp(segments);
+	}
+	
+	
 }
\ No newline at end of file
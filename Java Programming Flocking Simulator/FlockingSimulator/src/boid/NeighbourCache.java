@@ -0,0 +1,241 @@
+package boid;
+
+import java.util.Arrays;
+
+import simulation.SpatialGrid;
+import tools.IntList;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Verlet neighbour lists for flocking boids, kept from one tick to the next.
+ *
+ * <P>When the lists are built, each flocking boid lists every boid within its radius plus a skin
+ * distance. While no boid has moved more than half the skin since then, any boid that has come
+ * within a flocking boid's radius must already be in its list, so flocking only checks the boids
+ * listed rather than searching the grid. Each tick still checks the exact distance to every boid
+ * listed.
+ *
+ * <P>update() is called once per tick, after the snapshot and grid rebuild, and decides whether
+ * the lists are still good. They are built again when a boid has moved more than half the skin,
+ * when boids have been added (removed boids are simply skipped), when a flocking boid's radius
+ * has changed, or when the grid's size or wrapping has changed.
+ *
+ * <P>All the lists are kept end to end in one array, with the start and end of each boid's list
+ * found from its handle index, so the memory they take is one int per neighbour listed however
+ * many boids there are. The array is shrunk again once the lists have needed much less of it
+ * for a good number of rebuilds in a row, so a flock that spreads out and gathers again doesn't
+ * make it shrink and grow over and over.
+ *
+ * <P>Lists hold handle indices rather than slots, so removing a boid (which moves another boid
+ * into its slot) doesn't spoil them. A handle index is only given to a new boid by an addition,
+ * which always causes a rebuild.
+ *
+ * <P>The neighbour kernel (FlockStore.setNeighbourKernel) doesn't list neighbours at all, so the
+ * lists aren't used while it is on.
+ */
+public class NeighbourCache {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Rebuilds in a row the candidates array must be oversized for before it is shrunk
+	private static final int SHRINK_REBUILDS = 64;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final double skin;
+	//Number of the current lists, or 0 before any have been built
+	private long generation = 0;
+	//Snapshot position of each handle index when the lists were last built
+	private double[] builtX = new double[0];
+	private double[] builtY = new double[0];
+	//Store additions, grid size and wrapping when the lists were last built
+	private long builtAdditions = -1;
+	private double builtWidth;
+	private double builtHeight;
+	private boolean builtWrapping;
+	//Lists end to end, as handle indices, and where each handle index's list starts and ends in
+	//them - listEnd is equal to listStart for boids with no list
+	int[] candidates = new int[0];
+	int[] listStart = new int[0];
+	int[] listEnd = new int[0];
+	//Radius each handle index's list was built for, or -1 if it has no list
+	private int[] builtRadius = new int[0];
+	//Rebuilds in a row that needed under a quarter of the candidates array
+	private int oversizedRebuilds = 0;
+	//Grid search results while the lists are built
+	private final IntList query = new IntList();
+
+	private long ticks = 0;
+	private long rebuilds = 0;
+	//Flocking boid ticks, and how many of them flocked from a list kept from an earlier tick
+	private long boidTicks = 0;
+	private long boidHits = 0;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create empty neighbour lists, which are built on the first update
+    *
+    * @param skin extra distance beyond each boid's radius that its list covers (pixels)
+    */
+	public NeighbourCache(double skin) {
+		if (!(skin > 0)) {
+			throw new IllegalArgumentException("Neighbour list skin must be above zero: " + skin);
+		}
+		this.skin = skin;
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Checks whether the lists can be kept for this tick, and starts new ones if not
+	 *
+	 * @param store the store, just snapshotted for this tick
+	 * @param grid the grid, just rebuilt from the snapshot
+	 */
+	public void update(FlockStore store, SpatialGrid grid) {
+		if (store.isNeighbourKernel()) {
+			return;
+		}
+		ticks++;
+		int flocking = store.count(FlockStore.FLOCKING);
+		boolean rebuild = generation == 0 || store.additions != builtAdditions || grid.getWidth() != builtWidth
+				|| grid.getHeight() != builtHeight || grid.isWrapping() != builtWrapping;
+
+		double limitSq = skin * skin / 4;
+		for (int slot = 0; slot < store.size() && !rebuild; slot++) {
+			int handle = store.slotHandle[slot];
+			double xDistance = grid.deltaX(builtX[handle], store.frontX[slot]);
+			double yDistance = grid.deltaY(builtY[handle], store.frontY[slot]);
+			if (xDistance * xDistance + yDistance * yDistance > limitSq) {
+				rebuild = true;
+			} else if (store.kind[slot] == FlockStore.FLOCKING
+					&& builtRadius[handle] != store.speciesRadius[store.species[slot]]) {
+				//Lists are only good for the radius they were built with
+				rebuild = true;
+			}
+		}
+
+		boidTicks += flocking;
+		if (!rebuild) {
+			boidHits += flocking;
+			return;
+		}
+		generation++;
+		rebuilds++;
+		builtAdditions = store.additions;
+		builtWidth = grid.getWidth();
+		builtHeight = grid.getHeight();
+		builtWrapping = grid.isWrapping();
+		if (builtX.length < store.slotHandle.length) {
+			builtX = Arrays.copyOf(builtX, store.slotHandle.length);
+			builtY = Arrays.copyOf(builtY, store.slotHandle.length);
+			listStart = new int[store.slotHandle.length];
+			listEnd = new int[store.slotHandle.length];
+			builtRadius = new int[store.slotHandle.length];
+		}
+		for (int slot = 0; slot < store.size(); slot++) {
+			builtX[store.slotHandle[slot]] = store.frontX[slot];
+			builtY[store.slotHandle[slot]] = store.frontY[slot];
+		}
+		buildLists(store, grid);
+	}
+
+	/**
+	 * Checks whether a boid has a list it can flock from
+	 *
+	 * @param handle the boid's handle index
+	 * @return true if the current lists include one for the boid
+	 */
+	public boolean isListed(int handle) {
+		return generation > 0 && handle < builtRadius.length && builtRadius[handle] >= 0;
+	}
+
+	/**
+	 * Clears the counters without touching the lists
+	 */
+	public void resetCounters() {
+		ticks = 0;
+		rebuilds = 0;
+		boidTicks = 0;
+		boidHits = 0;
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Builds the list of every flocking boid, from the boids within its radius plus the skin
+	 *
+	 * @param store the store, just snapshotted for this tick
+	 * @param grid the grid, just rebuilt from the snapshot
+	 */
+	private void buildLists(FlockStore store, SpatialGrid grid) {
+		Arrays.fill(builtRadius, -1);
+		int used = 0;
+		for (int slot = 0; slot < store.size(); slot++) {
+			int handle = store.slotHandle[slot];
+			listStart[handle] = used;
+			listEnd[handle] = used;
+			if (store.kind[slot] != FlockStore.FLOCKING) {
+				continue;
+			}
+			int radius = store.speciesRadius[store.species[slot]];
+			query.clear();
+			grid.query(store.frontX[slot], store.frontY[slot], radius + skin, query);
+			if (candidates.length < used + query.size()) {
+				candidates = Arrays.copyOf(candidates, Math.max(2 * candidates.length, used + query.size()));
+			}
+			for (int i = 0; i < query.size(); i++) {
+				if (query.get(i) != slot) {
+					candidates[used++] = store.slotHandle[query.get(i)];
+				}
+			}
+			listEnd[handle] = used;
+			builtRadius[handle] = radius;
+		}
+		//Lists from a denser flock aren't held on to once they are no longer needed
+		if (candidates.length <= 4 * used + 1024) {
+			oversizedRebuilds = 0;
+		} else if (++oversizedRebuilds >= SHRINK_REBUILDS) {
+			candidates = Arrays.copyOf(candidates, 2 * used);
+			oversizedRebuilds = 0;
+		}
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public double getSkin() {
+		return skin;
+	}
+
+	//Number of the current lists, which goes up by one each time they are built again
+	public long getGeneration() {
+		return generation;
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+
+	public long getRebuilds() {
+		return rebuilds;
+	}
+
+	//Share of ticks the lists were built again on
+	public double getRebuildRate() {
+		return ticks == 0 ? 0 : (double) rebuilds / ticks;
+	}
+
+	//Share of flocking boid ticks that used a list kept from an earlier tick
+	public double getHitRate() {
+		return boidTicks == 0 ? 0 : (double) boidHits / boidTicks;
+	}
+}
@@ -1,81 +1,176 @@
 package boid;
 
-import java.util.List;
-
-import drawing.Canvas;
+import simulation.SpatialGrid;
+import tools.IntList;
 import tools.Utils;
 
 /**
  * @author Y3848937
  */
 public class PredatorBoid extends DynamicBoid{
+	// **************************************************
+	// Fields
+	// **************************************************
+	//Slots of the flocking boids caught this frame - only marked as eaten in applyEffects
+	private final IntList caughtPrey = new IntList();
+	//Reused every frame to hold the boids found within catching distance
+	private final IntList nearbyBoids = new IntList();
+	//Flocking boids closer than this (in pixels) are eaten
+	public static final int CATCH_DISTANCE = 20;
+	
     // **************************************************
     // Constructors
     // **************************************************
     /**
     * Default constructor to create and initialise a boid
     *
-    * @param myCanvas the canvas to add the boid to
+    * @param store the store holding the state of every boid in the simulation
     * @param xPos the initial x position of the boid
     * @param yPos the initial y position of the boid
     */
-	public PredatorBoid(Canvas canvas, double xpos, double ypos) {
-		super(canvas, xpos, ypos);
-		
-		this.radius = 50; //Uses a fixed radius and speedto find prey
-		this.setSpeed(150);
+	public PredatorBoid(FlockStore store, double xpos, double ypos) {
+		super(store, FlockStore.PREDATOR, xpos, ypos);
+		//Radius and speed used to find prey come from the store's predator species
 		this.size = 60;
 	}
     // **************************************************
     // Public methods
     // **************************************************
 	/**
-	 * Main function to be called in the game loop to control hunting
+	 * Main function to be called in the game loop to control hunting, checking every
+	 * flocking boid in the store
+	 */
+	public void hunt() {
+		double preyAngle = findPrey();
+		this.turn(preyAngle);
+	}
+
+	/**
+	 * Main function to be called in the game loop to control hunting, using a spatial grid so
+	 * only the boids around the predator are checked
 	 * 
-	 * @param allBoids list of Boids to pass to findPrey function
+	 * @param grid spatial grid built from the store's snapshot positions this frame
 	 */
-	public void hunt(List<Boid> allBoids) {
-		double preyAngle = findPrey(allBoids);
+	public void hunt(SpatialGrid grid) {
+		double preyAngle = findPrey(grid);
 		this.turn(preyAngle);
 	}
+	
+	/**
+	 * Catches every flocking boid in the grid within catching distance, as hunt(grid) does,
+	 * without turning. Used with chase() when the simulation is spread over shard workers and
+	 * the nearest prey may be held by another worker.
+	 * 
+	 * @param grid spatial grid built from the store's snapshot positions this frame
+	 */
+	public void catchPrey(SpatialGrid grid) {
+		nearbyBoids.clear();
+		grid.query(getX(), getY(), CATCH_DISTANCE, nearbyBoids);
+		for (int i = 0; i < nearbyBoids.size(); i++) {
+			if (store.kind[nearbyBoids.get(i)] == FlockStore.FLOCKING) {
+				caughtPrey.add(nearbyBoids.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Turns towards prey that was found outside this store, as hunt(grid) turns towards the
+	 * nearest prey in the grid
+	 * 
+	 * @param distanceSqrd squared distance to the prey, infinite if there isn't any
+	 * @param preyX x distance from the predator to the prey
+	 * @param preyY y distance from the predator to the prey
+	 */
+	public void chase(double distanceSqrd, double preyX, double preyY) {
+		this.turn(angleToPrey(distanceSqrd, preyX, preyY));
+	}
+
+	/**
+	 * Marks the prey caught during hunt as eaten. Predators only record their catches while
+	 * hunting, so two predators reaching the same boid never write to it at the same time.
+	 */
+	public void applyEffects() {
+		for (int i = 0; i < caughtPrey.size(); i++) {
+			store.eaten[caughtPrey.get(i)] = true;
+		}
+		caughtPrey.clear();
+	}
     // **************************************************
     // Private methods
     // **************************************************
 	/**
-	 * Finds the prey 
-	 * 
-	 * @param allBoids list containing all boids to search for nearby prey
+	 * Finds the prey by scanning the flocking boids in the store. Every flocking boid within
+	 * catching distance is caught, and the predator turns towards the nearest one left.
 	 *
-	 * @return the angle needed to turn to face the nearest flocking boid
+	 * @return the angle needed to turn to face the nearest flocking boid that wasn't caught
 	 */
-	private double findPrey(List<Boid> allBoids) {
+	private double findPrey() {
 		double tempX;
 		double tempY;
 		//minDistance initialised to infinity so first value checked will always take its place
 		double minDistance = Double.POSITIVE_INFINITY;
-		double TurnAngle = 0;
+		double preyX = 0;
+		double preyY = 0;
+		
+		double ownX = getX();
+		double ownY = getY();
 		
-		for (Boid boidToCheckCheck : allBoids) {
-			if (boidToCheckCheck.getClass() == FlockingBoid.class) {
-				tempX = boidToCheckCheck.getLocation().getX() - this.getLocation().getX();
-				tempY = boidToCheckCheck.getLocation().getY() - this.getLocation().getY();
-				double distanceSqrd = (tempX*tempX + tempY*tempY);
-				//The absolute distance to each flocking boid is calculated and compared against the distance to the current nearest flocking boid
-				if (distanceSqrd < minDistance)
-				{
-					minDistance = distanceSqrd;
-					if (minDistance > 400)
-					{ //angle to face the nearest flocking boid is calculated
-					TurnAngle = Math.toDegrees(Math.atan2(tempX, tempY) - this.getAngleRadians());
-					}
-					else if (minDistance <= 400) 
-					{
-						//boid is set as eaten if within 20 pixels of the predator
-						boidToCheckCheck.setEaten(true);
-					}//end if
-				}//end if
+		IntList flockingBoids = store.kindSlots[FlockStore.FLOCKING];
+		for (int i = 0; i < flockingBoids.size(); i++) {
+			int j = flockingBoids.get(i);
+			tempX = store.frontX[j] - ownX;
+			tempY = store.frontY[j] - ownY;
+			double distanceSqrd = (tempX*tempX + tempY*tempY);
+			if (distanceSqrd < CATCH_DISTANCE * CATCH_DISTANCE)
+			{
+				//boid is set as eaten if within 20 pixels of the predator
+				caughtPrey.add(j);
+			}
+			else if (distanceSqrd < minDistance)
+			{
+				//The distance to each flocking boid is compared against the distance to the current nearest flocking boid
+				minDistance = distanceSqrd;
+				preyX = tempX;
+				preyY = tempY;
 			}//end if
 		}//end for
+		return angleToPrey(minDistance, preyX, preyY);
+	}
+
+	/**
+	 * Finds the prey using a spatial grid. Works in the same way as findPrey(), but only the
+	 * boids near the predator are checked and distances wrap around the edges of the screen.
+	 *
+	 * @param grid spatial grid built from the store's snapshot positions this frame
+	 * @return the angle needed to turn to face the nearest flocking boid that wasn't caught
+	 */
+	private double findPrey(SpatialGrid grid) {
+		double ownX = getX();
+		double ownY = getY();
+
+		catchPrey(grid);
+		int prey = grid.nearest(ownX, ownY, CATCH_DISTANCE, store.kind, FlockStore.FLOCKING);
+		if (prey < 0) {
+			return 0;
+		}
+		double preyX = grid.deltaX(ownX, store.frontX[prey]);
+		double preyY = grid.deltaY(ownY, store.frontY[prey]);
+		return angleToPrey(preyX * preyX + preyY * preyY, preyX, preyY);
+	}
+
+	/**
+	 * Calculates the angle to turn to face the prey, found once the nearest prey is known
+	 * rather than for every closer boid found along the way
+	 *
+	 * @param distanceSqrd squared distance to the prey, infinite if there isn't any
+	 * @param preyX x distance from the predator to the prey
+	 * @param preyY y distance from the predator to the prey
+	 */
+	private double angleToPrey(double distanceSqrd, double preyX, double preyY) {
+		double TurnAngle = 0;
+		if (distanceSqrd != Double.POSITIVE_INFINITY) {
+			TurnAngle = Math.toDegrees(Math.atan2(preyX, preyY) - this.getAngleRadians());
+		}
 		return Utils.checkAngle(TurnAngle);
 	}
 }
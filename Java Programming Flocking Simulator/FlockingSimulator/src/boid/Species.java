@@ -0,0 +1,191 @@
+package boid;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Behaviour values shared by every boid of one species - the search radius, speed, the
+ * cohesion, separation and alignment weights, and the neighbour limit.
+ *
+ * <P>A neighbour limit above zero makes flocking topological - each flocking boid steers by
+ * only the nearest few boids within its radius, however many more there are, as starlings are
+ * thought to. Zero (the default) steers by every boid within the radius.
+ *
+ * <P>Boids hold a reference to their species rather than a copy of each value, so changing a
+ * value is one write however many boids use it. The values are replaced together as one
+ * frozen set with a new version number, so any thread can change them at any time and a
+ * reader never sees half of a change. The store copies the newest set of each species at
+ * the start of every frame, so every boid uses the same values for the whole frame.
+ */
+public class Species {
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final String name;
+	private volatile Values values;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create a species with its starting values
+    *
+    * @param name the name of the species, used to match it up when a checkpoint is restored
+    * @param radius the radius boids search for neighbours (or prey) in
+    * @param speed the speed boids move at (pixels per second)
+    * @param cohesion how strongly boids turn towards their neighbours
+    * @param separation how strongly boids turn away from their neighbours
+    * @param alignment how strongly boids turn to match their neighbours' headings
+    */
+	public Species(String name, int radius, int speed, double cohesion, double separation, double alignment) {
+		this.name = name;
+		this.values = new Values(0, radius, speed, cohesion, separation, alignment, 0);
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Replaces every value at once apart from the neighbour limit
+	 *
+	 * @param radius the radius boids search for neighbours (or prey) in
+	 * @param speed the speed boids move at (pixels per second)
+	 * @param cohesion how strongly boids turn towards their neighbours
+	 * @param separation how strongly boids turn away from their neighbours
+	 * @param alignment how strongly boids turn to match their neighbours' headings
+	 */
+	public synchronized void set(int radius, int speed, double cohesion, double separation, double alignment) {
+		values = new Values(values.version + 1, radius, speed, cohesion, separation, alignment,
+				values.neighbourLimit);
+	}
+
+	/**
+	 * Replaces the three steering weights at once, keeping the radius and speed
+	 *
+	 * @param cohesion how strongly boids turn towards their neighbours
+	 * @param separation how strongly boids turn away from their neighbours
+	 * @param alignment how strongly boids turn to match their neighbours' headings
+	 */
+	public synchronized void setSteering(double cohesion, double separation, double alignment) {
+		Values old = values;
+		values = new Values(old.version + 1, old.radius, old.speed, cohesion, separation, alignment,
+				old.neighbourLimit);
+	}
+
+	@Override
+	public String toString() {
+		Values current = values;
+		return String.format("%s (version %d): radius %d, speed %d, cohesion %.2f, separation %.2f, alignment %.2f, "
+				+ "neighbour limit %d", name, current.version, current.radius, current.speed, current.cohesion,
+				current.separation, current.alignment, current.neighbourLimit);
+	}
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	//Newest set of values - read once so all six come from the same change
+	Values getValues() {
+		return values;
+	}
+
+    // **************************************************
+    // Values
+    // **************************************************
+	static final class Values {
+		final long version;
+		final int radius;
+		final int speed;
+		final double cohesion;
+		final double separation;
+		final double alignment;
+		final int neighbourLimit;
+
+		Values(long version, int radius, int speed, double cohesion, double separation, double alignment,
+				int neighbourLimit) {
+			this.version = version;
+			this.radius = radius;
+			this.speed = speed;
+			this.cohesion = cohesion;
+			this.separation = separation;
+			this.alignment = alignment;
+			this.neighbourLimit = neighbourLimit;
+		}
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public String getName() {
+		return name;
+	}
+
+	//Goes up by one every time a value changes
+	public long getVersion() {
+		return values.version;
+	}
+
+	public int getRadius() {
+		return values.radius;
+	}
+
+	public synchronized void setRadius(int radius) {
+		Values old = values;
+		values = new Values(old.version + 1, radius, old.speed, old.cohesion, old.separation, old.alignment,
+				old.neighbourLimit);
+	}
+
+	public int getSpeed() {
+		return values.speed;
+	}
+
+	public synchronized void setSpeed(int speed) {
+		Values old = values;
+		values = new Values(old.version + 1, old.radius, speed, old.cohesion, old.separation, old.alignment,
+				old.neighbourLimit);
+	}
+
+	public double getCohesion() {
+		return values.cohesion;
+	}
+
+	public synchronized void setCohesion(double cohesion) {
+		Values old = values;
+		values = new Values(old.version + 1, old.radius, old.speed, cohesion, old.separation, old.alignment,
+				old.neighbourLimit);
+	}
+
+	public double getSeparation() {
+		return values.separation;
+	}
+
+	public synchronized void setSeparation(double separation) {
+		Values old = values;
+		values = new Values(old.version + 1, old.radius, old.speed, old.cohesion, separation, old.alignment,
+				old.neighbourLimit);
+	}
+
+	public double getAlignment() {
+		return values.alignment;
+	}
+
+	public synchronized void setAlignment(double alignment) {
+		Values old = values;
+		values = new Values(old.version + 1, old.radius, old.speed, old.cohesion, old.separation, alignment,
+				old.neighbourLimit);
+	}
+
+	//Most boids a flocking boid steers by, or 0 for every boid within its radius
+	public int getNeighbourLimit() {
+		return values.neighbourLimit;
+	}
+
+	public synchronized void setNeighbourLimit(int neighbourLimit) {
+		if (neighbourLimit < 0) {
+			throw new IllegalArgumentException("Neighbour limit can't be below zero: " + neighbourLimit);
+		}
+		Values old = values;
+		values = new Values(old.version + 1, old.radius, old.speed, old.cohesion, old.separation, old.alignment,
+				neighbourLimit);
+	}
+}
@@ -1,7 +1,8 @@
 package boid;
 
+import drawing.Canvas;
+
 public interface StaticBoid {
-		public void draw();
-		public void undraw();
+		public void draw(Canvas canvas);
 		
 }
@@ -1,49 +1,78 @@
-package boid;
-
-import drawing.Canvas;
-/**
- * @author Y3848937
- */
-public class StaticPredatorBoid extends Boid implements StaticBoid {
-    // **************************************************
-    // Constructors
-    // **************************************************
-    /**
-    * Default constructor to create and initialise a boid
-    *
-    * @param myCanvas the canvas to add the boid to
-    * @param xPos the initial x position of the boid
-    * @param yPos the initial y position of the boid
-    */
-	public StaticPredatorBoid(Canvas canvas, double xpos, double ypos) {
-		super(canvas, xpos, ypos);
-	}
-	
-    // **************************************************
-    // Public methods
-    // **************************************************
-	/**
-	 * Draws the square shape of the static predator
-	 */
-	public void draw() {
-		putPenDown();
-		turn(90);
-		move(25);
-		turn(90);
-		move(25);
-		turn(90);
-		move(25);
-		turn(90);
-		move(25);
-	}
-	/**
-	 * Undraws the square shape by removing the last 4 lines
-	 */
-	public void undraw() {
-		myCanvas.removeMostRecentLine();
-		myCanvas.removeMostRecentLine();
-		myCanvas.removeMostRecentLine();
-		myCanvas.removeMostRecentLine();
-		myCanvas.updateUI();
-	}
-}
+package boid;
+
+import drawing.Canvas;
+import drawing.Stamp;
+/**
+ * @author Y3848937
+ */
+public class StaticPredatorBoid extends Boid implements StaticBoid {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	private static final int SIDE_LENGTH = 25;
+	//Worked out once rather than every time a static predator is drawn
+	private static final Stamp SHAPE = makeShape();
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create and initialise a boid
+    *
+    * @param store the store holding the state of every boid in the simulation
+    * @param xPos the initial x position of the boid
+    * @param yPos the initial y position of the boid
+    */
+	public StaticPredatorBoid(FlockStore store, double xpos, double ypos) {
+		super(store, FlockStore.STATIC_PREDATOR, xpos, ypos);
+	}
+	
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Draws the square shape of the static predator
+	 * 
+	 * @param canvas the canvas to draw on
+	 */
+	public void draw(Canvas canvas) {
+		drawShape(canvas, getX(), getY(), getAngleRadians());
+	}
+
+	/**
+	 * Draws the square shape of the static predator at a position, without moving any boid.
+	 * The square is drawn from its corner, starting a quarter turn from the heading.
+	 * 
+	 * @param canvas the canvas to draw on
+	 * @param x the x position of the corner the square starts from
+	 * @param y the y position of the corner the square starts from
+	 * @param heading the heading of the static predator (radians)
+	 */
+	public static void drawShape(Canvas canvas, double x, double y, double heading) {
+		canvas.drawStamp(SHAPE, x, y, heading, 1);
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Works out the square once, as drawn at a heading of 0
+	 */
+	private static Stamp makeShape() {
+		double[] segments = new double[16];
+		double x = 0;
+		double y = 0;
+		for (int side = 1; side <= 4; side++) {
+			double angle = side * Math.PI / 2;
+			double nextX = x + SIDE_LENGTH * Math.sin(angle);
+			double nextY = y + SIDE_LENGTH * Math.cos(angle);
+			segments[side * 4 - 4] = nextX;
+			segments[side * 4 - 3] = nextY;
+			segments[side * 4 - 2] = x;
+			segments[side * 4 - 1] = y;
+			x = nextX;
+			y = nextY;
+		}
+		return new Stamp(segments);
+	}
+}
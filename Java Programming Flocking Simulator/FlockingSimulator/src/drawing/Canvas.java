@@ -1,34 +1,81 @@
 package drawing;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Composite;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.RenderingHints;
 import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
-import java.util.Collections;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JPanel;
 
 import geometry.CartesianCoordinate;
 import geometry.LineSegment;
+import tools.LatencyHistogram;
 
 /**
  * <h2>Canvas</h2> This class represents a canvas object that can be drawn to
  * with various line segments.
  * 
- * <P>The list of LineSegment's is stored in a collection within the implementation
- * of the class. This collection is now synchronised to deal with the issue of
- * concurrent accesses to the collection.
+ * <P>Line segments are stored as four floats each (start x, start y, end x, end y) in a
+ * growable buffer, so adding a line creates no objects and removing the most recent line
+ * only moves the end of the buffer back. Stamps (shapes worked out once) are stored the same
+ * way, as the stamp and its position, heading and scale. The buffers belong to the thread
+ * drawing the simulation, which must be the only thread that adds or removes lines.
+ *
+ * <P>Nothing is painted until that thread calls showFrame(), which copies the buffers into a
+ * frame that is not changed again while it is shown, hands it to the painter and asks for one
+ * repaint. The painter never waits for the drawing thread and the drawing thread never waits
+ * for the painter - paint() always shows the last whole frame, never one half drawn or undrawn.
+ *
+ * <P>Small stamps are copied from images of the shape cached by the stamp, one copy each,
+ * and lines and larger stamps are stroked with one reused line, so painting a frame creates
+ * no geometry however many boids it holds.
+ *
+ * <P>A frame can also hold a heatmap - a coarse grid of colours stretched smoothly over the
+ * background, beneath the lines and stamps - for when there are too many shapes to draw one
+ * by one.
  */
 public class Canvas extends JPanel {
 	public int colour = 1;
 	private static final long serialVersionUID = 1L;
+	//Width every line is drawn with
+	static final float LINE_WIDTH = 3;
+	static final BasicStroke STROKE = new BasicStroke(LINE_WIDTH);
 	private int xSize, ySize;
-	private List<LineSegment> lines;
+	//Lines being drawn - start x, start y, end x, end y of each line in turn
+	private float[] lines = new float[4 * 1024];
+	private int lineCount = 0;
+	//Stamps being drawn, and the x, y, heading, scale and opacity of each in turn
+	private static final int PLACEMENT_SIZE = 5;
+	private Stamp[] stamps = new Stamp[1024];
+	private float[] stampPlacements = new float[PLACEMENT_SIZE * 1024];
+	private int stampCount = 0;
+	//Opacity given to stamps as they are drawn
+	private float stampOpacity = 1;
+	//Heatmap being drawn - a colour (ARGB) for each cell, row by row
+	private int[] heatmap = new int[0];
+	private int heatmapColumns, heatmapRows;
+	private float heatmapCellSize;
+	//Last frame handed to the painter
+	private volatile Frame shown = new Frame();
+	//Frame the painter has finished with, ready to be reused by showFrame
+	private final AtomicReference<Frame> spare = new AtomicReference<Frame>();
+	//Used only by paint, which only ever runs on the Swing event thread
+	private final Line2D.Float line = new Line2D.Float();
+	private Frame lastPainted;
+	private BufferedImage heatmapImage;
+	private volatile long lastPaintNanos;
+	//When set, the time taken by each paint is recorded here
+	private volatile LatencyHistogram paintTimes;
 	private final static int DEFAULT_X = 800;
 	private final static int DEFAULT_Y = 600;
 
@@ -64,7 +111,6 @@ public class Canvas extends JPanel {
 		xSize = x;
 		ySize = y;
 		setupCanvas();
-		lines = Collections.synchronizedList(new ArrayList<LineSegment>());
 	}
 
 	private void setupCanvas() {
@@ -75,29 +121,153 @@ public class Canvas extends JPanel {
 
 	/**
 	 * <b>NB: You never need to call this method yourself.</b> It handles the
-	 * drawing but is called automatically each time a line segment is drawn.
+	 * drawing but is called automatically each time a frame is shown.
 	 */
 	@Override
 	public void paint(Graphics g) {
+		LatencyHistogram times = paintTimes;
+		long start = System.nanoTime();
 		super.paint(g);
 		Graphics2D g2 = (Graphics2D) g;
 		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON); // Smoother
 		
 
-		g2.setStroke(new BasicStroke(3));
-		synchronized (lines) {
-			for (LineSegment line : lines) {
-				if (colour == 1)
-				{
-					g2.setColor(Color.BLACK);
-				}else if (colour == 2) {
-					g2.setColor(Color.pink);
-				}
-				g2.draw(new Line2D.Double(line.getStartPoint().getX(), line.getStartPoint().getY(),
-						line.getEndPoint().getX(), line.getEndPoint().getY()));
+		g2.setStroke(STROKE);
+		Color lineColour = Color.BLACK;
+		if (colour == 2) {
+			lineColour = Color.pink;
+		}
+		g2.setColor(lineColour);
+		Frame frame = shown;
+		//The frame painted last time has been replaced and nothing else reads it, so it is
+		//handed back for showFrame to reuse. Only paint hands frames back, so a frame is
+		//never reused while it is being painted. Frames replaced before they were painted are
+		//left to the garbage collector.
+		if (lastPainted != null && lastPainted != frame) {
+			spare.set(lastPainted);
+		}
+		lastPainted = frame;
+		
+		if (frame.heatmapColumns > 0) {
+			paintHeatmap(g2, frame);
+		}
+		float[] frameLines = frame.lines;
+		for (int i = 0; i < frame.lineCount * 4; i += 4) {
+			line.setLine(frameLines[i], frameLines[i + 1], frameLines[i + 2], frameLines[i + 3]);
+			g2.draw(line);
+		}
+		GraphicsConfiguration config = g2.getDeviceConfiguration();
+		Composite originalComposite = g2.getComposite();
+		float opacity = 1;
+		float[] placements = frame.stampPlacements;
+		for (int i = 0; i < frame.stampCount; i++) {
+			Stamp stamp = frame.stamps[i];
+			int placement = i * PLACEMENT_SIZE;
+			float x = placements[placement];
+			float y = placements[placement + 1];
+			float heading = placements[placement + 2];
+			float scale = placements[placement + 3];
+			if (placements[placement + 4] != opacity) {
+				//Stamps of the same opacity are drawn together, so this only changes a few times a frame
+				opacity = placements[placement + 4];
+				g2.setComposite(opacity == 1 ? originalComposite : AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+			}
+			if (stamp.isSprite(scale)) {
+				BufferedImage image = stamp.getSprite(config, lineColour, scale, heading);
+				float cos = (float) Math.cos(heading) * scale;
+				float sin = (float) Math.sin(heading) * scale;
+				float middleX = x + stamp.centreX * cos + stamp.centreY * sin;
+				float middleY = y + stamp.centreY * cos - stamp.centreX * sin;
+				//Copied to the nearest whole pixel, which is much quicker than placing it between pixels
+				g2.drawImage(image, Math.round(middleX - image.getWidth() / 2f), Math.round(middleY - image.getHeight() / 2f),
+						null);
+			} else {
+				drawStampLines(g2, stamp, x, y, heading, scale);
 			}
 		}
+		g2.setComposite(originalComposite);
 		g2.setColor(Color.BLACK);
+		lastPaintNanos = System.nanoTime() - start;
+		if (times != null) {
+			times.record(lastPaintNanos);
+		}
+	}
+
+	/**
+	 * Draws a line between two points to the canvas.
+	 *
+	 * @param startX
+	 *            x coordinate of the start of the line.
+	 * @param startY
+	 *            y coordinate of the start of the line.
+	 * @param endX
+	 *            x coordinate of the end of the line.
+	 * @param endY
+	 *            y coordinate of the end of the line.
+	 */
+	public void drawLine(double startX, double startY, double endX, double endY) {
+		int end = lineCount * 4;
+		if (end == lines.length) {
+			lines = Arrays.copyOf(lines, end * 2);
+		}
+		lines[end] = (float) startX;
+		lines[end + 1] = (float) startY;
+		lines[end + 2] = (float) endX;
+		lines[end + 3] = (float) endY;
+		lineCount++;
+	}
+
+	/**
+	 * Draws a stamp to the canvas.
+	 *
+	 * @param stamp
+	 *            The shape to draw.
+	 * @param x
+	 *            x coordinate of the point the shape is drawn from.
+	 * @param y
+	 *            y coordinate of the point the shape is drawn from.
+	 * @param heading
+	 *            Heading to draw the shape at (radians), the same as a boid's.
+	 * @param scale
+	 *            Size to draw the shape at, 1 for the size it was made at.
+	 */
+	public void drawStamp(Stamp stamp, double x, double y, double heading, double scale) {
+		if (stampCount == stamps.length) {
+			stamps = Arrays.copyOf(stamps, stampCount * 2);
+			stampPlacements = Arrays.copyOf(stampPlacements, stampCount * 2 * PLACEMENT_SIZE);
+		}
+		int placement = stampCount * PLACEMENT_SIZE;
+		stamps[stampCount] = stamp;
+		stampPlacements[placement] = (float) x;
+		stampPlacements[placement + 1] = (float) y;
+		stampPlacements[placement + 2] = (float) heading;
+		stampPlacements[placement + 3] = (float) scale;
+		stampPlacements[placement + 4] = stampOpacity;
+		stampCount++;
+	}
+
+	/**
+	 * Draws a heatmap beneath the lines and stamps of the frame, replacing any drawn before.
+	 * The cells are stretched to cover the canvas from the top left corner, blending
+	 * smoothly into each other.
+	 *
+	 * @param cells
+	 *            The colour of each cell (ARGB, so it can be see-through), row by row.
+	 * @param columns
+	 *            The number of cells across.
+	 * @param rows
+	 *            The number of cells down.
+	 * @param cellSize
+	 *            The width and height of each cell on the canvas.
+	 */
+	public void drawHeatmap(int[] cells, int columns, int rows, double cellSize) {
+		if (heatmap.length < columns * rows) {
+			heatmap = new int[columns * rows];
+		}
+		System.arraycopy(cells, 0, heatmap, 0, columns * rows);
+		heatmapColumns = columns;
+		heatmapRows = rows;
+		heatmapCellSize = (float) cellSize;
 	}
 
 	/**
@@ -109,10 +279,7 @@ public class Canvas extends JPanel {
 	 *            Ending coordinate.
 	 */
 	public void drawLineBetweenPoints(CartesianCoordinate startPoint, CartesianCoordinate endPoint) {
-		synchronized (lines) {
-			lines.add(new LineSegment(startPoint, endPoint));
-		}
-		repaint();
+		drawLine(startPoint.getX(), startPoint.getY(), endPoint.getX(), endPoint.getY());
 	}
 
 	/**
@@ -122,10 +289,7 @@ public class Canvas extends JPanel {
 	 *            The LineSegment to draw.
 	 */
 	public void drawLineSegment(LineSegment lineSegment) {
-		synchronized (lines) {
-			lines.add(lineSegment);
-		}
-		repaint();
+		drawLineBetweenPoints(lineSegment.getStartPoint(), lineSegment.getEndPoint());
 	}
 
 	/**
@@ -136,35 +300,187 @@ public class Canvas extends JPanel {
 	 */
 	public void drawLineSegments(LineSegment[] lineSegments) {
 		for (LineSegment thisLineSegment : lineSegments) {
-			synchronized (lines) {
-				lines.add(thisLineSegment);
-			}
+			drawLineSegment(thisLineSegment);
 		}
-		repaint();
 	}
 
 	/**
 	 * Removes the most recently added line from the drawing.
 	 */
 	public void removeMostRecentLine() {
-		synchronized (lines) {
-			if (lines.size() > 0)
-			{
-				//System.out.println(1);
-				lines.remove(lines.size() - 1);
-			}
-			}
+		if (lineCount > 0) {
+			lineCount--;
+		}
+	}
+
+	/**
+	 * Shows the lines and stamps drawn so far, replacing the frame shown before. Called by the
+	 * drawing thread once it has finished drawing a frame.
+	 */
+	public void showFrame() {
+		Frame frame = spare.getAndSet(null);
+		if (frame == null) {
+			frame = new Frame();
+		}
+		frame.copy(lines, lineCount, stamps, stampPlacements, stampCount);
+		frame.copyHeatmap(heatmap, heatmapColumns, heatmapRows, heatmapCellSize);
+		shown = frame;
+		//Swing merges repaints that arrive before the last one has been painted
+		repaint();
+	}
+
+	/**
+	 * Starts a new frame by removing every line drawn so far, without showing the empty
+	 * canvas. The frame shown before stays on screen until the next showFrame().
+	 */
+	public void startFrame() {
+		lineCount = 0;
+		stampCount = 0;
+		heatmapColumns = 0;
+		heatmapRows = 0;
+		stampOpacity = 1;
+	}
+
+	/**
+	 * Returns the number of line segments currently drawn.
+	 * 
+	 * @return The number of lines.
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Returns the number of stamps currently drawn.
+	 * 
+	 * @return The number of stamps.
+	 */
+	public int getStampCount() {
+		return stampCount;
+	}
+
+	/**
+	 * Returns the time the last paint took, so drawing can be simplified if painting is slow.
+	 * 
+	 * @return The time in nanoseconds, or 0 if nothing has been painted yet.
+	 */
+	public long getLastPaintNanos() {
+		return lastPaintNanos;
+	}
+
+	/**
+	 * Sets the opacity of the stamps drawn from now on, until it is set again or a new frame
+	 * is started.
+	 * 
+	 * @param opacity
+	 *            From 0 (invisible) to 1 (solid, the default).
+	 */
+	public void setStampOpacity(float opacity) {
+		stampOpacity = opacity;
+	}
+
+	/**
+	 * Sets a histogram to record the time taken by each paint in, or null to stop timing.
+	 * 
+	 * @param paintTimes
+	 *            The histogram to record into.
+	 */
+	public void setPaintTimes(LatencyHistogram paintTimes) {
+		this.paintTimes = paintTimes;
 	}
 
 	/**
 	 * Clears the canvas of all drawing.
 	 */
 	public void clear() {
-		synchronized (lines) {
-			lines.clear();
+		startFrame();
+		showFrame();
+	}
+
+	/**
+	 * Stretches a frame's heatmap over the canvas, reusing one image for as long as the
+	 * heatmap stays the same size
+	 */
+	private void paintHeatmap(Graphics2D g2, Frame frame) {
+		int columns = frame.heatmapColumns;
+		int rows = frame.heatmapRows;
+		if (heatmapImage == null || heatmapImage.getWidth() != columns || heatmapImage.getHeight() != rows) {
+			heatmapImage = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		//Written straight into the image rather than through setRGB, which converts each pixel
+		//separately, with each colour multiplied by its opacity as this kind of image stores it
+		int[] pixels = ((DataBufferInt) heatmapImage.getRaster().getDataBuffer()).getData();
+		for (int i = 0; i < columns * rows; i++) {
+			int argb = frame.heatmap[i];
+			int alpha = argb >>> 24;
+			int red = ((argb >> 16) & 0xFF) * alpha / 255;
+			int green = ((argb >> 8) & 0xFF) * alpha / 255;
+			int blue = (argb & 0xFF) * alpha / 255;
+			pixels[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+		}
+		Object interpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2.drawImage(heatmapImage, 0, 0, Math.round(columns * frame.heatmapCellSize), Math.round(rows * frame.heatmapCellSize),
+				null);
+		if (interpolation != null) {
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+		}
+	}
+
+	/**
+	 * Strokes a stamp's segments one by one, moved to where the stamp is drawn
+	 */
+	private void drawStampLines(Graphics2D g2, Stamp stamp, float x, float y, float heading, float scale) {
+		//The same turn a boid makes: a point at (dx, dy) at a heading of 0 is found at
+		//(dx cos + dy sin, dy cos - dx sin) at the given heading
+		float cos = (float) Math.cos(heading) * scale;
+		float sin = (float) Math.sin(heading) * scale;
+		float[] segments = stamp.segments;
+		for (int i = 0; i < segments.length; i += 4) {
+			line.setLine(x + segments[i] * cos + segments[i + 1] * sin, y + segments[i + 1] * cos - segments[i] * sin,
+					x + segments[i + 2] * cos + segments[i + 3] * sin, y + segments[i + 3] * cos - segments[i + 2] * sin);
+			g2.draw(line);
 		}
-		repaint();
 	}
 
+	/**
+	 * Lines, stamps and heatmap handed to the painter by showFrame - not changed while shown, and only
+	 * reused once the painter has moved on to a newer frame
+	 */
+	private static final class Frame {
+		private float[] lines = new float[0];
+		private int lineCount;
+		private Stamp[] stamps = new Stamp[0];
+		private float[] stampPlacements = new float[0];
+		private int stampCount;
+		private int[] heatmap = new int[0];
+		private int heatmapColumns, heatmapRows;
+		private float heatmapCellSize;
 
-}
\ No newline at end of file
+		private void copy(float[] fromLines, int fromLineCount, Stamp[] fromStamps, float[] fromPlacements,
+				int fromStampCount) {
+			if (lines.length < fromLineCount * 4) {
+				lines = new float[fromLines.length];
+			}
+			if (stamps.length < fromStampCount) {
+				stamps = new Stamp[fromStamps.length];
+				stampPlacements = new float[fromPlacements.length];
+			}
+			System.arraycopy(fromLines, 0, lines, 0, fromLineCount * 4);
+			System.arraycopy(fromStamps, 0, stamps, 0, fromStampCount);
+			System.arraycopy(fromPlacements, 0, stampPlacements, 0, fromStampCount * PLACEMENT_SIZE);
+			lineCount = fromLineCount;
+			stampCount = fromStampCount;
+		}
+
+		private void copyHeatmap(int[] fromHeatmap, int columns, int rows, float cellSize) {
+			if (heatmap.length < columns * rows) {
+				heatmap = new int[fromHeatmap.length];
+			}
+			System.arraycopy(fromHeatmap, 0, heatmap, 0, columns * rows);
+			heatmapColumns = columns;
+			heatmapRows = rows;
+			heatmapCellSize = cellSize;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package drawing;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * A shape made of line segments that is worked out once and then drawn at any position,
+ * heading and scale with Canvas.drawStamp, instead of being drawn line by line every frame.
+ *
+ * <P>The segments are given as they are drawn at a heading of 0, relative to the point the
+ * shape is drawn from. Shapes that are small once scaled are painted into a set of images the
+ * first time they are needed, one for each of a number of evenly spaced headings, and from
+ * then on each shape drawn is a single copy of the image nearest its heading. There are
+ * enough headings that the far end of the shape is never more than about a pixel from where
+ * its lines would be. Larger shapes, which would need too many big images, are drawn line by
+ * line.
+ */
+public class Stamp {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Widest image kept for a shape (pixels) - larger shapes are drawn line by line
+	private static final int MAX_SPRITE_SIZE = 64;
+	private static final int MIN_HEADINGS = 16;
+	private static final int MAX_HEADINGS = 256;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	//Start x, start y, end x, end y of each segment in turn
+	final float[] segments;
+	//Middle of the shape at a heading of 0, which the images are painted around
+	final float centreX, centreY;
+	//Distance of the furthest point from the middle of the shape
+	private final float reach;
+	//Images of the shape at each scale drawn so far, one per heading - only used on the
+	//Swing event thread, and each image is painted the first time it is needed
+	private float[] spriteScales = new float[0];
+	private BufferedImage[][] sprites = new BufferedImage[0][];
+	private Color spriteColour;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create a stamp from its line segments
+    *
+    * @param segments start x, start y, end x, end y of each segment, as drawn at a heading of 0
+    */
+	public Stamp(double[] segments) {
+		if (segments.length % 4 != 0) {
+			throw new IllegalArgumentException("Segments need four values each: " + segments.length);
+		}
+		this.segments = new float[segments.length];
+		double minX = 0, minY = 0, maxX = 0, maxY = 0;
+		for (int i = 0; i < segments.length; i += 2) {
+			this.segments[i] = (float) segments[i];
+			this.segments[i + 1] = (float) segments[i + 1];
+			minX = Math.min(minX, segments[i]);
+			maxX = Math.max(maxX, segments[i]);
+			minY = Math.min(minY, segments[i + 1]);
+			maxY = Math.max(maxY, segments[i + 1]);
+		}
+		centreX = (float) (minX + maxX) / 2;
+		centreY = (float) (minY + maxY) / 2;
+		double furthest = 0;
+		for (int i = 0; i < segments.length; i += 2) {
+			furthest = Math.max(furthest, Math.hypot(segments[i] - centreX, segments[i + 1] - centreY));
+		}
+		reach = (float) furthest;
+	}
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	/**
+	 * Checks whether the shape is small enough at a scale to be drawn from images
+	 *
+	 * @param scale the scale the shape is drawn at
+	 * @return true to draw the shape with getSprite, false to draw it line by line
+	 */
+	boolean isSprite(float scale) {
+		return spriteSize(scale) <= MAX_SPRITE_SIZE;
+	}
+
+	/**
+	 * Returns the image of the shape nearest a heading, painting it first if it hasn't been
+	 * needed before. The middle of the shape (centreX, centreY turned to the heading) is in
+	 * the middle of the image. Only called on the Swing event thread.
+	 *
+	 * @param config the graphics configuration the image will be drawn to
+	 * @param colour the colour to paint the shape in
+	 * @param scale the scale the shape is drawn at
+	 * @param heading the heading the shape is drawn at (radians)
+	 * @return the image
+	 */
+	BufferedImage getSprite(GraphicsConfiguration config, Color colour, float scale, float heading) {
+		if (!colour.equals(spriteColour)) {
+			//Every image is painted again in the new colour as it is needed
+			spriteScales = new float[0];
+			sprites = new BufferedImage[0][];
+			spriteColour = colour;
+		}
+		int scaleIndex = 0;
+		while (scaleIndex < spriteScales.length && spriteScales[scaleIndex] != scale) {
+			scaleIndex++;
+		}
+		if (scaleIndex == spriteScales.length) {
+			//Enough headings that the far end of the shape moves about a pixel between them
+			int headings = (int) Math.ceil(2 * Math.PI * reach * scale);
+			headings = Math.max(MIN_HEADINGS, Math.min(headings, MAX_HEADINGS));
+			spriteScales = Arrays.copyOf(spriteScales, scaleIndex + 1);
+			spriteScales[scaleIndex] = scale;
+			sprites = Arrays.copyOf(sprites, scaleIndex + 1);
+			sprites[scaleIndex] = new BufferedImage[headings];
+		}
+		BufferedImage[] images = sprites[scaleIndex];
+		int turn = (int) Math.round(heading / (2 * Math.PI) * images.length) % images.length;
+		if (turn < 0) {
+			turn += images.length;
+		}
+		if (images[turn] == null) {
+			images[turn] = paintSprite(config, scale, (float) (turn * 2 * Math.PI / images.length));
+		}
+		return images[turn];
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Works out the width and height of the images of the shape at a scale, leaving room for
+	 * the width of the lines around the edge
+	 */
+	private int spriteSize(float scale) {
+		return 2 * (int) Math.ceil(reach * scale + Canvas.LINE_WIDTH);
+	}
+
+	/**
+	 * Paints the shape into a new image, turned to a heading in the same way as the lines
+	 * Canvas draws for larger shapes
+	 */
+	private BufferedImage paintSprite(GraphicsConfiguration config, float scale, float heading) {
+		int size = spriteSize(scale);
+		BufferedImage image = config.createCompatibleImage(size, size, Transparency.TRANSLUCENT);
+		Graphics2D g2 = image.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.setStroke(Canvas.STROKE);
+		g2.setColor(spriteColour);
+		float cos = (float) Math.cos(heading) * scale;
+		float sin = (float) Math.sin(heading) * scale;
+		//Moves the middle of the shape to the middle of the image
+		float middleX = size / 2f - (centreX * cos + centreY * sin);
+		float middleY = size / 2f - (centreY * cos - centreX * sin);
+		Line2D.Float line = new Line2D.Float();
+		for (int i = 0; i < segments.length; i += 4) {
+			line.setLine(middleX + segments[i] * cos + segments[i + 1] * sin,
+					middleY + segments[i + 1] * cos - segments[i] * sin,
+					middleX + segments[i + 2] * cos + segments[i + 3] * sin,
+					middleY + segments[i + 3] * cos - segments[i + 2] * sin);
+			g2.draw(line);
+		}
+		g2.dispose();
+		return image;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public int getSegmentCount() {
+		return segments.length / 4;
+	}
+}
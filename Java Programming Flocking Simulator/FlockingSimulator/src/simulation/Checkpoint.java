@@ -0,0 +1,632 @@
+package simulation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import boid.FlockStore;
+import boid.Species;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * A frozen copy of the whole simulation that can be written to and read from a binary file.
+ *
+ * <P>A checkpoint is taken with FlockingEngine.checkpoint(), which only holds the simulation
+ * while the store's arrays are copied, so the file can be written on another thread while the
+ * game loop carries on. FlockingEngine.restore() replaces the simulation with a checkpoint.
+ *
+ * <P>File format (little endian): the int MAGIC, the int format version, the tick count (long),
+ * the number of boids (int), vector steering and fast trigonometry flags (one byte each), the
+ * random seed and the number of random streams given out (longs) and the number of species
+ * (int). Each species follows - the length of its name (short), the name (UTF-8), radius, speed
+ * (int), cohesion, separation, alignment (double), neighbour limit (int). Then there is one column per value for all
+ * boids in slot order - kind (byte), x, y, heading (double), position in the species table
+ * (int), random stream state (long), position in the list of boids of the same kind (int).
+ *
+ * <P>Random streams and the order boids of each kind are visited in are saved, so a restored
+ * simulation carries on exactly as the run it was saved from would have. Version 1 files have
+ * neither - boids restored from them are given new streams from the restoring store's seed.
+ * Versions 1 and 2 saved the speed, radius, cohesion, separation and alignment of every boid,
+ * and boids that shared the same kind and values are put in a species together when read.
+ * Species from files before version 4 have no neighbour limit saved, and are read with none.
+ *
+ * <P>Saved species are matched to the restoring store's species by name, and a matched species
+ * takes the saved values, so anything holding on to a species (the GUI's sliders, for example)
+ * keeps controlling the restored boids.
+ */
+public class Checkpoint {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	public static final int MAGIC = 0x464C434B; //"FLCK"
+	public static final int VERSION = 4;
+	private static final int VERSION_1_HEADER_SIZE = 4 + 4 + 8 + 4 + 1 + 1;
+	private static final int VERSION_1_BYTES_PER_BOID = 1 + 6 * 8 + 2 * 4;
+	private static final int VERSION_2_HEADER_SIZE = VERSION_1_HEADER_SIZE + 8 + 8;
+	private static final int VERSION_2_BYTES_PER_BOID = VERSION_1_BYTES_PER_BOID + 8 + 4;
+	private static final int HEADER_SIZE = VERSION_2_HEADER_SIZE + 4;
+	private static final int BYTES_PER_BOID = 1 + 3 * 8 + 4 + 8 + 4;
+	//Size of a species entry without its name
+	private static final int VERSION_3_BYTES_PER_SPECIES = 2 + 2 * 4 + 3 * 8;
+	private static final int BYTES_PER_SPECIES = VERSION_3_BYTES_PER_SPECIES + 4;
+	//Size of the buffer the columns are copied through
+	private static final int BUFFER_SIZE = 1 << 20;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final long tickCount;
+	private final int count;
+	private final boolean vectorSteering;
+	private final boolean fastTrig;
+	private final long seed;
+	private final long nextStream;
+	private final byte[] kinds;
+	private final double[] xPositions;
+	private final double[] yPositions;
+	private final double[] headings;
+	private final int[] speciesIndices;
+	//Species table - filled in once the boids' values have been grouped for an older file
+	private String[] speciesNames;
+	private int[] speciesRadii;
+	private int[] speciesSpeeds;
+	private double[] speciesCohesions;
+	private double[] speciesSeparations;
+	private double[] speciesAlignments;
+	private int[] speciesNeighbourLimits;
+	//Both null for a version 1 checkpoint
+	private final long[] randomStates;
+	private final int[] kindPositions;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create a checkpoint by copying the state of a store, including the newest
+    * values of every species. The caller must stop the store changing while the copy is made.
+    *
+    * @param store the store to copy
+    * @param tickCount the number of ticks the simulation has run
+    */
+	Checkpoint(FlockStore store, long tickCount) {
+		this.tickCount = tickCount;
+		this.count = store.size();
+		this.vectorSteering = store.isVectorSteering();
+		this.fastTrig = store.isFastTrig();
+		this.seed = store.getSeed();
+		this.nextStream = store.getNextStream();
+		this.kinds = Arrays.copyOf(store.getKinds(), count);
+		this.xPositions = Arrays.copyOf(store.getXPositions(), count);
+		this.yPositions = Arrays.copyOf(store.getYPositions(), count);
+		this.headings = Arrays.copyOf(store.getHeadings(), count);
+		this.speciesIndices = Arrays.copyOf(store.getSpeciesIndices(), count);
+		this.randomStates = Arrays.copyOf(store.getRandomStates(), count);
+		this.kindPositions = Arrays.copyOf(store.getKindPositions(), count);
+
+		store.refreshSpecies();
+		createSpeciesTable(store.getSpeciesCount());
+		for (int i = 0; i < speciesNames.length; i++) {
+			speciesNames[i] = store.getSpecies(i).getName();
+			speciesRadii[i] = store.getSpeciesRadius(i);
+			speciesSpeeds[i] = store.getSpeciesSpeed(i);
+			speciesCohesions[i] = store.getSpeciesCohesion(i);
+			speciesSeparations[i] = store.getSpeciesSeparation(i);
+			speciesAlignments[i] = store.getSpeciesAlignment(i);
+			speciesNeighbourLimits[i] = store.getSpeciesNeighbourLimit(i);
+		}
+	}
+
+    /**
+    * Constructor to create a checkpoint of a simulation that was spread over shard workers, from
+    * its boids as gathered back from the workers
+    *
+    * @param start a checkpoint of the simulation from before it was spread out, which the
+    *              settings, random seed and species are taken from
+    * @param tickCount the number of ticks the simulation has run
+    * @param boids every boid in the simulation, in slot order
+    */
+	Checkpoint(Checkpoint start, long tickCount, ShardRecords boids) {
+		this(tickCount, boids.count, start.vectorSteering, start.fastTrig, start.seed, start.nextStream, true);
+		System.arraycopy(boids.kinds, 0, kinds, 0, count);
+		System.arraycopy(boids.x, 0, xPositions, 0, count);
+		System.arraycopy(boids.y, 0, yPositions, 0, count);
+		System.arraycopy(boids.headings, 0, headings, 0, count);
+		System.arraycopy(boids.species, 0, speciesIndices, 0, count);
+		System.arraycopy(boids.randomStates, 0, randomStates, 0, count);
+		System.arraycopy(boids.kindPositions, 0, kindPositions, 0, count);
+		//Species are never changed once a checkpoint is made, so the tables can be shared
+		speciesNames = start.speciesNames;
+		speciesRadii = start.speciesRadii;
+		speciesSpeeds = start.speciesSpeeds;
+		speciesCohesions = start.speciesCohesions;
+		speciesSeparations = start.speciesSeparations;
+		speciesAlignments = start.speciesAlignments;
+		speciesNeighbourLimits = start.speciesNeighbourLimits;
+	}
+
+	private Checkpoint(long tickCount, int count, boolean vectorSteering, boolean fastTrig, long seed,
+			long nextStream, boolean hasRandomStates) {
+		this.tickCount = tickCount;
+		this.count = count;
+		this.vectorSteering = vectorSteering;
+		this.fastTrig = fastTrig;
+		this.seed = seed;
+		this.nextStream = nextStream;
+		this.kinds = new byte[count];
+		this.xPositions = new double[count];
+		this.yPositions = new double[count];
+		this.headings = new double[count];
+		this.speciesIndices = new int[count];
+		this.randomStates = hasRandomStates ? new long[count] : null;
+		this.kindPositions = hasRandomStates ? new int[count] : null;
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Writes the checkpoint to a file. The data is written to a temporary file first and then
+	 * moved over the target, so an existing checkpoint is never left half written.
+	 *
+	 * @param file the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void write(Path file) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(tickCount);
+			buffer.putInt(count);
+			buffer.put((byte) (vectorSteering ? 1 : 0));
+			buffer.put((byte) (fastTrig ? 1 : 0));
+			buffer.putLong(seed);
+			buffer.putLong(nextStream);
+			buffer.putInt(speciesNames.length);
+			for (int i = 0; i < speciesNames.length; i++) {
+				byte[] name = speciesNames[i].getBytes(StandardCharsets.UTF_8);
+				//Names are cut down to what the length can hold, which no sensible name comes near
+				int nameLength = Math.min(name.length, Short.MAX_VALUE);
+				if (buffer.remaining() < BYTES_PER_SPECIES + nameLength) {
+					buffer.flip();
+					writeFully(channel, buffer);
+					buffer.clear();
+				}
+				buffer.putShort((short) nameLength);
+				buffer.put(name, 0, nameLength);
+				buffer.putInt(speciesRadii[i]);
+				buffer.putInt(speciesSpeeds[i]);
+				buffer.putDouble(speciesCohesions[i]);
+				buffer.putDouble(speciesSeparations[i]);
+				buffer.putDouble(speciesAlignments[i]);
+				buffer.putInt(speciesNeighbourLimits[i]);
+			}
+			buffer.flip();
+			writeFully(channel, buffer);
+
+			writeBytes(channel, buffer, kinds);
+			writeDoubles(channel, buffer, xPositions);
+			writeDoubles(channel, buffer, yPositions);
+			writeDoubles(channel, buffer, headings);
+			writeInts(channel, buffer, speciesIndices);
+			writeLongs(channel, buffer, randomStates);
+			writeInts(channel, buffer, kindPositions);
+		}
+		try {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			//Some file systems can't move atomically - a plain replace is the next best thing
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Reads a checkpoint from a file written by write(), in this version or an older one
+	 *
+	 * @param file the file to read
+	 * @return the checkpoint
+	 * @throws IOException if the file can't be read, isn't a checkpoint or is a newer version
+	 */
+	public static Checkpoint read(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer.limit(VERSION_1_HEADER_SIZE);
+			readFully(channel, buffer);
+			buffer.flip();
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("Not a flocking simulation checkpoint: " + file);
+			}
+			int version = buffer.getInt();
+			if (version > VERSION) {
+				throw new IOException("Checkpoint version " + version + " is newer than this program supports");
+			}
+			long tickCount = buffer.getLong();
+			int count = buffer.getInt();
+			boolean hasRandomStates = version >= 2;
+			boolean hasSpecies = version >= 3;
+			int headerSize = hasSpecies ? HEADER_SIZE : hasRandomStates ? VERSION_2_HEADER_SIZE : VERSION_1_HEADER_SIZE;
+			int bytesPerBoid = hasSpecies ? BYTES_PER_BOID
+					: hasRandomStates ? VERSION_2_BYTES_PER_BOID : VERSION_1_BYTES_PER_BOID;
+			//Checked before any arrays are created, so a corrupt count can't ask for a huge amount of memory
+			if (count < 0 || channel.size() < headerSize + (long) count * bytesPerBoid) {
+				throw new IOException("Checkpoint is corrupt or truncated: " + file);
+			}
+			boolean vectorSteering = buffer.get() != 0;
+			boolean fastTrig = buffer.get() != 0;
+			long seed = 0;
+			long nextStream = 0;
+			if (hasRandomStates) {
+				buffer.clear();
+				buffer.limit(headerSize - VERSION_1_HEADER_SIZE);
+				readFully(channel, buffer);
+				buffer.flip();
+				seed = buffer.getLong();
+				nextStream = buffer.getLong();
+			}
+
+			Checkpoint checkpoint = new Checkpoint(tickCount, count, vectorSteering, fastTrig, seed, nextStream,
+					hasRandomStates);
+			if (hasSpecies) {
+				int bytesPerSpecies = version >= 4 ? BYTES_PER_SPECIES : VERSION_3_BYTES_PER_SPECIES;
+				readSpeciesTable(channel, buffer, checkpoint, buffer.getInt(), bytesPerSpecies);
+				if (channel.size() - channel.position() < (long) count * bytesPerBoid) {
+					throw new IOException("Checkpoint is corrupt or truncated: " + file);
+				}
+			}
+			readBytes(channel, buffer, checkpoint.kinds);
+			for (byte kind : checkpoint.kinds) {
+				if (kind < FlockStore.FLOCKING || kind > FlockStore.STATIC_PREDATOR) {
+					throw new IOException("Checkpoint is corrupt: unknown boid kind " + kind);
+				}
+			}
+			readDoubles(channel, buffer, checkpoint.xPositions);
+			readDoubles(channel, buffer, checkpoint.yPositions);
+			readDoubles(channel, buffer, checkpoint.headings);
+			if (hasSpecies) {
+				readInts(channel, buffer, checkpoint.speciesIndices);
+				for (int index : checkpoint.speciesIndices) {
+					if (index < 0 || index >= checkpoint.speciesNames.length) {
+						throw new IOException("Checkpoint is corrupt: unknown species " + index);
+					}
+				}
+			} else {
+				int[] speeds = new int[count];
+				int[] radii = new int[count];
+				double[] cohesions = new double[count];
+				double[] separations = new double[count];
+				double[] alignments = new double[count];
+				readInts(channel, buffer, speeds);
+				readInts(channel, buffer, radii);
+				readDoubles(channel, buffer, cohesions);
+				readDoubles(channel, buffer, separations);
+				readDoubles(channel, buffer, alignments);
+				groupSpecies(checkpoint, speeds, radii, cohesions, separations, alignments);
+			}
+			if (hasRandomStates) {
+				readLongs(channel, buffer, checkpoint.randomStates);
+				readInts(channel, buffer, checkpoint.kindPositions);
+				checkKindPositions(checkpoint);
+			}
+			return checkpoint;
+		}
+	}
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	/**
+	 * Copies the saved values over the first boids in a store. The store must already hold
+	 * boids of the saved kinds in the same order, and must not change while they are copied.
+	 * A version 1 checkpoint leaves the boids with the random streams they were added with.
+	 * Each saved species is given to the store's unclaimed species of the same name, or to a
+	 * new species if there is none.
+	 *
+	 * @param store the store to copy into
+	 */
+	void copyInto(FlockStore store) {
+		store.setVectorSteering(vectorSteering);
+		store.setFastTrig(fastTrig);
+		System.arraycopy(xPositions, 0, store.getXPositions(), 0, count);
+		System.arraycopy(yPositions, 0, store.getYPositions(), 0, count);
+		System.arraycopy(headings, 0, store.getHeadings(), 0, count);
+
+		int[] storeIndices = new int[speciesNames.length];
+		List<Species> claimed = new ArrayList<Species>();
+		for (int i = 0; i < speciesNames.length; i++) {
+			Species species = null;
+			for (int j = 0; j < store.getSpeciesCount() && species == null; j++) {
+				Species candidate = store.getSpecies(j);
+				if (candidate.getName().equals(speciesNames[i]) && !claimed.contains(candidate)) {
+					species = candidate;
+				}
+			}
+			if (species == null) {
+				species = new Species(speciesNames[i], speciesRadii[i], speciesSpeeds[i], speciesCohesions[i],
+						speciesSeparations[i], speciesAlignments[i]);
+			} else {
+				species.set(speciesRadii[i], speciesSpeeds[i], speciesCohesions[i], speciesSeparations[i],
+						speciesAlignments[i]);
+			}
+			species.setNeighbourLimit(speciesNeighbourLimits[i]);
+			claimed.add(species);
+			storeIndices[i] = store.indexOf(species);
+		}
+		int[] indices = store.getSpeciesIndices();
+		for (int i = 0; i < count; i++) {
+			indices[i] = storeIndices[speciesIndices[i]];
+		}
+		store.refreshSpecies();
+
+		if (randomStates != null) {
+			System.arraycopy(randomStates, 0, store.getRandomStates(), 0, count);
+			store.setKindPositions(kindPositions);
+			//Set after the streams so boids added later carry on where the saved run would have
+			store.setSeed(seed);
+			store.setNextStream(nextStream);
+		}
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	private void createSpeciesTable(int speciesCount) {
+		speciesNames = new String[speciesCount];
+		speciesRadii = new int[speciesCount];
+		speciesSpeeds = new int[speciesCount];
+		speciesCohesions = new double[speciesCount];
+		speciesSeparations = new double[speciesCount];
+		speciesAlignments = new double[speciesCount];
+		speciesNeighbourLimits = new int[speciesCount];
+	}
+
+	/**
+	 * Reads the species table of a version 3 or 4 file, which starts straight after the header
+	 */
+	private static void readSpeciesTable(FileChannel channel, ByteBuffer buffer, Checkpoint checkpoint,
+			int speciesCount, int bytesPerSpecies) throws IOException {
+		//Every species takes at least bytesPerSpecies bytes, so a corrupt count can't ask for a huge table
+		if (speciesCount < 0 || channel.size() - channel.position() < (long) speciesCount * bytesPerSpecies) {
+			throw new IOException("Checkpoint is corrupt: bad species count " + speciesCount);
+		}
+		checkpoint.createSpeciesTable(speciesCount);
+		for (int i = 0; i < speciesCount; i++) {
+			buffer.clear();
+			buffer.limit(2);
+			readFully(channel, buffer);
+			int nameLength = buffer.getShort(0);
+			if (nameLength < 0) {
+				throw new IOException("Checkpoint is corrupt: bad name length for species " + i);
+			}
+			buffer.clear();
+			buffer.limit(nameLength + bytesPerSpecies - 2);
+			readFully(channel, buffer);
+			buffer.flip();
+			byte[] name = new byte[nameLength];
+			buffer.get(name);
+			checkpoint.speciesNames[i] = new String(name, StandardCharsets.UTF_8);
+			checkpoint.speciesRadii[i] = buffer.getInt();
+			checkpoint.speciesSpeeds[i] = buffer.getInt();
+			checkpoint.speciesCohesions[i] = buffer.getDouble();
+			checkpoint.speciesSeparations[i] = buffer.getDouble();
+			checkpoint.speciesAlignments[i] = buffer.getDouble();
+			if (bytesPerSpecies == BYTES_PER_SPECIES) {
+				checkpoint.speciesNeighbourLimits[i] = buffer.getInt();
+				if (checkpoint.speciesNeighbourLimits[i] < 0) {
+					throw new IOException("Checkpoint is corrupt: bad neighbour limit for species " + i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the species table of a version 1 or 2 file from the values saved for every boid.
+	 * Boids of the same kind with the same values share a species - the first species of each
+	 * kind is named after the kind, so it takes over the restoring store's default species, and
+	 * any others are numbered after it.
+	 */
+	private static void groupSpecies(Checkpoint checkpoint, int[] speeds, int[] radii, double[] cohesions,
+			double[] separations, double[] alignments) {
+		List<Integer> firstBoids = new ArrayList<Integer>();
+		int[] kindSpecies = new int[FlockStore.STATIC_PREDATOR + 1];
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < checkpoint.count; i++) {
+			int index = -1;
+			//Old files rarely have more than one set of values per kind, so this scan stays short
+			for (int j = 0; j < firstBoids.size() && index < 0; j++) {
+				int first = firstBoids.get(j);
+				if (checkpoint.kinds[first] == checkpoint.kinds[i] && speeds[first] == speeds[i]
+						&& radii[first] == radii[i] && cohesions[first] == cohesions[i]
+						&& separations[first] == separations[i] && alignments[first] == alignments[i]) {
+					index = j;
+				}
+			}
+			if (index < 0) {
+				index = firstBoids.size();
+				firstBoids.add(i);
+				byte kind = checkpoint.kinds[i];
+				int number = ++kindSpecies[kind];
+				names.add(FlockStore.getKindName(kind) + (number == 1 ? "" : " " + number));
+			}
+			checkpoint.speciesIndices[i] = index;
+		}
+
+		checkpoint.createSpeciesTable(firstBoids.size());
+		for (int j = 0; j < firstBoids.size(); j++) {
+			int first = firstBoids.get(j);
+			checkpoint.speciesNames[j] = names.get(j);
+			checkpoint.speciesRadii[j] = radii[first];
+			checkpoint.speciesSpeeds[j] = speeds[first];
+			checkpoint.speciesCohesions[j] = cohesions[first];
+			checkpoint.speciesSeparations[j] = separations[first];
+			checkpoint.speciesAlignments[j] = alignments[first];
+		}
+	}
+
+	/**
+	 * Checks that the positions of the boids of each kind are 0 to count - 1 with none repeated,
+	 * so a corrupt file can't leave a kind's list with gaps
+	 */
+	private static void checkKindPositions(Checkpoint checkpoint) throws IOException {
+		int[] kindCounts = new int[FlockStore.STATIC_PREDATOR + 1];
+		for (byte kind : checkpoint.kinds) {
+			kindCounts[kind]++;
+		}
+		boolean[][] used = new boolean[kindCounts.length][];
+		for (int kind = 0; kind < kindCounts.length; kind++) {
+			used[kind] = new boolean[kindCounts[kind]];
+		}
+		for (int i = 0; i < checkpoint.count; i++) {
+			boolean[] kindUsed = used[checkpoint.kinds[i]];
+			int position = checkpoint.kindPositions[i];
+			if (position < 0 || position >= kindUsed.length || kindUsed[position]) {
+				throw new IOException("Checkpoint is corrupt: bad position " + position + " for boid " + i);
+			}
+			kindUsed[position] = true;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Checkpoint is truncated");
+			}
+		}
+	}
+
+	//Each column is copied through the buffer in chunks, using a view of the buffer for the bulk copy
+	private static void writeBytes(FileChannel channel, ByteBuffer buffer, byte[] values) throws IOException {
+		for (int done = 0; done < values.length;) {
+			int chunk = Math.min(values.length - done, BUFFER_SIZE);
+			buffer.clear();
+			buffer.put(values, done, chunk);
+			buffer.flip();
+			writeFully(channel, buffer);
+			done += chunk;
+		}
+	}
+
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+		for (int done = 0; done < values.length;) {
+			int chunk = Math.min(values.length - done, BUFFER_SIZE / 4);
+			buffer.clear();
+			buffer.asIntBuffer().put(values, done, chunk);
+			buffer.limit(chunk * 4);
+			writeFully(channel, buffer);
+			done += chunk;
+		}
+	}
+
+	private static void writeDoubles(FileChannel channel, ByteBuffer buffer, double[] values) throws IOException {
+		for (int done = 0; done < values.length;) {
+			int chunk = Math.min(values.length - done, BUFFER_SIZE / 8);
+			buffer.clear();
+			buffer.asDoubleBuffer().put(values, done, chunk);
+			buffer.limit(chunk * 8);
+			writeFully(channel, buffer);
+			done += chunk;
+		}
+	}
+
+	private static void writeLongs(FileChannel channel, ByteBuffer buffer, long[] values) throws IOException {
+		for (int done = 0; done < values.length;) {
+			int chunk = Math.min(values.length - done, BUFFER_SIZE / 8);
+			buffer.clear();
+			buffer.asLongBuffer().put(values, done, chunk);
+			buffer.limit(chunk * 8);
+			writeFully(channel, buffer);
+			done += chunk;
+		}
+	}
+
+	private static void readBytes(FileChannel channel, ByteBuffer buffer, byte[] values) throws IOException {
+		for (int done = 0; done < values.length;) {
+			int chunk = Math.min(values.length - done, BUFFER_SIZE);
+			buffer.clear();
+			buffer.limit(chunk);
+			readFully(channel, buffer);
+			buffer.flip();
+			buffer.get(values, done, chunk);
+			done += chunk;
+		}
+	}
+
+	private static void readInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+		for (int done = 0; done < values.length;) {
+			int chunk = Math.min(values.length - done, BUFFER_SIZE / 4);
+			buffer.clear();
+			buffer.limit(chunk * 4);
+			readFully(channel, buffer);
+			buffer.flip();
+			buffer.asIntBuffer().get(values, done, chunk);
+			done += chunk;
+		}
+	}
+
+	private static void readDoubles(FileChannel channel, ByteBuffer buffer, double[] values) throws IOException {
+		for (int done = 0; done < values.length;) {
+			int chunk = Math.min(values.length - done, BUFFER_SIZE / 8);
+			buffer.clear();
+			buffer.limit(chunk * 8);
+			readFully(channel, buffer);
+			buffer.flip();
+			buffer.asDoubleBuffer().get(values, done, chunk);
+			done += chunk;
+		}
+	}
+
+	private static void readLongs(FileChannel channel, ByteBuffer buffer, long[] values) throws IOException {
+		for (int done = 0; done < values.length;) {
+			int chunk = Math.min(values.length - done, BUFFER_SIZE / 8);
+			buffer.clear();
+			buffer.limit(chunk * 8);
+			readFully(channel, buffer);
+			buffer.flip();
+			buffer.asLongBuffer().get(values, done, chunk);
+			done += chunk;
+		}
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public byte getKind(int index) {
+		return kinds[index];
+	}
+
+	public double getX(int index) {
+		return xPositions[index];
+	}
+
+	public double getY(int index) {
+		return yPositions[index];
+	}
+}
@@ -0,0 +1,86 @@
+package simulation;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Lock-free queue of commands that any number of threads post to and a single thread runs.
+ *
+ * <P>The queue is a linked list that posting threads add to by swapping themselves in as the
+ * newest node, so posting never blocks and never retries. Only the thread running the commands
+ * walks the list from the oldest end, so taking commands off needs no atomic operations. A
+ * command whose poster has swapped in its node but not yet linked it is picked up by the next
+ * drain instead of this one.
+ */
+public class CommandQueue {
+    // **************************************************
+    // Fields
+    // **************************************************
+	//Newest node - swapped by posting threads
+	private final AtomicReference<Node> newest;
+	//Node whose command was run last (or an empty starting node) - only used by the draining thread
+	private Node oldest;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create an empty queue
+    */
+	public CommandQueue() {
+		Node start = new Node(null);
+		newest = new AtomicReference<Node>(start);
+		oldest = start;
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Adds a command to the queue. Safe to call from any thread.
+	 *
+	 * @param command the command to run
+	 */
+	public void post(SimulationCommand command) {
+		Node node = new Node(command);
+		Node previous = newest.getAndSet(node);
+		previous.next = node;
+	}
+
+	/**
+	 * Runs every command in the queue in the order they were posted, including any posted by
+	 * the commands themselves. Must only be called by one thread at a time.
+	 *
+	 * @param engine the simulation the commands are run on
+	 * @return the number of commands run
+	 */
+	public int drain(FlockingEngine engine) {
+		int run = 0;
+		Node next = oldest.next;
+		while (next != null) {
+			//Moved past before running, so a command that throws isn't run again
+			oldest = next;
+			SimulationCommand command = next.command;
+			next.command = null;
+			command.apply(engine);
+			run++;
+			next = oldest.next;
+		}
+		return run;
+	}
+
+    // **************************************************
+    // Nodes
+    // **************************************************
+	private static class Node {
+		private SimulationCommand command;
+		private volatile Node next;
+
+		Node(SimulationCommand command) {
+			this.command = command;
+		}
+	}
+}
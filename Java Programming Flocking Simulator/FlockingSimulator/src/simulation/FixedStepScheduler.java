@@ -0,0 +1,344 @@
+package simulation;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import boid.Boid;
+import boid.FlockStore;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Runs a simulation at a fixed time step, separately from the thread that draws it.
+ *
+ * <P>In real time the time passed is added up and a step is run for every whole step of it,
+ * so the rate stays the same however long each step takes, and a slow step is caught up on
+ * rather than slowing the simulation down. After each batch of steps a RenderState is filled
+ * and handed to the render thread, which draws at its own rate and blends between the last two
+ * steps. Fast-forward instead runs a set number of steps for every frame the render thread
+ * takes, and unthrottled runs steps back to back without waiting for the render thread at all.
+ * A scheduler given a replay shows the next recorded frame at each step instead of ticking, so
+ * a recording is paced and drawn in the same way as a running simulation.
+ *
+ * <P>States are handed over through three buffers: the scheduler fills one, the render thread
+ * draws another, and the third holds the newest finished state. Each side swaps its buffer with
+ * the middle one in a single atomic step, so neither side ever waits for the other, and the
+ * render thread always draws a whole state.
+ */
+public class FixedStepScheduler implements Runnable {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Values for setStepsPerFrame other than a number of steps
+	public static final int REAL_TIME = 0;
+	public static final int UNTHROTTLED = -1;
+	//Most steps run to catch up at once - time beyond this is dropped rather than chased
+	private static final int MAX_CATCH_UP_STEPS = 5;
+	//Longest wait for the render thread to take a frame before checking for a stop or mode change
+	private static final long MAX_WAIT_NANOS = 100000000L;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final FlockingEngine engine;
+	private final int stepMillis;
+	private final long stepNanos;
+	private volatile int stepsPerFrame = REAL_TIME;
+	private volatile boolean running;
+	private volatile Thread simulationThread;
+	//Only used on the simulation thread once run() has started
+	private TrajectoryRecorder recorder;
+	private TrajectoryReplay replay;
+	private final TrajectoryFrame replayFrame = new TrajectoryFrame();
+	private int replayIndex;
+	private RenderState writing = new RenderState();
+	//Newest finished state, or one the render thread has already drawn
+	private final AtomicReference<RenderState> middle = new AtomicReference<RenderState>(new RenderState());
+	//Position of each boid in the last state, by handle index - a boid is matched by its whole
+	//handle, so a new boid given a removed boid's index doesn't slide from where it was
+	private long[] lastHandles = new long[0];
+	private double[] lastX = new double[0];
+	private double[] lastY = new double[0];
+	private double[] lastHeadings = new double[0];
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create a scheduler for a simulation
+    *
+    * @param engine the simulation to run
+    * @param stepMillis the time step each tick moves the boids by (milliseconds)
+    */
+	public FixedStepScheduler(FlockingEngine engine, int stepMillis) {
+		if (stepMillis <= 0) {
+			throw new IllegalArgumentException("Time step must be at least 1 ms: " + stepMillis);
+		}
+		this.engine = engine;
+		this.stepMillis = stepMillis;
+		this.stepNanos = stepMillis * 1000000L;
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Runs the simulation on the calling thread until stop() is called
+	 */
+	public void run() {
+		simulationThread = Thread.currentThread();
+		running = true;
+		publish();
+		long previous = System.nanoTime();
+		long accumulated = 0;
+		while (running) {
+			int steps = stepsPerFrame;
+			if (steps == REAL_TIME) {
+				long now = System.nanoTime();
+				accumulated = Math.min(accumulated + now - previous, MAX_CATCH_UP_STEPS * stepNanos);
+				previous = now;
+				if (accumulated < stepNanos) {
+					LockSupport.parkNanos(stepNanos - accumulated);
+					continue;
+				}
+				while (accumulated >= stepNanos) {
+					step();
+					accumulated -= stepNanos;
+				}
+				publish();
+			} else {
+				for (int i = 0; i < Math.max(steps, 1); i++) {
+					step();
+				}
+				publish();
+				if (steps > 0) {
+					awaitRender();
+				}
+				//Real time picks up from now rather than catching up on the time spent fast-forwarding
+				previous = System.nanoTime();
+				accumulated = 0;
+			}
+		}
+	}
+
+	/**
+	 * Stops the simulation once the current step has finished
+	 */
+	public void stop() {
+		running = false;
+		Thread thread = simulationThread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Swaps the state the render thread has finished with for the newest state, if there is
+	 * a newer one. Only called from the render thread.
+	 *
+	 * @param current the state the render thread drew last
+	 * @return the state to draw next - current itself if no step has finished since
+	 */
+	public RenderState takeFrame(RenderState current) {
+		if (!middle.get().fresh) {
+			return current;
+		}
+		RenderState next = middle.getAndSet(current);
+		next.fresh = false;
+		//A fast-forwarding scheduler waits for each frame to be taken
+		Thread thread = simulationThread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		return next;
+	}
+
+	/**
+	 * Works out how far through the next step a state should be drawn
+	 *
+	 * @param state the state being drawn
+	 * @param now the time it is being drawn at (System.nanoTime)
+	 * @return 0 to draw the boids where they were before the step, up to 1 for where they
+	 *         are after it. Always 1 outside real time, where steps don't match the clock.
+	 */
+	public double getAlpha(RenderState state, long now) {
+		if (stepsPerFrame != REAL_TIME) {
+			return 1;
+		}
+		double alpha = (double) (now - state.stepTime) / stepNanos;
+		return Math.max(0, Math.min(alpha, 1));
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Runs one tick and records it, or shows the next frame when replaying
+	 */
+	private void step() {
+		if (replay != null) {
+			showReplayFrame();
+			return;
+		}
+		engine.tick(stepMillis);
+		if (recorder != null) {
+			try {
+				recorder.record(engine);
+			} catch (IOException e) {
+				e.printStackTrace();
+				//Simulation carries on without the recording rather than stopping
+				System.out.println("Recording stopped: " + e.getMessage());
+				recorder = null;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the boids with the next frame of the replay. Once the recording ends the last
+	 * frame is left on screen.
+	 */
+	private void showReplayFrame() {
+		if (replayIndex >= replay.getFrameCount()) {
+			return;
+		}
+		try {
+			replay.readFrame(replayIndex++, replayFrame);
+		} catch (IOException e) {
+			e.printStackTrace();
+			//The frame already shown stays on screen rather than stopping the program
+			System.out.println("Replay stopped: " + e.getMessage());
+			replayIndex = replay.getFrameCount();
+			return;
+		}
+		//Changes from the controls are still run, but the frame replaces them
+		engine.runCommands();
+		engine.show(replayFrame);
+	}
+
+	/**
+	 * Fills the state being written with the current state of the simulation, then swaps it
+	 * for the middle buffer
+	 */
+	private void publish() {
+		RenderState state = writing;
+		List<Boid> boids = engine.getBoids();
+		TickStats stats = engine.getStats();
+		boolean timed = stats.isEnabled();
+		long time = timed ? System.nanoTime() : 0;
+		synchronized (boids) {
+			if (timed) {
+				stats.lap(TickStats.LOCK_WAIT, time);
+			}
+			FlockStore store = engine.getStore();
+			int count = store.size();
+			state.resize(count);
+			state.tick = engine.getTickCount();
+			byte[] kinds = store.getKinds();
+			double[] x = store.getXPositions();
+			double[] y = store.getYPositions();
+			double[] headings = store.getHeadings();
+			for (int slot = 0; slot < count; slot++) {
+				long handle = store.getHandle(slot);
+				int index = (int) handle;
+				if (index >= lastHandles.length) {
+					growLast(index + 1);
+				}
+				if (lastHandles[index] == handle) {
+					state.fromX[slot] = lastX[index];
+					state.fromY[slot] = lastY[index];
+					state.fromHeadings[slot] = lastHeadings[index];
+				} else {
+					//New since the last state, so it is drawn where it is
+					state.fromX[slot] = x[slot];
+					state.fromY[slot] = y[slot];
+					state.fromHeadings[slot] = headings[slot];
+				}
+				state.toX[slot] = x[slot];
+				state.toY[slot] = y[slot];
+				state.toHeadings[slot] = headings[slot];
+				state.kinds[slot] = kinds[slot];
+				state.sizes[slot] = store.getBoid(slot).getSize();
+				lastHandles[index] = handle;
+				lastX[index] = x[slot];
+				lastY[index] = y[slot];
+				lastHeadings[index] = headings[slot];
+			}
+		}
+		state.stepTime = System.nanoTime();
+		state.fresh = true;
+		writing = middle.getAndSet(state);
+	}
+
+	/**
+	 * Waits until the render thread has taken the newest state, or the scheduler is stopped
+	 * or taken out of fast-forward
+	 */
+	private void awaitRender() {
+		while (running && stepsPerFrame > 0 && middle.get().fresh) {
+			LockSupport.parkNanos(MAX_WAIT_NANOS);
+		}
+	}
+
+	private void growLast(int minimum) {
+		int length = Math.max(minimum, lastHandles.length * 2);
+		int oldLength = lastHandles.length;
+		lastHandles = Arrays.copyOf(lastHandles, length);
+		Arrays.fill(lastHandles, oldLength, length, -1);
+		lastX = Arrays.copyOf(lastX, length);
+		lastY = Arrays.copyOf(lastY, length);
+		lastHeadings = Arrays.copyOf(lastHeadings, length);
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public int getStepMillis() {
+		return stepMillis;
+	}
+
+	public int getStepsPerFrame() {
+		return stepsPerFrame;
+	}
+
+	/**
+	 * Sets how the simulation is paced. Can be changed from any thread while it runs.
+	 *
+	 * @param stepsPerFrame REAL_TIME to run one step per time step of real time, a number of
+	 *                      steps to run for every frame the render thread takes, or UNTHROTTLED
+	 *                      to run steps as fast as they can be run
+	 */
+	public void setStepsPerFrame(int stepsPerFrame) {
+		if (stepsPerFrame < UNTHROTTLED) {
+			throw new IllegalArgumentException("Steps per frame must be REAL_TIME, UNTHROTTLED or above 0: "
+					+ stepsPerFrame);
+		}
+		this.stepsPerFrame = stepsPerFrame;
+		Thread thread = simulationThread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	//Must be set before run() is called - every step is recorded to it
+	public void setRecorder(TrajectoryRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Plays a recording back instead of running the simulation. Must be set before run() is
+	 * called - the frames are found through the recording's index, so starting part way
+	 * through costs nothing extra.
+	 *
+	 * @param replay the recording to show, one frame per step
+	 * @param from the first frame to show
+	 */
+	public void setReplay(TrajectoryReplay replay, int from) {
+		this.replay = replay;
+		this.replayIndex = Math.max(from, 0);
+	}
+}
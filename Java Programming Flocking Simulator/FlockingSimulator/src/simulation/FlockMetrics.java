@@ -0,0 +1,163 @@
+package simulation;
+
+import boid.FlockStore;
+import tools.IntList;
+import tools.Utils;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Measures how well the flocking boids in a store are flocking, for comparing runs with
+ * different settings.
+ *
+ * <P>Three measures are taken from the live positions and headings of the flocking boids:
+ * <BR>polarisation - the length of the average heading, from 0 when the boids head every way to
+ * 1 when they all head the same way
+ * <BR>clusters - the number of groups the boids fall into, where two boids are in the same group
+ * if a chain of boids each closer than the cluster distance to the next joins them
+ * <BR>nearest neighbour - the average distance from each boid to the boid nearest to it
+ *
+ * <P>Distances wrap around the edges of the screen in the same way the boids do. Predators,
+ * food and static predators are not counted.
+ */
+public class FlockMetrics {
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final double clusterDistance;
+	private final SpatialGrid grid = new SpatialGrid(Utils.SCREEN_X_SIZE, Utils.SCREEN_Y_SIZE, true);
+	//Positions of the flocking boids only, so grid indices are positions in the list of flocking boids
+	private double[] xs = new double[0];
+	private double[] ys = new double[0];
+	//Every boid is tagged 0 apart from the one whose nearest neighbour is being found
+	private byte[] tags = new byte[0];
+	//Union-find parent of each boid, used to join boids into clusters
+	private int[] parents = new int[0];
+	private final IntList found = new IntList();
+
+	private int flockingCount = 0;
+	private double polarisation = 0;
+	private int clusterCount = 0;
+	private double nearestNeighbour = Double.NaN;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create a measurer that can be reused for any number of stores
+    *
+    * @param clusterDistance boids closer together than this are in the same cluster (pixels)
+    */
+	public FlockMetrics(double clusterDistance) {
+		if (!(clusterDistance > 0)) {
+			throw new IllegalArgumentException("Cluster distance must be above zero: " + clusterDistance);
+		}
+		this.clusterDistance = clusterDistance;
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Measures the flocking boids of a store as they are now. The store must not be ticked
+	 * while it is being measured.
+	 *
+	 * @param store the store holding the boids
+	 */
+	public void measure(FlockStore store) {
+		IntList slots = store.getSlots(FlockStore.FLOCKING);
+		int count = slots.size();
+		if (xs.length < count) {
+			xs = new double[count];
+			ys = new double[count];
+			tags = new byte[count];
+			parents = new int[count];
+		}
+		double headingX = 0;
+		double headingY = 0;
+		for (int i = 0; i < count; i++) {
+			int slot = slots.get(i);
+			xs[i] = store.getXPositions()[slot];
+			ys[i] = store.getYPositions()[slot];
+			headingX += Math.cos(store.getHeadings()[slot]);
+			headingY += Math.sin(store.getHeadings()[slot]);
+			tags[i] = 0;
+			parents[i] = i;
+		}
+		flockingCount = count;
+		polarisation = count == 0 ? 0 : Math.sqrt(headingX * headingX + headingY * headingY) / count;
+		grid.rebuild(xs, ys, count, clusterDistance);
+
+		//Each pair closer than the cluster distance joins their clusters
+		clusterCount = count;
+		for (int i = 0; i < count; i++) {
+			found.clear();
+			grid.query(xs[i], ys[i], clusterDistance, found);
+			for (int f = 0; f < found.size(); f++) {
+				int rootI = root(i);
+				int rootJ = root(found.get(f));
+				if (rootI != rootJ) {
+					parents[rootJ] = rootI;
+					clusterCount--;
+				}
+			}
+		}
+
+		if (count < 2) {
+			nearestNeighbour = Double.NaN;
+			return;
+		}
+		double total = 0;
+		for (int i = 0; i < count; i++) {
+			//Boid being measured is tagged out so it doesn't find itself
+			tags[i] = 1;
+			int j = grid.nearest(xs[i], ys[i], 0, tags, (byte) 0);
+			tags[i] = 0;
+			double xDistance = grid.deltaX(xs[i], xs[j]);
+			double yDistance = grid.deltaY(ys[i], ys[j]);
+			total += Math.sqrt(xDistance * xDistance + yDistance * yDistance);
+		}
+		nearestNeighbour = total / count;
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Finds the boid at the root of a boid's cluster, shortening the path to it on the way
+	 */
+	private int root(int i) {
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public double getClusterDistance() {
+		return clusterDistance;
+	}
+
+	//Measures of the last store measured
+	public int getFlockingCount() {
+		return flockingCount;
+	}
+
+	public double getPolarisation() {
+		return polarisation;
+	}
+
+	public int getClusterCount() {
+		return clusterCount;
+	}
+
+	//NaN when there are fewer than two flocking boids
+	public double getNearestNeighbour() {
+		return nearestNeighbour;
+	}
+}
@@ -0,0 +1,471 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import boid.Boid;
+import boid.FlockScratch;
+import boid.FlockStore;
+import boid.FlockingBoid;
+import boid.FoodBoid;
+import boid.PredatorBoid;
+import boid.Species;
+import boid.StaticPredatorBoid;
+import tools.IntList;
+import tools.Utils;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Runs the flocking simulation one frame at a time, with no dependency on Swing or the Canvas.
+ *
+ * <P>The engine owns the boids, the store holding their state and the spatial grid. A caller
+ * adds boids through the add methods and calls tick() to advance the simulation - the GUI
+ * draws the boids between ticks, while the headless runner just calls tick() as fast as it can.
+ * The boid list is synchronised; callers should hold its lock while ticking or changing boids.
+ * Threads other than the one running the simulation (the Swing event thread, for example)
+ * should post their changes as commands instead, which tick() runs before anything else, so
+ * they never wait for the lock and never see the boids part way through a frame.
+ *
+ * <P>The list is kept in the same order as the store's slots, so removing a boid is a swap
+ * with the last one in both. Eaten boids are removed in one pass at the end of each tick,
+ * and flocking boids that are eaten or cleared are kept and reused by addFlockingBoid.
+ * Boid objects may therefore come back as different boids - code that needs to keep track
+ * of a boid across ticks should hold its handle (Boid.getHandle) and look it up with getBoid.
+ */
+public class FlockingEngine {
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final List<Boid> boids = Collections.synchronizedList(new ArrayList<Boid>());
+	private final FlockStore store = new FlockStore();
+	//Grid wraps around the edges of the screen in the same way the boids do
+	private final SpatialGrid grid = new SpatialGrid(Utils.SCREEN_X_SIZE, Utils.SCREEN_Y_SIZE, true);
+	private final ParallelTick parallelTick;
+	//Working space for flocking when the boids are run on the calling thread
+	private final FlockScratch scratch = new FlockScratch();
+	//Flocking boids that have been removed, ready to be reused - kept big enough to hold every
+	//flocking boid made, so removing boids during a tick never has to grow it
+	private final ArrayList<FlockingBoid> spareFlockingBoids = new ArrayList<FlockingBoid>();
+	private final TickStats stats = new TickStats();
+	private final CommandQueue commands = new CommandQueue();
+	//Number of boids after the last tick or batch of commands, readable without the lock
+	private volatile int boidCount = 0;
+	private long tickCount = 0;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create an empty simulation
+    *
+    * @param threads the number of threads the boid behaviours are spread across (1 runs them
+    *                on the calling thread)
+    */
+	public FlockingEngine(int threads) {
+		if (threads > 1) {
+			parallelTick = new ParallelTick(threads);
+		} else {
+			parallelTick = null;
+		}
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Advances the simulation by one frame: every boid flees, flocks, hunts and moves, then
+	 * any eaten boids are removed
+	 *
+	 * @param deltaTime the time step used to move the boids (milliseconds)
+	 */
+	public void tick(int deltaTime) {
+		boolean timed = stats.isEnabled();
+		long time = timed ? System.nanoTime() : 0;
+		synchronized (boids) {
+			if (timed) {
+				time = stats.lap(TickStats.LOCK_WAIT, time);
+			}
+			long tickStart = time;
+			commands.drain(this);
+			//The previous frame is frozen so every boid sees the same neighbours, whatever
+			//order or thread they are updated on
+			store.snapshot();
+
+			//Grid is rebuilt once per frame so each boid only checks the cells around it
+			grid.rebuild(store.getFrontXPositions(), store.getFrontYPositions(), store.size(), gridCellSize());
+			store.sortNeighbourValues(grid);
+			if (store.getNeighbourCache() != null) {
+				store.getNeighbourCache().update(store, grid);
+			}
+			if (timed) {
+				time = stats.lap(TickStats.INDEX, time);
+			}
+
+			if (timed) {
+				//Behaviours are run as separate passes so each can be timed
+				for (int behaviour = TickStats.FLEE; behaviour <= TickStats.UPDATE; behaviour++) {
+					runBehaviour(behaviour, deltaTime);
+					time = stats.lap(behaviour, time);
+				}
+				countNeighbours();
+				time = System.nanoTime();
+			} else if (parallelTick != null) {
+				parallelTick.step(store, grid, deltaTime);
+			} else {
+				for (int slot = 0; slot < store.size(); slot++) {
+					store.getBoid(slot).flee();
+				}
+				for (int slot = 0; slot < store.size(); slot++) {
+					store.getBoid(slot).flock(grid, scratch);
+				}
+				for (int slot = 0; slot < store.size(); slot++) {
+					store.getBoid(slot).hunt(grid);
+				}
+				for (int slot = 0; slot < store.size(); slot++) {
+					store.getBoid(slot).update(deltaTime);
+				}
+			}
+			//Catches are applied once all boids have moved, so predators never race over the same prey
+			for (int slot = 0; slot < store.size(); slot++) {
+				store.getBoid(slot).applyEffects();
+			}
+			//Walked backwards, so the boid swapped into a freed slot has already been checked
+			for (int slot = store.size() - 1; slot >= 0; slot--) {
+				if (store.getBoid(slot).isEaten() == true) {
+					remove(slot);
+				}
+			}
+			tickCount++;
+			boidCount = store.size();
+			if (timed) {
+				stats.lap(TickStats.EAT, time);
+				stats.endTick(store, tickStart);
+			}
+		}
+	}
+
+	/**
+	 * Queues a change to be made at the start of the next tick. Safe to call from any thread,
+	 * and never waits for the simulation.
+	 *
+	 * @param command the change to make
+	 */
+	public void post(SimulationCommand command) {
+		commands.post(command);
+	}
+
+	/**
+	 * Runs any posted commands straight away rather than waiting for the next tick, for
+	 * callers that show the boids without ticking them (a replay, for example)
+	 */
+	public void runCommands() {
+		synchronized (boids) {
+			commands.drain(this);
+			boidCount = store.size();
+		}
+	}
+
+	/**
+	 * Adds a flocking boid of the default flocking species to the simulation
+	 *
+	 * @param xPos the initial x position of the boid
+	 * @param yPos the initial y position of the boid
+	 * @return the new boid
+	 */
+	public FlockingBoid addFlockingBoid(double xPos, double yPos) {
+		return addFlockingBoid(xPos, yPos, store.getDefaultSpecies(FlockStore.FLOCKING));
+	}
+
+	/**
+	 * Adds a flocking boid of a given species to the simulation
+	 *
+	 * @param xPos the initial x position of the boid
+	 * @param yPos the initial y position of the boid
+	 * @param species the species the boid takes its radius, speed and steering weights from
+	 * @return the new boid
+	 */
+	public FlockingBoid addFlockingBoid(double xPos, double yPos, Species species) {
+		synchronized (boids) {
+			FlockingBoid boid;
+			if (spareFlockingBoids.isEmpty()) {
+				boid = new FlockingBoid(store, xPos, yPos);
+				spareFlockingBoids.ensureCapacity(boids.size() + 1);
+			} else {
+				boid = spareFlockingBoids.remove(spareFlockingBoids.size() - 1);
+				boid.respawn(xPos, yPos);
+			}
+			boid.setSpecies(species);
+			boids.add(boid);
+			return boid;
+		}
+	}
+
+	/**
+	 * Adds a predator to the simulation
+	 *
+	 * @param xPos the initial x position of the predator
+	 * @param yPos the initial y position of the predator
+	 * @return the new predator
+	 */
+	public PredatorBoid addPredator(double xPos, double yPos) {
+		synchronized (boids) {
+			PredatorBoid boid = new PredatorBoid(store, xPos, yPos);
+			boids.add(boid);
+			return boid;
+		}
+	}
+
+	/**
+	 * Adds a piece of food to the simulation
+	 *
+	 * @param xPos the x position of the food
+	 * @param yPos the y position of the food
+	 * @return the new food
+	 */
+	public FoodBoid addFood(double xPos, double yPos) {
+		synchronized (boids) {
+			FoodBoid boid = new FoodBoid(store, xPos, yPos);
+			boids.add(boid);
+			return boid;
+		}
+	}
+
+	/**
+	 * Adds a static predator to the simulation
+	 *
+	 * @param xPos the x position of the static predator
+	 * @param yPos the y position of the static predator
+	 * @return the new static predator
+	 */
+	public StaticPredatorBoid addStaticPredator(double xPos, double yPos) {
+		synchronized (boids) {
+			StaticPredatorBoid boid = new StaticPredatorBoid(store, xPos, yPos);
+			boids.add(boid);
+			return boid;
+		}
+	}
+
+	/**
+	 * Removes every boid from the simulation
+	 */
+	public void clear() {
+		synchronized (boids) {
+			for (Boid s : boids) {
+				if (s instanceof FlockingBoid) {
+					spareFlockingBoids.add((FlockingBoid) s);
+				}
+			}
+			boids.clear();
+			store.clear();
+		}
+	}
+
+	/**
+	 * Takes a frozen copy of the simulation. The simulation is only held while the store's
+	 * arrays are copied, so the copy can then be written to a file on another thread.
+	 *
+	 * @return the copy, ready to be written with Checkpoint.write
+	 */
+	public Checkpoint checkpoint() {
+		synchronized (boids) {
+			return new Checkpoint(store, tickCount);
+		}
+	}
+
+	/**
+	 * Replaces every boid in the simulation with the boids saved in a checkpoint
+	 *
+	 * @param checkpoint the checkpoint to restore
+	 */
+	public void restore(Checkpoint checkpoint) {
+		synchronized (boids) {
+			clear();
+			store.ensureCapacity(checkpoint.getCount());
+			//Boids are created in the saved order so they take the same slots, then their values are copied in bulk
+			for (int i = 0; i < checkpoint.getCount(); i++) {
+				add(checkpoint.getKind(i), checkpoint.getX(i), checkpoint.getY(i));
+			}
+			checkpoint.copyInto(store);
+			tickCount = checkpoint.getTickCount();
+		}
+	}
+
+	/**
+	 * Replaces every boid in the simulation with the boids in a recorded frame, so that a
+	 * replay is drawn in the same way as a running simulation. Only positions and headings
+	 * are recorded, so the frame is for showing rather than for carrying on from.
+	 *
+	 * @param frame the frame to show
+	 */
+	public void show(TrajectoryFrame frame) {
+		synchronized (boids) {
+			clear();
+			store.ensureCapacity(frame.getCount());
+			for (int i = 0; i < frame.getCount(); i++) {
+				add(frame.getKind(i), frame.getX(i), frame.getY(i));
+			}
+			double[] headings = store.getHeadings();
+			for (int i = 0; i < frame.getCount(); i++) {
+				headings[i] = frame.getHeading(i);
+			}
+			tickCount = frame.getTick();
+		}
+	}
+
+	/**
+	 * Picks the size of the grid's cells for the boids as they are now, as tick() does each
+	 * frame. Boids that flock with every boid in their radius need cells at least as big as
+	 * it, so they only search the cells next to their own. Boids with a neighbour limit search
+	 * outwards until they have found enough, so their cells are only made big enough to hold
+	 * about that many boids if the boids were spread evenly, which stops a dense flock filling
+	 * the few cells around each boid. Call while the simulation isn't ticking.
+	 *
+	 * @return the cell size to rebuild the grid with
+	 */
+	public double gridCellSize() {
+		//Boids are walked by store slot rather than with an iterator, so a tick creates no objects
+		int largestRadius = 0;
+		int largestLimitedRadius = 0;
+		int largestLimit = 0;
+		IntList flockingBoids = store.getSlots(FlockStore.FLOCKING);
+		for (int i = 0; i < flockingBoids.size(); i++) {
+			int species = store.getSpeciesIndices()[flockingBoids.get(i)];
+			int limit = store.getSpeciesNeighbourLimit(species);
+			if (limit > 0) {
+				largestLimitedRadius = Math.max(largestLimitedRadius, store.getSpeciesRadius(species));
+				largestLimit = Math.max(largestLimit, limit);
+			} else {
+				largestRadius = Math.max(largestRadius, store.getSpeciesRadius(species));
+			}
+		}
+		if (largestLimit == 0) {
+			return largestRadius;
+		}
+		double limitedCell = Math.sqrt(largestLimit * grid.getWidth() * grid.getHeight() / store.size());
+		return Math.max(largestRadius, Math.min(largestLimitedRadius, limitedCell));
+	}
+
+	/**
+	 * Stops any worker threads used by the simulation
+	 */
+	public void shutdown() {
+		if (parallelTick != null) {
+			parallelTick.shutdown();
+		}
+		stats.stopLogging();
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Runs one behaviour for every boid, across the worker threads if there are any
+	 *
+	 * @param behaviour TickStats.FLEE, FLOCK, HUNT or UPDATE
+	 * @param deltaTime the time step used to move the boids (milliseconds)
+	 */
+	private void runBehaviour(int behaviour, int deltaTime) {
+		if (parallelTick != null) {
+			parallelTick.step(store, grid, deltaTime, behaviour);
+		} else {
+			for (int slot = 0; slot < store.size(); slot++) {
+				ParallelTick.runBehaviour(store.getBoid(slot), behaviour, grid, deltaTime, scratch);
+			}
+		}
+	}
+
+	/**
+	 * Adds up the neighbours every flocking boid found this tick for the statistics
+	 */
+	private void countNeighbours() {
+		IntList flockingBoids = store.getSlots(FlockStore.FLOCKING);
+		long neighbours = 0;
+		for (int i = 0; i < flockingBoids.size(); i++) {
+			neighbours += ((FlockingBoid) store.getBoid(flockingBoids.get(i))).getNeighbourCount();
+		}
+		stats.recordNeighbours(neighbours, flockingBoids.size());
+	}
+
+	/**
+	 * Adds a boid of a store kind, used to rebuild a simulation in slot order
+	 *
+	 * @param kind the kind of boid, one of the FlockStore kinds
+	 * @param xPos the x position of the boid
+	 * @param yPos the y position of the boid
+	 */
+	private void add(byte kind, double xPos, double yPos) {
+		switch (kind) {
+		case FlockStore.FLOCKING:
+			addFlockingBoid(xPos, yPos);
+			break;
+		case FlockStore.PREDATOR:
+			addPredator(xPos, yPos);
+			break;
+		case FlockStore.FOOD:
+			addFood(xPos, yPos);
+			break;
+		case FlockStore.STATIC_PREDATOR:
+			addStaticPredator(xPos, yPos);
+			break;
+		default:
+			throw new IllegalStateException("Unknown boid kind: " + kind);
+		}
+	}
+
+	/**
+	 * Removes the boid in a slot, moving the last boid into its place in both the store and
+	 * the list so that they stay in the same order
+	 *
+	 * @param slot the slot of the boid to remove
+	 */
+	private void remove(int slot) {
+		Boid boid = store.getBoid(slot);
+		int last = store.size() - 1;
+		store.remove(boid);
+		boids.set(slot, boids.get(last));
+		boids.remove(last);
+		if (boid instanceof FlockingBoid) {
+			spareFlockingBoids.add((FlockingBoid) boid);
+		}
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	//Returns null if the boid the handle belonged to has been removed
+	public Boid getBoid(long handle) {
+		synchronized (boids) {
+			return store.resolve(handle);
+		}
+	}
+
+	public List<Boid> getBoids() {
+		return boids;
+	}
+
+	public FlockStore getStore() {
+		return store;
+	}
+
+	//Species flocking boids are added to unless another is given - changes reach every boid in it from the next tick
+	public Species getFlockingSpecies() {
+		return store.getDefaultSpecies(FlockStore.FLOCKING);
+	}
+
+	public TickStats getStats() {
+		return stats;
+	}
+
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	//Number of boids as of the last tick, without waiting for the simulation
+	public int getBoidCount() {
+		return boidCount;
+	}
+}
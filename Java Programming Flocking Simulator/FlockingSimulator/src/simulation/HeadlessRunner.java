@@ -0,0 +1,330 @@
+package simulation;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import boid.FlockStore;
+import boid.NeighbourCache;
+import tools.Utils;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Command line entry point that runs the simulation without a window, as fast as the CPU allows.
+ *
+ * <P>Usage: java simulation.HeadlessRunner [--option value]...
+ * <BR>Options (defaults in brackets): --flocking (1000), --predators (0), --food (0),
+ * --static-predators (0), --cohesion (0.8), --separation (0.3), --alignment (0.5),
+ * --radius (30), --speed (100), --ticks (1000), --delta (20), --seed (1), --threads (all cores),
+ * --steering as angle or vector (angle), --fast-trig (false),
+ * --neighbour-kernel to find and average each boid's neighbours in one pass over the grid (false),
+ * --neighbour-skin distance beyond the radius that Verlet neighbour lists cover, kept between
+ * ticks until a boid moves half of it (0, search the grid every tick),
+ * --neighbour-limit the most neighbours within the radius each flocking boid steers by, nearest
+ * first, so a dense flock costs no more per boid than a sparse one (0, every neighbour),
+ * --load a checkpoint file to start from instead of placing new boids (none),
+ * --save a checkpoint file to write when the run ends (none),
+ * --record a file to record every tick to, for TrajectoryReplay (none),
+ * --stats seconds between printed tick statistics, which are also published over JMX (0, off),
+ * --tiles columns x rows to spread the flocking boids over one shard worker per tile, such as 2x2
+ * (none, run in this process), --transport tcp to run the workers as separate processes connected
+ * over loopback TCP, or local to run them on threads of this process (tcp)
+ */
+public class HeadlessRunner {
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final Map<String, String> options = new LinkedHashMap<String, String>();
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create a runner with the default options
+    */
+	public HeadlessRunner() {
+		options.put("flocking", "1000");
+		options.put("predators", "0");
+		options.put("food", "0");
+		options.put("static-predators", "0");
+		options.put("cohesion", "0.8");
+		options.put("separation", "0.3");
+		options.put("alignment", "0.5");
+		options.put("radius", "30");
+		options.put("speed", "100");
+		options.put("ticks", "1000");
+		options.put("delta", "20");
+		options.put("seed", "1");
+		options.put("threads", Integer.toString(Runtime.getRuntime().availableProcessors()));
+		options.put("steering", "angle");
+		options.put("fast-trig", "false");
+		options.put("neighbour-kernel", "false");
+		options.put("neighbour-skin", "0");
+		options.put("neighbour-limit", "0");
+		options.put("load", "");
+		options.put("save", "");
+		options.put("record", "");
+		options.put("stats", "0");
+		options.put("tiles", "");
+		options.put("transport", "tcp");
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Reads "--option value" pairs from the command line, replacing the defaults
+	 *
+	 * @param args the command line arguments
+	 * @throws IllegalArgumentException if an option is unknown or has no value
+	 */
+	public void parse(String[] args) {
+		for (int i = 0; i < args.length; i += 2) {
+			String name = args[i].startsWith("--") ? args[i].substring(2) : args[i];
+			if (!options.containsKey(name)) {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for option: " + args[i]);
+			}
+			options.put(name, args[i + 1]);
+		}
+	}
+
+	/**
+	 * Builds a simulation from the options, runs it for the requested number of ticks and
+	 * prints the achieved tick rate
+	 *
+	 * @throws IOException if a checkpoint can't be loaded or saved, or the recording can't be written
+	 */
+	public void run() throws IOException {
+		long seed = Long.parseLong(options.get("seed"));
+		int ticks = Integer.parseInt(options.get("ticks"));
+		int deltaTime = Integer.parseInt(options.get("delta"));
+
+		FlockingEngine engine;
+		if (options.get("load").isEmpty()) {
+			engine = createEngine(seed);
+		} else {
+			long loadStart = System.nanoTime();
+			Checkpoint checkpoint = Checkpoint.read(Paths.get(options.get("load")));
+			engine = new FlockingEngine(Integer.parseInt(options.get("threads")));
+			//Only used by checkpoints from before random streams were saved
+			engine.getStore().setSeed(seed);
+			//Performance settings, so they aren't saved in checkpoints
+			setNeighbourSearch(engine.getStore());
+			engine.restore(checkpoint);
+			System.out.println(String.format("Loaded %d boids at tick %d in %.3f s", checkpoint.getCount(),
+					checkpoint.getTickCount(), (System.nanoTime() - loadStart) / 1e9));
+		}
+		int startPopulation = engine.getBoids().size();
+		if (!options.get("tiles").isEmpty()) {
+			double seconds = runSharded(engine, ticks, deltaTime);
+			save(engine);
+			System.out.println(String.format("Boids: %d at start, %d at end", startPopulation, engine.getBoids().size()));
+			System.out.println(String.format("Ran %d ticks in %.3f s: %.1f ticks/s", ticks, seconds, ticks / seconds));
+			return;
+		}
+		TrajectoryRecorder recorder = null;
+		if (!options.get("record").isEmpty()) {
+			recorder = new TrajectoryRecorder(Paths.get(options.get("record")), Utils.SCREEN_X_SIZE, Utils.SCREEN_Y_SIZE);
+		}
+
+		int statsPeriod = Integer.parseInt(options.get("stats"));
+		if (statsPeriod > 0) {
+			engine.getStats().register();
+			engine.getStats().setEnabled(true);
+			engine.getStats().startLogging(statsPeriod);
+		}
+
+		long start = System.nanoTime();
+		try {
+			for (int i = 0; i < ticks; i++) {
+				engine.tick(deltaTime);
+				if (recorder != null) {
+					recorder.record(engine);
+				}
+			}
+		} finally {
+			if (recorder != null) {
+				recorder.close();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		engine.shutdown();
+		save(engine);
+
+		System.out.println(String.format("Boids: %d at start, %d at end", startPopulation, engine.getBoids().size()));
+		System.out.println(String.format("Ran %d ticks in %.3f s: %.1f ticks/s", ticks, seconds, ticks / seconds));
+		if (statsPeriod > 0) {
+			System.out.print(engine.getStats().getSummary());
+		}
+		NeighbourCache cache = engine.getStore().getNeighbourCache();
+		if (cache != null) {
+			System.out.println(String.format("Neighbour lists: built %d times in %d ticks, %.1f%% of flocking boid ticks reused one",
+					cache.getRebuilds(), cache.getTicks(), cache.getHitRate() * 100));
+		}
+	}
+
+	/**
+	 * Creates an engine and fills it with randomly placed boids using the current options
+	 *
+	 * @param seed the seed used to place the boids and drive their random movement
+	 * @return the populated engine
+	 */
+	public FlockingEngine createEngine(long seed) {
+		Random placement = new Random(seed);
+		FlockingEngine engine = new FlockingEngine(Integer.parseInt(options.get("threads")));
+		engine.getStore().setSeed(seed);
+		String steering = options.get("steering");
+		if (!steering.equals("angle") && !steering.equals("vector")) {
+			throw new IllegalArgumentException("Unknown steering mode: " + steering);
+		}
+		engine.getStore().setVectorSteering(steering.equals("vector"));
+		engine.getStore().setFastTrig(Boolean.parseBoolean(options.get("fast-trig")));
+		setNeighbourSearch(engine.getStore());
+
+		int radius = Integer.parseInt(options.get("radius"));
+		int speed = Integer.parseInt(options.get("speed"));
+		double cohesion = Double.parseDouble(options.get("cohesion"));
+		double separation = Double.parseDouble(options.get("separation"));
+		double alignment = Double.parseDouble(options.get("alignment"));
+
+		engine.getFlockingSpecies().set(radius, speed, cohesion, separation, alignment);
+		engine.getFlockingSpecies().setNeighbourLimit(Integer.parseInt(options.get("neighbour-limit")));
+		for (int i = 0; i < Integer.parseInt(options.get("flocking")); i++) {
+			engine.addFlockingBoid(randomX(placement), randomY(placement));
+		}
+		for (int i = 0; i < Integer.parseInt(options.get("predators")); i++) {
+			engine.addPredator(randomX(placement), randomY(placement));
+		}
+		for (int i = 0; i < Integer.parseInt(options.get("food")); i++) {
+			engine.addFood(randomX(placement), randomY(placement));
+		}
+		for (int i = 0; i < Integer.parseInt(options.get("static-predators")); i++) {
+			engine.addStaticPredator(randomX(placement), randomY(placement));
+		}
+		return engine;
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Runs the simulation spread over shard workers, then gathers the boids back into the engine
+	 *
+	 * @param engine the simulation to run, which holds the result once the run ends
+	 * @param ticks the number of ticks to run
+	 * @param deltaTime the time step used to move the boids (milliseconds)
+	 * @return the time taken to run the ticks, not counting starting the workers (seconds)
+	 * @throws IOException if a worker fails
+	 */
+	private double runSharded(FlockingEngine engine, int ticks, int deltaTime) throws IOException {
+		if (!options.get("record").isEmpty() || !options.get("stats").equals("0")) {
+			throw new IllegalArgumentException("--record and --stats can't be used with --tiles");
+		}
+		//Workers fill their stores again every tick, so every tick would build the lists again
+		if (engine.getStore().getNeighbourCache() != null) {
+			throw new IllegalArgumentException("--neighbour-skin can't be used with --tiles");
+		}
+		TileLayout layout = TileLayout.parse(options.get("tiles"), Utils.SCREEN_X_SIZE, Utils.SCREEN_Y_SIZE);
+		ShardTransport transport;
+		switch (options.get("transport")) {
+		case "tcp":
+			transport = new SocketTransport();
+			break;
+		case "local":
+			transport = new LocalTransport();
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown transport: " + options.get("transport"));
+		}
+
+		long startTime = System.nanoTime();
+		ShardCoordinator shards = new ShardCoordinator(layout, transport);
+		double seconds;
+		try {
+			shards.start(engine, deltaTime);
+			System.out.println(String.format("Started %d shard workers in %.3f s", layout.getTileCount(),
+					(System.nanoTime() - startTime) / 1e9));
+			long start = System.nanoTime();
+			for (int i = 0; i < ticks; i++) {
+				shards.tick();
+			}
+			seconds = (System.nanoTime() - start) / 1e9;
+			shards.gather(engine);
+		} finally {
+			shards.close();
+		}
+		engine.shutdown();
+		return seconds;
+	}
+
+	/**
+	 * Sets how flocking boids find their neighbours from the neighbour kernel and neighbour
+	 * skin options
+	 *
+	 * @param store the store of the simulation
+	 * @throws IllegalArgumentException if both are turned on
+	 */
+	private void setNeighbourSearch(FlockStore store) {
+		boolean kernel = Boolean.parseBoolean(options.get("neighbour-kernel"));
+		double skin = Double.parseDouble(options.get("neighbour-skin"));
+		if (kernel && skin > 0) {
+			throw new IllegalArgumentException("--neighbour-kernel and --neighbour-skin can't be used together");
+		}
+		store.setNeighbourKernel(kernel);
+		store.setNeighbourCache(skin > 0 ? new NeighbourCache(skin) : null);
+	}
+
+	/**
+	 * Saves a checkpoint of the simulation if the options ask for one
+	 *
+	 * @param engine the simulation to save
+	 * @throws IOException if the checkpoint can't be written
+	 */
+	private void save(FlockingEngine engine) throws IOException {
+		if (!options.get("save").isEmpty()) {
+			long saveStart = System.nanoTime();
+			engine.checkpoint().write(Paths.get(options.get("save")));
+			System.out.println(String.format("Saved %d boids to %s in %.3f s", engine.getBoids().size(),
+					options.get("save"), (System.nanoTime() - saveStart) / 1e9));
+		}
+	}
+
+	private static double randomX(Random placement) {
+		return placement.nextDouble() * Utils.SCREEN_X_SIZE;
+	}
+
+	private static double randomY(Random placement) {
+		return placement.nextDouble() * Utils.SCREEN_Y_SIZE;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public String getOption(String name) {
+		return options.get(name);
+	}
+
+	public static void main(String[] args) {
+		HeadlessRunner runner = new HeadlessRunner();
+		try {
+			runner.parse(args);
+			runner.run();
+		} catch (IllegalArgumentException e) {
+			//NumberFormatException is also an IllegalArgumentException
+			System.out.println(e.getMessage());
+			System.out.println("Usage: java simulation.HeadlessRunner [--option value]... (see class documentation)");
+			System.exit(1);
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package simulation;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+import boid.FlockStore;
+import drawing.Canvas;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Chooses how the render thread draws the flocking boids: one by one, or once there are too
+ * many to draw in time, as a heatmap of how many are in each part of the screen. Predators,
+ * food and static predators are always drawn one by one.
+ *
+ * <P>In automatic mode the heatmap is used once the flock reaches a set size, or once drawing
+ * it one boid at a time would take longer than a set time. The time is worked out from how
+ * long each boid took to draw and paint the last time they were drawn one by one, and the
+ * heatmap is only left once both are comfortably below their limits, so the mode doesn't
+ * flicker around a limit. The two modes fade into each other over about half a second.
+ *
+ * <P>The heatmap can also show the average heading in each cell as a colour, faded towards
+ * grey where the boids in a cell point different ways.
+ */
+public class LevelOfDetail {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Values for setMode
+	public static final int AUTO = 0;
+	public static final int INDIVIDUAL = 1;
+	public static final int DENSITY = 2;
+	public static final int DEFAULT_POPULATION = 20000;
+	public static final int DEFAULT_FRAME_MILLIS = 30;
+	//Width and height of each heatmap cell (pixels)
+	private static final int CELL_SIZE = 8;
+	//Boids in a cell for it to be drawn fully dark
+	private static final int FULL_CELL = 16;
+	//Most a cell is drawn over the background, so the pond still shows through
+	private static final float MAX_OPACITY = 0.85f;
+	//Fraction of the way between the modes moved each frame - about half a second at 60 frames a second
+	private static final float FADE_STEP = 1 / 30f;
+	//Fraction of the limits the flock has to drop below before the heatmap is left
+	private static final double HYSTERESIS = 0.8;
+	//Weight given to each new measurement of the time taken per boid
+	private static final double SMOOTHING = 0.1;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private volatile int mode = AUTO;
+	private volatile int populationLimit = DEFAULT_POPULATION;
+	private volatile long frameNanosLimit = DEFAULT_FRAME_MILLIS * 1000000L;
+	private volatile boolean showHeading;
+	//Only used on the render thread
+	private final int columns, rows;
+	private final int[] counts;
+	private final float[] headingX, headingY;
+	private final int[] cells;
+	private boolean dense = false;
+	//How far the flocking boids have faded into the heatmap, from 0 (boids) to 1 (heatmap)
+	private float fade = 0;
+	//Time taken to draw and paint each flocking boid, the last time they were drawn one by one
+	private double nanosPerBoid = 0;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create the level of detail for a screen
+    *
+    * @param width the width of the area the boids move in (pixels)
+    * @param height the height of the area the boids move in (pixels)
+    */
+	public LevelOfDetail(int width, int height) {
+		columns = (width + CELL_SIZE - 1) / CELL_SIZE;
+		rows = (height + CELL_SIZE - 1) / CELL_SIZE;
+		counts = new int[columns * rows];
+		headingX = new float[columns * rows];
+		headingY = new float[columns * rows];
+		cells = new int[columns * rows];
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Draws a state at the current level of detail, then moves the level on by one frame.
+	 * Only called from the render thread.
+	 *
+	 * @param state the state to draw
+	 * @param canvas the canvas to draw on
+	 * @param alpha how far through the step to draw, from 0 (before) to 1 (after)
+	 */
+	public void draw(RenderState state, Canvas canvas, double alpha) {
+		long start = System.nanoTime();
+		int flocking = 0;
+		for (int i = 0; i < state.count; i++) {
+			if (state.kinds[i] == FlockStore.FLOCKING) {
+				flocking++;
+			}
+		}
+		dense = chooseDense(flocking);
+		fade = dense ? Math.min(1, fade + FADE_STEP) : Math.max(0, fade - FADE_STEP);
+
+		if (fade > 0) {
+			rasterise(state, alpha, canvas.getColour());
+			canvas.drawHeatmap(cells, columns, rows, CELL_SIZE);
+		}
+		state.draw(canvas, alpha, 1 - fade);
+
+		if (fade == 0 && flocking > 0) {
+			//The paint is the one for the last frame, which held about as many boids
+			double measured = (double) (System.nanoTime() - start + canvas.getLastPaintNanos()) / flocking;
+			nanosPerBoid = nanosPerBoid == 0 ? measured : nanosPerBoid + SMOOTHING * (measured - nanosPerBoid);
+		}
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Decides whether the flocking boids should be shown as a heatmap
+	 *
+	 * @param flocking the number of flocking boids
+	 * @return true for the heatmap
+	 */
+	private boolean chooseDense(int flocking) {
+		switch (mode) {
+		case INDIVIDUAL:
+			return false;
+		case DENSITY:
+			return true;
+		default:
+			//Once in the heatmap, the limits have to be cleared by a margin to leave it again
+			double margin = dense ? HYSTERESIS : 1;
+			return flocking >= populationLimit * margin || nanosPerBoid * flocking > frameNanosLimit * margin;
+		}
+	}
+
+	/**
+	 * Counts the flocking boids in each cell and works out the colour of each cell
+	 *
+	 * @param state the state to count the boids of
+	 * @param alpha how far through the step to count the boids at
+	 * @param colour the canvas colour setting, used for the cells when headings aren't shown
+	 */
+	private void rasterise(RenderState state, double alpha, int colour) {
+		Arrays.fill(counts, 0);
+		Arrays.fill(headingX, 0);
+		Arrays.fill(headingY, 0);
+		boolean headings = showHeading;
+		for (int i = 0; i < state.count; i++) {
+			if (state.kinds[i] != FlockStore.FLOCKING) {
+				continue;
+			}
+			int column = Math.min(Math.max((int) (state.getX(i, alpha) / CELL_SIZE), 0), columns - 1);
+			int row = Math.min(Math.max((int) (state.getY(i, alpha) / CELL_SIZE), 0), rows - 1);
+			int cell = row * columns + column;
+			counts[cell]++;
+			if (headings) {
+				double heading = state.getHeading(i, alpha);
+				headingX[cell] += (float) Math.sin(heading);
+				headingY[cell] += (float) Math.cos(heading);
+			}
+		}
+
+		//Same colours as the boids would be drawn in
+		int plain = (colour == 2 ? Color.pink : Color.BLACK).getRGB() & 0xFFFFFF;
+		float fullCell = (float) Math.log1p(FULL_CELL);
+		for (int cell = 0; cell < cells.length; cell++) {
+			int count = counts[cell];
+			if (count == 0) {
+				cells[cell] = 0;
+				continue;
+			}
+			//Scaled by the log of the count, so thin edges of a flock still show next to its middle
+			float opacity = Math.min(1, (float) Math.log1p(count) / fullCell) * MAX_OPACITY * fade;
+			int rgb = plain;
+			if (headings) {
+				//Hue shows the average heading, and fades to grey where the boids disagree
+				float hue = (float) (Math.atan2(headingX[cell], headingY[cell]) / (2 * Math.PI));
+				float agreement = (float) Math.hypot(headingX[cell], headingY[cell]) / count;
+				rgb = Color.HSBtoRGB(hue, agreement, 0.8f) & 0xFFFFFF;
+			}
+			cells[cell] = ((int) (opacity * 255) << 24) | rgb;
+		}
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets how the level of detail is chosen. Can be changed from any thread.
+	 *
+	 * @param mode AUTO to switch by the limits, INDIVIDUAL to always draw boids one by one,
+	 *             or DENSITY to always draw the heatmap
+	 */
+	public void setMode(int mode) {
+		if (mode < AUTO || mode > DENSITY) {
+			throw new IllegalArgumentException("Unknown level of detail mode: " + mode);
+		}
+		this.mode = mode;
+	}
+
+	public int getPopulationLimit() {
+		return populationLimit;
+	}
+
+	//Number of flocking boids from which the heatmap is used in AUTO mode
+	public void setPopulationLimit(int populationLimit) {
+		this.populationLimit = populationLimit;
+	}
+
+	public int getFrameMillisLimit() {
+		return (int) (frameNanosLimit / 1000000L);
+	}
+
+	//Time drawing and painting the boids one by one may take before the heatmap is used in AUTO mode
+	public void setFrameMillisLimit(int frameMillis) {
+		this.frameNanosLimit = frameMillis * 1000000L;
+	}
+
+	public boolean isShowHeading() {
+		return showHeading;
+	}
+
+	public void setShowHeading(boolean showHeading) {
+		this.showHeading = showHeading;
+	}
+}
@@ -0,0 +1,77 @@
+package simulation;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Shard transport that runs every worker on a thread of this process, connected to the
+ * coordinator by pipes. The workers run in the same way as they do in separate processes, so
+ * this is mostly for trying the shard mode out without starting any new processes.
+ */
+public class LocalTransport implements ShardTransport {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	private static final int PIPE_SIZE = 1 << 16;
+	//Longest wait for a worker to finish once stopped
+	private static final int TIMEOUT_MILLIS = 30000;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final List<Thread> workers = new ArrayList<Thread>();
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Starts a thread for each worker
+	 *
+	 * @param workerCount the number of workers to start
+	 * @return a link to each worker
+	 * @throws IOException if the pipes can't be connected
+	 */
+	public ShardLink[] open(int workerCount) throws IOException {
+		ShardLink[] links = new ShardLink[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			PipedOutputStream toWorker = new PipedOutputStream();
+			PipedOutputStream fromWorker = new PipedOutputStream();
+			final ShardLink workerLink = new ShardLink(new PipedInputStream(toWorker, PIPE_SIZE), fromWorker, null);
+			links[i] = new ShardLink(new PipedInputStream(fromWorker, PIPE_SIZE), toWorker, null);
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					try {
+						new ShardWorker(workerLink).run();
+					} catch (IOException e) {
+						System.out.println("Shard worker stopped: " + e.getMessage());
+					}
+				}
+			}, "Shard worker " + i);
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+		return links;
+	}
+
+	/**
+	 * Waits for the worker threads to finish
+	 */
+	public void close() throws IOException {
+		try {
+			for (Thread worker : workers) {
+				worker.join(TIMEOUT_MILLIS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		workers.clear();
+	}
+}
@@ -0,0 +1,276 @@
+package simulation;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
+
+import java.util.Arrays;
+
+import boid.Boid;
+import boid.FlockScratch;
+import boid.FlockStore;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Runs the flee, flock, hunt and update behaviours of every boid across a ForkJoinPool.
+ *
+ * <P>The store must have been snapshotted and the grid built from the snapshot before
+ * a step is run. Each boid only reads other boids from the snapshot and only writes to its
+ * own slot, so the boids can be split between threads in any way and the result is the same
+ * as running them one after another on a single thread.
+ *
+ * <P>Each range of boids run on one thread has its own FlockScratch for flocking. The scratches
+ * are kept by the tick runner and handed to the ranges by number, so building new ranges when
+ * the number of boids changes doesn't throw away the scratches' grown lists.
+ */
+public class ParallelTick {
+    // **************************************************
+    // Fields
+    // **************************************************
+	//Number of boids below which a range is run on the current thread rather than split again
+	private static final int BATCH_SIZE = 256;
+	//Runs flee, flock, hunt and update for each boid in turn, rather than a single behaviour
+	public static final int ALL_BEHAVIOURS = -1;
+
+	private final ForkJoinPool pool;
+	//Tasks are kept between steps and only rebuilt when the number of boids changes, so a
+	//step normally creates no objects
+	private BoidRange root;
+	private FlockStore frameStore;
+	private SpatialGrid frameGrid;
+	private int frameDeltaTime;
+	private int frameBehaviour;
+	//Set by the root range once every range has finished, which then wakes the thread waiting
+	//in step. Waiting with pool.invoke, or joining halves, creates a wait node whenever a thread
+	//has to block.
+	private volatile boolean stepDone;
+	private Thread stepCaller;
+	private Throwable stepFailure;
+	//Flocking working space for each range that runs boids, by the range's number
+	private FlockScratch[] scratches = new FlockScratch[0];
+	private int rangeCount;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create a tick runner with its own pool of threads
+    *
+    * @param threads the number of worker threads to use
+    */
+	public ParallelTick(int threads) {
+		pool = new ForkJoinPool(threads);
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Runs one frame of behaviours for every boid in the store, returning once all are done
+	 *
+	 * @param store the store holding the boids, already snapshotted for this frame
+	 * @param grid the spatial grid built from the snapshot
+	 * @param deltaTime the time step used to move the boids (milliseconds)
+	 */
+	public void step(FlockStore store, SpatialGrid grid, int deltaTime) {
+		step(store, grid, deltaTime, ALL_BEHAVIOURS);
+	}
+
+	/**
+	 * Runs a single behaviour for every boid in the store, so that each behaviour can be timed
+	 * on its own. Running the four behaviours one after another gives the same result as one
+	 * step running them all, as each boid only reads the snapshot.
+	 *
+	 * @param store the store holding the boids, already snapshotted for this frame
+	 * @param grid the spatial grid built from the snapshot
+	 * @param deltaTime the time step used to move the boids (milliseconds)
+	 * @param behaviour TickStats.FLEE, FLOCK, HUNT or UPDATE, or ALL_BEHAVIOURS
+	 */
+	public void step(FlockStore store, SpatialGrid grid, int deltaTime, int behaviour) {
+		frameStore = store;
+		frameGrid = grid;
+		frameDeltaTime = deltaTime;
+		frameBehaviour = behaviour;
+		if (root == null || root.to != store.size()) {
+			rangeCount = 0;
+			root = new BoidRange(null, 0, store.size());
+		} else {
+			root.reset();
+		}
+		stepCaller = Thread.currentThread();
+		stepFailure = null;
+		stepDone = false;
+		pool.execute(root);
+		boolean interrupted = false;
+		while (!stepDone) {
+			LockSupport.park(this);
+			//The step can't be abandoned part way, so an interrupt is kept for after it
+			if (Thread.interrupted()) {
+				interrupted = true;
+			}
+		}
+		//The root is only marked done just after it wakes this thread, and it can't be run again
+		//before then
+		while (!root.isDone()) {
+			Thread.yield();
+		}
+		stepCaller = null;
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (stepFailure instanceof Error) {
+			throw (Error) stepFailure;
+		} else if (stepFailure != null) {
+			throw (RuntimeException) stepFailure;
+		}
+	}
+
+	/**
+	 * Stops the worker threads once any running step has finished
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	/**
+	 * Runs one behaviour for a single boid
+	 *
+	 * @param boid the boid
+	 * @param behaviour TickStats.FLEE, FLOCK, HUNT or UPDATE
+	 * @param grid the spatial grid built from the snapshot
+	 * @param deltaTime the time step used to move the boids (milliseconds)
+	 * @param scratch flocking working space for the thread running the boid
+	 */
+	static void runBehaviour(Boid boid, int behaviour, SpatialGrid grid, int deltaTime, FlockScratch scratch) {
+		switch (behaviour) {
+		case TickStats.FLEE:
+			boid.flee();
+			break;
+		case TickStats.FLOCK:
+			boid.flock(grid, scratch);
+			break;
+		case TickStats.HUNT:
+			boid.hunt(grid);
+			break;
+		case TickStats.UPDATE:
+			boid.update(deltaTime);
+			break;
+		default:
+			throw new IllegalArgumentException("Not a boid behaviour: " + behaviour);
+		}
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public int getThreads() {
+		return pool.getParallelism();
+	}
+
+    // **************************************************
+    // Tasks
+    // **************************************************
+	/**
+	 * Runs the behaviours for a range of store slots. Large ranges are split in half once, when
+	 * the task is created, and the halves are reused by every step with the same number of boids.
+	 * 
+	 * <P>A range that is split forks both halves and is completed by whichever half finishes
+	 * last, so no thread ever waits for another. Once the root range is complete it wakes the
+	 * thread waiting in step.
+	 */
+	private class BoidRange extends CountedCompleter<Void> {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+		private final BoidRange left;
+		private final BoidRange right;
+		//Only ranges that run boids themselves have a scratch
+		private final FlockScratch scratch;
+
+		BoidRange(BoidRange parent, int from, int to) {
+			super(parent);
+			this.from = from;
+			this.to = to;
+			if (to - from <= BATCH_SIZE) {
+				left = null;
+				right = null;
+				if (rangeCount == scratches.length) {
+					scratches = Arrays.copyOf(scratches, Math.max(rangeCount * 2, 16));
+				}
+				if (scratches[rangeCount] == null) {
+					scratches[rangeCount] = new FlockScratch();
+				}
+				scratch = scratches[rangeCount++];
+			} else {
+				scratch = null;
+				int middle = (from + to) >>> 1;
+				left = new BoidRange(this, from, middle);
+				right = new BoidRange(this, middle, to);
+			}
+		}
+
+		/**
+		 * Makes this task and the tasks below it ready to run again after a completed step
+		 */
+		void reset() {
+			reinitialize();
+			if (left != null) {
+				left.reset();
+				right.reset();
+			}
+		}
+
+		@Override
+		public void compute() {
+			if (left != null) {
+				setPendingCount(1);
+				right.fork();
+				left.fork();
+				return;
+			}
+			try {
+				runBoids();
+			} catch (RuntimeException | Error e) {
+				stepFailure = e;
+			}
+			tryComplete();
+		}
+
+		@Override
+		public void onCompletion(CountedCompleter<?> caller) {
+			if (getCompleter() == null) {
+				stepDone = true;
+				LockSupport.unpark(stepCaller);
+			}
+		}
+
+		/**
+		 * Runs the behaviours for every boid in the range
+		 */
+		private void runBoids() {
+			FlockStore store = frameStore;
+			SpatialGrid grid = frameGrid;
+			int deltaTime = frameDeltaTime;
+			int behaviour = frameBehaviour;
+			if (behaviour == ALL_BEHAVIOURS) {
+				for (int slot = from; slot < to; slot++) {
+					Boid s = store.getBoid(slot);
+					s.flee();
+					s.flock(grid, scratch);
+					s.hunt(grid);
+					s.update(deltaTime);
+				}
+			} else {
+				for (int slot = from; slot < to; slot++) {
+					runBehaviour(store.getBoid(slot), behaviour, grid, deltaTime, scratch);
+				}
+			}
+		}
+	}
+}
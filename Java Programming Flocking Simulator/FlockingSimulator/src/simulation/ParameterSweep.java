@@ -0,0 +1,333 @@
+package simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import boid.FlockStore;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Command line entry point that runs one headless simulation for every combination of a set of
+ * cohesion, separation, alignment, radius and speed values, and writes how well each one
+ * flocked to a CSV file.
+ *
+ * <P>Runs are spread over a pool with one thread per core, and each simulation runs on a single
+ * thread, so a run gives exactly the same result as HeadlessRunner with --threads 1 and the same
+ * options. Only a few runs are queued ahead of the pool, so a large sweep doesn't build every
+ * run up front. Each row is written as soon as its run finishes, so rows are in the order runs
+ * finish rather than the order they were started - the run column gives the order they were started in.
+ *
+ * <P>Each row gives the settings of the run, the number of flocking boids at the start and end
+ * of it and the fraction that survived the predators, then the FlockMetrics of the boids left
+ * at the end: polarisation, cluster count and average nearest neighbour distance.
+ *
+ * <P>Usage: java simulation.ParameterSweep [--option value]...
+ * <BR>Values to sweep are given as a list such as 0.2,0.5,0.8, where each entry can also be a
+ * range written as from:to:step, such as 0.1:0.9:0.2.
+ * <BR>Options (defaults in brackets): --cohesion (0.8), --separation (0.3), --alignment (0.5),
+ * --radius (30), --speed (100), --seeds (1), --jobs runs at once (all cores),
+ * --out the CSV file to write (sweep.csv), --cluster-distance (30),
+ * and the HeadlessRunner options --flocking (1000), --predators (0), --food (0),
+ * --static-predators (0), --ticks (1000), --delta (20), --steering (angle), --fast-trig (false),
+ * --neighbour-kernel (false), --neighbour-skin (0), --neighbour-limit (0)
+ */
+public class ParameterSweep {
+    // **************************************************
+    // Fields
+    // **************************************************
+	//HeadlessRunner options that are the same for every run
+	private static final String[] RUN_OPTIONS = { "flocking", "predators", "food", "static-predators", "ticks",
+			"delta", "steering", "fast-trig", "neighbour-kernel", "neighbour-skin", "neighbour-limit" };
+	private static final String HEADER = "run,cohesion,separation,alignment,radius,speed,seed,flocking_start,"
+			+ "flocking_end,survival,polarisation,clusters,nearest_neighbour,seconds";
+
+	private final Map<String, String> options = new LinkedHashMap<String, String>();
+	//Holds the options passed on to every run, and checks their names
+	private final HeadlessRunner runOptions = new HeadlessRunner();
+
+	//Shared by the runs while a sweep is running
+	private BufferedWriter csv;
+	private final AtomicInteger finished = new AtomicInteger();
+	private volatile Exception failure;
+	private int runCount;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create a sweep with the default options
+    */
+	public ParameterSweep() {
+		options.put("cohesion", runOptions.getOption("cohesion"));
+		options.put("separation", runOptions.getOption("separation"));
+		options.put("alignment", runOptions.getOption("alignment"));
+		options.put("radius", runOptions.getOption("radius"));
+		options.put("speed", runOptions.getOption("speed"));
+		options.put("seeds", runOptions.getOption("seed"));
+		options.put("jobs", Integer.toString(Runtime.getRuntime().availableProcessors()));
+		options.put("out", "sweep.csv");
+		options.put("cluster-distance", "30");
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Reads "--option value" pairs from the command line, replacing the defaults
+	 *
+	 * @param args the command line arguments
+	 * @throws IllegalArgumentException if an option is unknown or has no value
+	 */
+	public void parse(String[] args) {
+		for (int i = 0; i < args.length; i += 2) {
+			String name = args[i].startsWith("--") ? args[i].substring(2) : args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for option: " + args[i]);
+			}
+			if (options.containsKey(name)) {
+				options.put(name, args[i + 1]);
+			} else if (isRunOption(name)) {
+				runOptions.parse(new String[] { name, args[i + 1] });
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+	}
+
+	/**
+	 * Runs every combination of the swept values, writing a row to the CSV file as each finishes
+	 *
+	 * @throws IOException if the CSV file can't be written, or a run fails
+	 */
+	public void run() throws IOException {
+		double[] cohesions = parseValues(options.get("cohesion"));
+		double[] separations = parseValues(options.get("separation"));
+		double[] alignments = parseValues(options.get("alignment"));
+		int[] radii = parseWholeValues(options.get("radius"));
+		int[] speeds = parseWholeValues(options.get("speed"));
+		int[] seeds = parseWholeValues(options.get("seeds"));
+		int jobs = Integer.parseInt(options.get("jobs"));
+		final double clusterDistance = Double.parseDouble(options.get("cluster-distance"));
+		if (jobs < 1) {
+			throw new IllegalArgumentException("Need at least one job: " + jobs);
+		}
+		//Fails here rather than in every run
+		new FlockMetrics(clusterDistance);
+		runCount = cohesions.length * separations.length * alignments.length * radii.length * speeds.length
+				* seeds.length;
+
+		ExecutorService pool = new ThreadPoolExecutor(jobs, jobs, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private int next = 0;
+
+					public synchronized Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "Sweep run " + next++);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		//Each job has one run queued behind it, so the pool never waits for the next to be submitted
+		final Semaphore queued = new Semaphore(jobs * 2);
+		long start = System.nanoTime();
+		csv = Files.newBufferedWriter(Paths.get(options.get("out")), StandardCharsets.UTF_8);
+		try {
+			csv.write(HEADER);
+			csv.newLine();
+			csv.flush();
+			System.out.println(String.format("Sweeping %d runs on %d threads", runCount, jobs));
+
+			int run = 0;
+			for (double cohesion : cohesions) {
+				for (double separation : separations) {
+					for (double alignment : alignments) {
+						for (int radius : radii) {
+							for (int speed : speeds) {
+								for (int seed : seeds) {
+									if (failure != null) {
+										break;
+									}
+									final String[] settings = { "--cohesion", Double.toString(cohesion),
+											"--separation", Double.toString(separation), "--alignment",
+											Double.toString(alignment), "--radius", Integer.toString(radius),
+											"--speed", Integer.toString(speed), "--seed", Integer.toString(seed) };
+									final int number = run++;
+									queued.acquireUninterruptibly();
+									pool.execute(new Runnable() {
+										public void run() {
+											try {
+												runOne(number, settings, clusterDistance);
+											} catch (Exception e) {
+												failure = e;
+											} finally {
+												queued.release();
+											}
+										}
+									});
+								}
+							}
+						}
+					}
+				}
+			}
+			pool.shutdown();
+			while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+				//Keep waiting - every run ends after its number of ticks
+			}
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the sweep to finish", e);
+		} finally {
+			csv.close();
+		}
+		if (failure != null) {
+			throw new IOException("A sweep run failed: " + failure.getMessage(), failure);
+		}
+		System.out.println(String.format("Finished %d runs in %.3f s, written to %s", runCount,
+				(System.nanoTime() - start) / 1e9, options.get("out")));
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Runs one simulation on the calling thread, measures it and writes its row
+	 *
+	 * @param number the number of the run, in the order runs were started
+	 * @param settings the swept options of the run, as command line arguments
+	 * @param clusterDistance boids closer together than this are in the same cluster (pixels)
+	 * @throws IOException if the row can't be written
+	 */
+	private void runOne(int number, String[] settings, double clusterDistance) throws IOException {
+		HeadlessRunner runner = new HeadlessRunner();
+		for (String name : RUN_OPTIONS) {
+			runner.parse(new String[] { name, runOptions.getOption(name) });
+		}
+		runner.parse(settings);
+		runner.parse(new String[] { "threads", "1" });
+		int ticks = Integer.parseInt(runner.getOption("ticks"));
+		int deltaTime = Integer.parseInt(runner.getOption("delta"));
+
+		long start = System.nanoTime();
+		FlockingEngine engine = runner.createEngine(Long.parseLong(runner.getOption("seed")));
+		int startCount = engine.getStore().count(FlockStore.FLOCKING);
+		for (int i = 0; i < ticks; i++) {
+			engine.tick(deltaTime);
+		}
+		engine.shutdown();
+		FlockMetrics metrics = new FlockMetrics(clusterDistance);
+		metrics.measure(engine.getStore());
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		double survival = startCount == 0 ? Double.NaN : (double) metrics.getFlockingCount() / startCount;
+		String row = number + "," + runner.getOption("cohesion") + "," + runner.getOption("separation") + ","
+				+ runner.getOption("alignment") + "," + runner.getOption("radius") + "," + runner.getOption("speed")
+				+ "," + runner.getOption("seed") + "," + startCount + "," + metrics.getFlockingCount() + ","
+				+ survival + "," + metrics.getPolarisation() + "," + metrics.getClusterCount() + ","
+				+ metrics.getNearestNeighbour() + "," + Math.round(seconds * 1000) / 1000.0;
+		synchronized (csv) {
+			csv.write(row);
+			csv.newLine();
+			//Flushed on every row so finished runs are kept even if the sweep is stopped
+			csv.flush();
+		}
+		System.out.println(String.format("Run %d finished (%d of %d) in %.3f s", number, finished.incrementAndGet(),
+				runCount, seconds));
+	}
+
+	private static boolean isRunOption(String name) {
+		for (String runOption : RUN_OPTIONS) {
+			if (runOption.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a list of values such as 0.2,0.5,0.8, where each entry can also be a range
+	 * written as from:to:step
+	 *
+	 * @param list the values
+	 * @return every value in the list, with each range filled in
+	 * @throws IllegalArgumentException if the list can't be read
+	 */
+	private static double[] parseValues(String list) {
+		String[] entries = list.split(",");
+		double[][] ranges = new double[entries.length][];
+		int total = 0;
+		for (int e = 0; e < entries.length; e++) {
+			String[] parts = entries[e].split(":");
+			if (parts.length == 1) {
+				ranges[e] = new double[] { Double.parseDouble(parts[0].trim()) };
+			} else if (parts.length == 3) {
+				double from = Double.parseDouble(parts[0].trim());
+				double to = Double.parseDouble(parts[1].trim());
+				double step = Double.parseDouble(parts[2].trim());
+				if (!(step > 0) || to < from) {
+					throw new IllegalArgumentException("Ranges should go up by a step above zero: " + entries[e]);
+				}
+				//Small allowance so a range such as 0.1:0.9:0.2 still ends on 0.9 despite rounding
+				int count = (int) Math.floor((to - from) / step + 1e-9) + 1;
+				ranges[e] = new double[count];
+				for (int i = 0; i < count; i++) {
+					//Rounded so values such as 0.30000000000000004 are written as 0.3
+					ranges[e][i] = Math.round((from + i * step) * 1e9) / 1e9;
+				}
+			} else {
+				throw new IllegalArgumentException("Values should be a list such as 0.2,0.5 or a range such as 0.1:0.9:0.2: " + list);
+			}
+			total += ranges[e].length;
+		}
+		double[] values = new double[total];
+		int next = 0;
+		for (double[] range : ranges) {
+			System.arraycopy(range, 0, values, next, range.length);
+			next += range.length;
+		}
+		return values;
+	}
+
+	private static int[] parseWholeValues(String list) {
+		double[] values = parseValues(list);
+		int[] wholeValues = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != Math.rint(values[i])) {
+				throw new IllegalArgumentException("Values should be whole numbers: " + list);
+			}
+			wholeValues[i] = (int) values[i];
+		}
+		return wholeValues;
+	}
+
+	public static void main(String[] args) {
+		ParameterSweep sweep = new ParameterSweep();
+		try {
+			sweep.parse(args);
+			sweep.run();
+		} catch (IllegalArgumentException e) {
+			//NumberFormatException is also an IllegalArgumentException
+			System.out.println(e.getMessage());
+			System.out.println("Usage: java simulation.ParameterSweep [--option value]... (see class documentation)");
+			System.exit(1);
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package simulation;
+
+import java.util.Arrays;
+
+import boid.DynamicBoid;
+import boid.FlockStore;
+import boid.FoodBoid;
+import boid.StaticPredatorBoid;
+import drawing.Canvas;
+import tools.Utils;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * What the render thread needs to draw one simulation step: the kind, size, and the position
+ * and heading before and after the step of every boid.
+ *
+ * <P>States are filled by the scheduler and drawn by the render thread, and are passed between
+ * them whole, so the render thread never reads the store while the simulation changes it.
+ * Drawing blends the two positions, so the boids move smoothly however many frames are drawn
+ * between two steps. States are reused, so the arrays only grow when a state holds more boids
+ * than it has before.
+ */
+public class RenderState {
+    // **************************************************
+    // Fields
+    // **************************************************
+	long tick;
+	//When the step finished (System.nanoTime)
+	long stepTime;
+	int count;
+	//Set when the scheduler hands the state over, cleared when the render thread takes it
+	volatile boolean fresh;
+	byte[] kinds = new byte[0];
+	int[] sizes = new int[0];
+	double[] fromX = new double[0];
+	double[] fromY = new double[0];
+	double[] fromHeadings = new double[0]; //radians
+	double[] toX = new double[0];
+	double[] toY = new double[0];
+	double[] toHeadings = new double[0]; //radians
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Draws every boid part of the way from its position before the step to its position
+	 * after it. Boids that wrapped around the edge of the screen are drawn where they ended up
+	 * rather than sliding back across it.
+	 *
+	 * @param canvas the canvas to draw on
+	 * @param alpha how far through the step to draw, from 0 (before) to 1 (after)
+	 */
+	public void draw(Canvas canvas, double alpha) {
+		draw(canvas, alpha, 1);
+	}
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	/**
+	 * Draws every boid as draw(canvas, alpha) does, but with the flocking boids faded
+	 *
+	 * @param canvas the canvas to draw on
+	 * @param alpha how far through the step to draw, from 0 (before) to 1 (after)
+	 * @param flockingOpacity the opacity of the flocking boids, from 0 (not drawn) to 1
+	 */
+	void draw(Canvas canvas, double alpha, float flockingOpacity) {
+		if (flockingOpacity == 1) {
+			for (int i = 0; i < count; i++) {
+				drawBoid(canvas, i, alpha);
+			}
+			return;
+		}
+		//Faded boids are drawn together, so the opacity only changes twice a frame
+		if (flockingOpacity > 0) {
+			canvas.setStampOpacity(flockingOpacity);
+			for (int i = 0; i < count; i++) {
+				if (kinds[i] == FlockStore.FLOCKING) {
+					drawBoid(canvas, i, alpha);
+				}
+			}
+			canvas.setStampOpacity(1);
+		}
+		for (int i = 0; i < count; i++) {
+			if (kinds[i] != FlockStore.FLOCKING) {
+				drawBoid(canvas, i, alpha);
+			}
+		}
+	}
+
+	//Position of a boid part of the way through the step
+	double getX(int i, double alpha) {
+		double dx = toX[i] - fromX[i];
+		return wrapped(i) ? toX[i] : toX[i] - (1 - alpha) * dx;
+	}
+
+	double getY(int i, double alpha) {
+		double dy = toY[i] - fromY[i];
+		return wrapped(i) ? toY[i] : toY[i] - (1 - alpha) * dy;
+	}
+
+	double getHeading(int i, double alpha) {
+		//Turned the short way round, so a heading crossing 0 doesn't spin the boid
+		double turn = Math.IEEEremainder(toHeadings[i] - fromHeadings[i], 2 * Math.PI);
+		return toHeadings[i] - (1 - alpha) * turn;
+	}
+	/**
+	 * Sets the number of boids in the state, growing the arrays if they are too small
+	 *
+	 * @param boidCount the number of boids
+	 */
+	void resize(int boidCount) {
+		if (kinds.length < boidCount) {
+			kinds = Arrays.copyOf(kinds, boidCount);
+			sizes = Arrays.copyOf(sizes, boidCount);
+			fromX = Arrays.copyOf(fromX, boidCount);
+			fromY = Arrays.copyOf(fromY, boidCount);
+			fromHeadings = Arrays.copyOf(fromHeadings, boidCount);
+			toX = Arrays.copyOf(toX, boidCount);
+			toY = Arrays.copyOf(toY, boidCount);
+			toHeadings = Arrays.copyOf(toHeadings, boidCount);
+		}
+		count = boidCount;
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	private void drawBoid(Canvas canvas, int i, double alpha) {
+		double x = getX(i, alpha);
+		double y = getY(i, alpha);
+		double heading = getHeading(i, alpha);
+		switch (kinds[i]) {
+		case FlockStore.FOOD:
+			FoodBoid.drawShape(canvas, x, y, heading);
+			break;
+		case FlockStore.STATIC_PREDATOR:
+			StaticPredatorBoid.drawShape(canvas, x, y, heading);
+			break;
+		default:
+			DynamicBoid.drawShape(canvas, x, y, heading, sizes[i]);
+		}
+	}
+
+	//Whether a boid jumped across the screen in the step, by wrapping around an edge
+	private boolean wrapped(int i) {
+		return Math.abs(toX[i] - fromX[i]) >= Utils.SCREEN_X_SIZE / 2 || Math.abs(toY[i] - fromY[i]) >= Utils.SCREEN_Y_SIZE / 2;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	//Simulation tick the state was captured after
+	public long getTick() {
+		return tick;
+	}
+
+	public long getStepTime() {
+		return stepTime;
+	}
+
+	public int getCount() {
+		return count;
+	}
+}
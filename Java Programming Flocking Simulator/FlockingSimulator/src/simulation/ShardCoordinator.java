@@ -0,0 +1,329 @@
+package simulation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import boid.Boid;
+import boid.FlockStore;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Runs a simulation spread over shard workers, one worker to each tile of a TileLayout, with
+ * every worker running each tick in lockstep.
+ *
+ * <P>The coordinator splits the boids of an engine between the workers, then for each tick
+ * passes on what each worker reported at the end of the last one: boids handed off from one
+ * tile to another, the halo boids each tile needs to see, the eaten boids every worker needs to
+ * renumber its own, and the nearest prey of each predator out of the candidates every worker
+ * found. The workers only ever talk to the coordinator, so each needs one link however many
+ * neighbours its tile has. gather() puts the whole simulation back into an engine, and can be
+ * called between any two ticks.
+ *
+ * <P>The simulation runs exactly as it would in the engine, with one exception: when two
+ * different flocking boids are exactly as near a predator as each other, the predator chases the
+ * one with the lower slot, where a single grid picks whichever it comes across first.
+ */
+public class ShardCoordinator implements Closeable {
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final TileLayout layout;
+	private final ShardTransport transport;
+	//Link to the worker of each tile
+	private ShardLink[] links = new ShardLink[0];
+	//Settings, random seed and species of the simulation as it was split up
+	private Checkpoint start;
+	private long tickCount;
+	private int boidCount;
+	private int flockingCount;
+	private int largestRadius;
+	//Boids eaten in the last tick, and boids on their way to each tile for the next one
+	private final ShardRemovals removals = new ShardRemovals();
+	private ShardRecords[] handoffs;
+	private ShardRecords[] halos;
+	//Nearest prey found for each predator so far, by the predator's kind position
+	private double[] preyDistances = new double[0];
+	private double[] preyX = new double[0];
+	private double[] preyY = new double[0];
+	private int[] preySlots = new int[0];
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create a coordinator for a layout of tiles
+    *
+    * @param layout the tiles to split the world into
+    * @param transport the transport that starts and connects the workers
+    */
+	public ShardCoordinator(TileLayout layout, ShardTransport transport) {
+		this.layout = layout;
+		this.transport = transport;
+		handoffs = new ShardRecords[layout.getTileCount()];
+		halos = new ShardRecords[layout.getTileCount()];
+		for (int i = 0; i < handoffs.length; i++) {
+			handoffs[i] = new ShardRecords();
+			halos[i] = new ShardRecords();
+		}
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Starts the workers and gives each the boids of an engine that are in its tile, along with
+	 * the predators, food and static predators that every worker holds
+	 *
+	 * @param engine the simulation to split up - it isn't changed until gather is called
+	 * @param deltaTime the time step each tick moves the boids by (milliseconds)
+	 * @throws IOException if the workers can't be started or sent their boids
+	 */
+	public void start(FlockingEngine engine, int deltaTime) throws IOException {
+		ShardRecords shared = new ShardRecords();
+		ShardRecords[] own = new ShardRecords[layout.getTileCount()];
+		for (int i = 0; i < own.length; i++) {
+			own[i] = new ShardRecords();
+		}
+		int haloRadius = 0;
+		ByteArrayOutputStream settings = new ByteArrayOutputStream();
+		List<Boid> boids = engine.getBoids();
+		synchronized (boids) {
+			FlockStore store = engine.getStore();
+			start = engine.checkpoint();
+			writeSettings(store, new DataOutputStream(settings));
+			tickCount = start.getTickCount();
+			boidCount = store.size();
+			flockingCount = store.count(FlockStore.FLOCKING);
+			for (int slot = 0; slot < store.size(); slot++) {
+				if (store.getKind(slot) == FlockStore.FLOCKING) {
+					own[layout.tileOf(store.getXPositions()[slot], store.getYPositions()[slot])].addFrom(store, slot);
+					haloRadius = Math.max(haloRadius, store.getBoid(slot).getRadius());
+				} else {
+					shared.addFrom(store, slot);
+				}
+			}
+			largestRadius = haloRadius;
+			resetPrey(store.count(FlockStore.PREDATOR));
+		}
+
+		links = transport.open(layout.getTileCount());
+		for (int tile = 0; tile < links.length; tile++) {
+			DataOutputStream out = links[tile].getOutput();
+			out.writeInt(tile);
+			out.writeInt(layout.getColumns());
+			out.writeInt(layout.getRows());
+			out.writeInt(deltaTime);
+			//Species don't change while the simulation is spread out, so no boid will ever search further
+			out.writeInt(haloRadius);
+			out.writeInt(largestRadius);
+			settings.writeTo(out);
+			out.writeInt(boidCount);
+			out.writeInt(flockingCount);
+			shared.write(out);
+			own[tile].write(out);
+			out.flush();
+		}
+		readReports();
+	}
+
+	/**
+	 * Runs one tick on every worker and waits for them all to finish it
+	 *
+	 * @throws IOException if a worker fails or its link breaks
+	 */
+	public void tick() throws IOException {
+		for (int tile = 0; tile < links.length; tile++) {
+			DataOutputStream out = links[tile].getOutput();
+			out.writeByte(ShardWorker.STEP);
+			out.writeInt(largestRadius);
+			removals.write(out);
+			out.writeInt(preyDistances.length);
+			for (int i = 0; i < preyDistances.length; i++) {
+				out.writeDouble(preyDistances[i]);
+				out.writeDouble(preyX[i]);
+				out.writeDouble(preyY[i]);
+			}
+			handoffs[tile].write(out);
+			halos[tile].write(out);
+			out.flush();
+		}
+		boidCount = removals.getBoidCountAfter();
+		flockingCount = removals.getFlockingCountAfter();
+		tickCount++;
+		readReports();
+	}
+
+	/**
+	 * Replaces the boids in an engine with the boids of the spread out simulation as they are
+	 * now. The workers carry on from where they were, so ticking can continue afterwards.
+	 *
+	 * @param engine the engine to fill, normally the one the simulation was started from
+	 * @throws IOException if a worker fails or its link breaks
+	 */
+	public void gather(FlockingEngine engine) throws IOException {
+		for (ShardLink link : links) {
+			link.getOutput().writeByte(ShardWorker.GATHER);
+			link.getOutput().flush();
+		}
+		ShardRecords gathered = new ShardRecords(boidCount);
+		ShardRecords shared = new ShardRecords();
+		ShardRecords copies = new ShardRecords();
+		for (int tile = 0; tile < links.length; tile++) {
+			gathered.readAppend(links[tile].getInput());
+			//Every worker holds the same shared boids, so only the first copy is kept
+			copies.clear();
+			(tile == 0 ? shared : copies).readAppend(links[tile].getInput());
+		}
+		for (int i = 0; i < shared.count; i++) {
+			gathered.addFrom(shared, i);
+		}
+		//Boids being handed off are held here until the next tick
+		for (ShardRecords arriving : handoffs) {
+			for (int i = 0; i < arriving.count; i++) {
+				gathered.addFrom(arriving, i);
+			}
+		}
+		//The workers renumber their boids at the start of the next tick, so they are still numbered from before the removals
+		gathered.renumber(removals);
+
+		int count = removals.getBoidCountAfter();
+		if (gathered.count != count) {
+			throw new IOException("Shard workers hold " + gathered.count + " boids, expected " + count);
+		}
+		int[] order = new int[count];
+		Arrays.fill(order, -1);
+		for (int i = 0; i < count; i++) {
+			order[gathered.slots[i]] = i;
+		}
+		ShardRecords sorted = new ShardRecords(count);
+		for (int slot = 0; slot < count; slot++) {
+			if (order[slot] < 0) {
+				throw new IOException("No shard worker holds the boid in slot " + slot);
+			}
+			sorted.addFrom(gathered, order[slot]);
+		}
+		engine.restore(new Checkpoint(start, tickCount, sorted));
+	}
+
+	/**
+	 * Stops the workers and closes their links
+	 *
+	 * @throws IOException if a link can't be closed or the transport can't be shut down
+	 */
+	public void close() throws IOException {
+		try {
+			for (ShardLink link : links) {
+				try {
+					link.getOutput().writeByte(ShardWorker.STOP);
+					link.getOutput().flush();
+				} finally {
+					link.close();
+				}
+			}
+		} finally {
+			transport.close();
+		}
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Reads the report every worker sends at the end of a tick, ready to pass on in the next one
+	 */
+	private void readReports() throws IOException {
+		removals.clear(boidCount, flockingCount);
+		for (int i = 0; i < handoffs.length; i++) {
+			handoffs[i].clear();
+			halos[i].clear();
+		}
+		resetPrey(preyDistances.length);
+		int radius = 0;
+		for (ShardLink link : links) {
+			DataInputStream in = link.getInput();
+			radius = Math.max(radius, in.readInt());
+			removals.readList(in);
+			int predators = in.readInt();
+			for (int i = 0; i < predators; i++) {
+				int predator = in.readInt();
+				double distance = in.readDouble();
+				double x = in.readDouble();
+				double y = in.readDouble();
+				int slot = in.readInt();
+				//Ties go to the lower slot, so the choice doesn't depend on the order the reports arrive in
+				if (distance < preyDistances[predator]
+						|| (distance == preyDistances[predator] && slot >= 0 && slot < preySlots[predator])) {
+					preyDistances[predator] = distance;
+					preyX[predator] = x;
+					preyY[predator] = y;
+					preySlots[predator] = slot;
+				}
+			}
+			for (int tile = 0; tile < handoffs.length; tile++) {
+				handoffs[tile].readAppend(in);
+				halos[tile].readAppend(in);
+			}
+		}
+		removals.apply();
+		largestRadius = radius;
+	}
+
+	/**
+	 * Writes the steering settings and the species table of a store, for the workers to set
+	 * their own stores up in the same way
+	 */
+	private static void writeSettings(FlockStore store, DataOutputStream out) throws IOException {
+		store.refreshSpecies();
+		out.writeBoolean(store.isVectorSteering());
+		out.writeBoolean(store.isFastTrig());
+		out.writeBoolean(store.isNeighbourKernel());
+		out.writeInt(store.getSpeciesCount());
+		for (int i = 0; i < store.getSpeciesCount(); i++) {
+			out.writeUTF(store.getSpecies(i).getName());
+			out.writeInt(store.getSpeciesRadius(i));
+			out.writeInt(store.getSpeciesSpeed(i));
+			out.writeDouble(store.getSpeciesCohesion(i));
+			out.writeDouble(store.getSpeciesSeparation(i));
+			out.writeDouble(store.getSpeciesAlignment(i));
+			out.writeInt(store.getSpeciesNeighbourLimit(i));
+		}
+		out.flush();
+	}
+
+	private void resetPrey(int predators) {
+		if (preyDistances.length != predators) {
+			preyDistances = new double[predators];
+			preyX = new double[predators];
+			preyY = new double[predators];
+			preySlots = new int[predators];
+		}
+		Arrays.fill(preyDistances, Double.POSITIVE_INFINITY);
+		Arrays.fill(preyX, 0);
+		Arrays.fill(preyY, 0);
+		Arrays.fill(preySlots, Integer.MAX_VALUE);
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	//Number of boids in the simulation after the last tick
+	public int getBoidCount() {
+		return removals.getBoidCountAfter();
+	}
+
+	public TileLayout getLayout() {
+		return layout;
+	}
+}
@@ -0,0 +1,79 @@
+package simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * One end of the connection between the shard coordinator and a worker. Messages are written
+ * to the output and read from the input, and each message is flushed as a whole once written.
+ */
+public class ShardLink implements Closeable {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	private static final int BUFFER_SIZE = 1 << 16;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	//Closed along with the streams, such as the socket they come from
+	private final Closeable resource;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create a link from a pair of streams
+    *
+    * @param in the stream messages are read from
+    * @param out the stream messages are written to
+    * @param resource anything else to close with the link, or null
+    */
+	public ShardLink(InputStream in, OutputStream out, Closeable resource) {
+		this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+		this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		this.resource = resource;
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Closes both streams
+	 *
+	 * @throws IOException if the link can't be closed
+	 */
+	public void close() throws IOException {
+		try {
+			out.close();
+			in.close();
+		} finally {
+			if (resource != null) {
+				resource.close();
+			}
+		}
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public DataInputStream getInput() {
+		return in;
+	}
+
+	public DataOutputStream getOutput() {
+		return out;
+	}
+}
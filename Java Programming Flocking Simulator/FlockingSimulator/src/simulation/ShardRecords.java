@@ -0,0 +1,216 @@
+package simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import boid.FlockStore;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * A list of boids passed between the shard coordinator and its workers, in parallel arrays in
+ * the same way as the store holds them.
+ *
+ * <P>Each boid carries everything needed to run it as part of another store: the slot it has in
+ * the whole simulation, its kind and its position in the list of boids of its kind, its species,
+ * position, heading and random stream. The slots and positions are those a single store holding
+ * every boid would give them, so workers can put their boids in the order that store would
+ * visit them in.
+ */
+public class ShardRecords {
+    // **************************************************
+    // Fields
+    // **************************************************
+	int count = 0;
+	int[] slots;
+	byte[] kinds;
+	int[] kindPositions;
+	int[] species;
+	double[] x;
+	double[] y;
+	double[] headings; //radians
+	long[] randomStates;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create an empty list
+    */
+	public ShardRecords() {
+		this(16);
+	}
+
+    /**
+    * Constructor to create an empty list with room for the given number of boids
+    *
+    * @param capacity the number of boids the list can hold before growing
+    */
+	public ShardRecords(int capacity) {
+		capacity = Math.max(capacity, 1);
+		slots = new int[capacity];
+		kinds = new byte[capacity];
+		kindPositions = new int[capacity];
+		species = new int[capacity];
+		x = new double[capacity];
+		y = new double[capacity];
+		headings = new double[capacity];
+		randomStates = new long[capacity];
+	}
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	/**
+	 * Adds the boid in a store slot to the end of the list
+	 *
+	 * @param store the store holding the boid
+	 * @param slot the boid's slot in the store, which is also its slot in the simulation
+	 */
+	void addFrom(FlockStore store, int slot) {
+		int i = append();
+		slots[i] = slot;
+		kinds[i] = store.getKind(slot);
+		kindPositions[i] = store.getKindPositions()[slot];
+		species[i] = store.getSpeciesIndices()[slot];
+		x[i] = store.getXPositions()[slot];
+		y[i] = store.getYPositions()[slot];
+		headings[i] = store.getHeadings()[slot];
+		randomStates[i] = store.getRandomStates()[slot];
+	}
+
+	/**
+	 * Adds a copy of a boid from another list to the end of this one
+	 *
+	 * @param from the list holding the boid
+	 * @param index the boid's position in that list
+	 */
+	void addFrom(ShardRecords from, int index) {
+		int i = append();
+		slots[i] = from.slots[index];
+		kinds[i] = from.kinds[index];
+		kindPositions[i] = from.kindPositions[index];
+		species[i] = from.species[index];
+		x[i] = from.x[index];
+		y[i] = from.y[index];
+		headings[i] = from.headings[index];
+		randomStates[i] = from.randomStates[index];
+	}
+
+	/**
+	 * Removes a boid by moving the last boid in the list into its place
+	 *
+	 * @param index the position of the boid in the list
+	 */
+	void remove(int index) {
+		int last = --count;
+		slots[index] = slots[last];
+		kinds[index] = kinds[last];
+		kindPositions[index] = kindPositions[last];
+		species[index] = species[last];
+		x[index] = x[last];
+		y[index] = y[last];
+		headings[index] = headings[last];
+		randomStates[index] = randomStates[last];
+	}
+
+	/**
+	 * Empties the list without releasing its arrays
+	 */
+	void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Writes the list as its number of boids followed by the boids
+	 *
+	 * @param out the stream to write to
+	 * @throws IOException if the stream can't be written
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			out.writeInt(slots[i]);
+			out.writeByte(kinds[i]);
+			out.writeInt(kindPositions[i]);
+			out.writeInt(species[i]);
+			out.writeDouble(x[i]);
+			out.writeDouble(y[i]);
+			out.writeDouble(headings[i]);
+			out.writeLong(randomStates[i]);
+		}
+	}
+
+	/**
+	 * Reads a list written by write and adds its boids to the end of this one
+	 *
+	 * @param in the stream to read from
+	 * @throws IOException if the stream can't be read
+	 */
+	void readAppend(DataInput in) throws IOException {
+		int boidCount = in.readInt();
+		if (boidCount < 0) {
+			throw new IOException("Bad number of boids in a shard message: " + boidCount);
+		}
+		for (int n = 0; n < boidCount; n++) {
+			int i = append();
+			slots[i] = in.readInt();
+			kinds[i] = in.readByte();
+			kindPositions[i] = in.readInt();
+			species[i] = in.readInt();
+			x[i] = in.readDouble();
+			y[i] = in.readDouble();
+			headings[i] = in.readDouble();
+			randomStates[i] = in.readLong();
+		}
+	}
+
+	/**
+	 * Gives every boid its new slot and kind position once eaten boids have been removed from
+	 * the simulation
+	 *
+	 * @param removals the boids removed, which must not include any boid in this list
+	 */
+	void renumber(ShardRemovals removals) {
+		for (int i = 0; i < count; i++) {
+			slots[i] = removals.newSlot(slots[i]);
+			if (kinds[i] == FlockStore.FLOCKING) {
+				kindPositions[i] = removals.newFlockingPosition(kindPositions[i]);
+			}
+		}
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Makes room for one more boid at the end of the list
+	 *
+	 * @return the position of the new boid
+	 */
+	private int append() {
+		if (count == slots.length) {
+			int capacity = count * 2;
+			slots = Arrays.copyOf(slots, capacity);
+			kinds = Arrays.copyOf(kinds, capacity);
+			kindPositions = Arrays.copyOf(kindPositions, capacity);
+			species = Arrays.copyOf(species, capacity);
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			headings = Arrays.copyOf(headings, capacity);
+			randomStates = Arrays.copyOf(randomStates, capacity);
+		}
+		return count++;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public int size() {
+		return count;
+	}
+}
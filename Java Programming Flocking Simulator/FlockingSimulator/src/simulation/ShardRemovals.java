@@ -0,0 +1,203 @@
+package simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * The flocking boids eaten in one tick of a simulation spread over shard workers, and the slots
+ * and kind positions every other boid moves to once they are removed.
+ *
+ * <P>A single store removes eaten boids by walking its slots backwards and moving the last boid
+ * into each freed slot, and the last flocking boid into each freed place in the list of flocking
+ * boids. Each worker only holds some of the boids, so it can't do the same moves itself. Instead
+ * every worker is sent all of the removals and replays the moves on the slot numbers, which gives
+ * each of its boids the slot and kind position it would have had in the single store.
+ */
+public class ShardRemovals {
+    // **************************************************
+    // Fields
+    // **************************************************
+	//Number of boids, and of flocking boids, in the simulation before the removals
+	private int size = 0;
+	private int flockingCount = 0;
+	//Slot in the top 32 bits and kind position in the bottom 32 of each boid removed
+	private long[] removed = new long[16];
+	private int count = 0;
+	//Slot and kind position each boid has after the removals, by the ones it had before
+	private int[] newSlots = new int[0];
+	private int[] newPositions = new int[0];
+	//Boid in each slot and kind position while the moves are replayed, by its number before
+	private int[] slotBoids = new int[0];
+	private int[] positionBoids = new int[0];
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	/**
+	 * Empties the list ready for the boids eaten in the next tick
+	 *
+	 * @param boidCount the number of boids in the simulation before the removals
+	 * @param flockingBoidCount the number of flocking boids in the simulation before the removals
+	 */
+	void clear(int boidCount, int flockingBoidCount) {
+		size = boidCount;
+		flockingCount = flockingBoidCount;
+		count = 0;
+	}
+
+	/**
+	 * Adds an eaten flocking boid to the list
+	 *
+	 * @param slot the boid's slot in the simulation
+	 * @param kindPosition the boid's position in the list of flocking boids
+	 */
+	void add(int slot, int kindPosition) {
+		if (count == removed.length) {
+			removed = Arrays.copyOf(removed, count * 2);
+		}
+		removed[count++] = ((long) slot << 32) | kindPosition;
+	}
+
+	/**
+	 * Replays the removals, in the same order a single store would make them, to find where
+	 * every boid left ends up. Called once every removal has been added.
+	 */
+	void apply() {
+		if (count == 0) {
+			return;
+		}
+		//Sorted by slot, then walked backwards as FlockingEngine.tick walks the slots
+		Arrays.sort(removed, 0, count);
+		if (newSlots.length < size) {
+			newSlots = new int[size];
+			slotBoids = new int[size];
+		}
+		if (newPositions.length < flockingCount) {
+			newPositions = new int[flockingCount];
+			positionBoids = new int[flockingCount];
+		}
+		for (int i = 0; i < size; i++) {
+			newSlots[i] = i;
+			slotBoids[i] = i;
+		}
+		for (int i = 0; i < flockingCount; i++) {
+			newPositions[i] = i;
+			positionBoids[i] = i;
+		}
+		int boids = size;
+		int flocking = flockingCount;
+		for (int i = count - 1; i >= 0; i--) {
+			//Slots above the one being removed have all been checked, so the removed boid hasn't moved
+			int slot = (int) (removed[i] >>> 32);
+			int position = newPositions[(int) removed[i]];
+			//Last flocking boid moves into the removed boid's place in the list of flocking boids
+			int lastOfKind = positionBoids[--flocking];
+			if (position != flocking) {
+				positionBoids[position] = lastOfKind;
+				newPositions[lastOfKind] = position;
+			}
+			//Then the last boid moves into its slot
+			int last = slotBoids[--boids];
+			if (slot != boids) {
+				slotBoids[slot] = last;
+				newSlots[last] = slot;
+			}
+		}
+	}
+
+	/**
+	 * Finds the slot a boid that wasn't removed has once the removals have been applied
+	 *
+	 * @param slot the boid's slot before the removals
+	 * @return its slot after them
+	 */
+	int newSlot(int slot) {
+		return count == 0 ? slot : newSlots[slot];
+	}
+
+	/**
+	 * Finds the position in the list of flocking boids a flocking boid that wasn't removed has
+	 * once the removals have been applied
+	 *
+	 * @param kindPosition the boid's position before the removals
+	 * @return its position after them
+	 */
+	int newFlockingPosition(int kindPosition) {
+		return count == 0 ? kindPosition : newPositions[kindPosition];
+	}
+
+	/**
+	 * Writes the removed boids as their number followed by the slot and kind position of each
+	 *
+	 * @param out the stream to write to
+	 * @throws IOException if the stream can't be written
+	 */
+	void writeList(DataOutput out) throws IOException {
+		out.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			out.writeInt((int) (removed[i] >>> 32));
+			out.writeInt((int) removed[i]);
+		}
+	}
+
+	/**
+	 * Reads boids written by writeList and adds them to this list
+	 *
+	 * @param in the stream to read from
+	 * @throws IOException if the stream can't be read
+	 */
+	void readList(DataInput in) throws IOException {
+		int removedCount = in.readInt();
+		if (removedCount < 0) {
+			throw new IOException("Bad number of removed boids in a shard message: " + removedCount);
+		}
+		for (int i = 0; i < removedCount; i++) {
+			add(in.readInt(), in.readInt());
+		}
+	}
+
+	/**
+	 * Writes the number of boids before the removals as well as the removed boids
+	 *
+	 * @param out the stream to write to
+	 * @throws IOException if the stream can't be written
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeInt(flockingCount);
+		writeList(out);
+	}
+
+	/**
+	 * Replaces this list with one written by write
+	 *
+	 * @param in the stream to read from
+	 * @throws IOException if the stream can't be read
+	 */
+	void read(DataInput in) throws IOException {
+		clear(in.readInt(), in.readInt());
+		readList(in);
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public int size() {
+		return count;
+	}
+
+	//Number of boids in the simulation once the removals have been made
+	public int getBoidCountAfter() {
+		return size - count;
+	}
+
+	public int getFlockingCountAfter() {
+		return flockingCount - count;
+	}
+}
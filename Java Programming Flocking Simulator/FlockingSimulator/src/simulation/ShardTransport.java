@@ -0,0 +1,32 @@
+package simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Starts the workers of a simulation spread over shard workers and connects the coordinator
+ * to them. The messages are the same whatever carries them, so a transport only has to start
+ * the workers and give the coordinator a link to each one.
+ */
+public interface ShardTransport extends Closeable {
+	/**
+	 * Starts the workers, each running ShardWorker at the far end of its link
+	 *
+	 * @param workers the number of workers to start
+	 * @return a link to each worker, in no particular order
+	 * @throws IOException if a worker can't be started or connected to
+	 */
+	ShardLink[] open(int workers) throws IOException;
+
+	/**
+	 * Waits for the workers to finish once their links have been closed, and releases anything
+	 * else the transport holds
+	 *
+	 * @throws IOException if the transport can't be shut down cleanly
+	 */
+	void close() throws IOException;
+}
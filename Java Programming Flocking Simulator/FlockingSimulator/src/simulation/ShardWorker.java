@@ -0,0 +1,475 @@
+package simulation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+import boid.Boid;
+import boid.FlockScratch;
+import boid.FlockStore;
+import boid.PredatorBoid;
+import boid.Species;
+import tools.IntList;
+import tools.Utils;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Runs the flocking boids in one tile of a simulation spread over shard workers, in lockstep
+ * with the other workers under a ShardCoordinator.
+ *
+ * <P>The worker owns the flocking boids whose positions are in its tile. Each tick it is also
+ * sent the boids the other workers own within one search radius of its tile (the halo), which
+ * it looks at but doesn't move. Predators, food and static predators are few, and flocking
+ * boids flee every predator wherever it is, so every worker holds and moves all of them in the
+ * same way. After each tick the worker sends back which of its boids were eaten, its boids that
+ * have moved into other tiles, the boids other tiles need for their halos, and the nearest of
+ * its boids to each predator, which the coordinator compares across workers so every copy of a
+ * predator turns towards the same prey.
+ *
+ * <P>Boids are put into the worker's store in the order of their slots in the whole simulation,
+ * with the predators in their saved order, so every neighbour search finds its boids in the
+ * same order as a single store would, and the worker's boids move exactly as they would in a
+ * single process.
+ *
+ * <P>Usage when started by SocketTransport: java simulation.ShardWorker --port port [--host host]
+ */
+public class ShardWorker {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Messages from the coordinator after the setup
+	static final byte STEP = 1;
+	static final byte GATHER = 2;
+	static final byte STOP = 3;
+	//Lists a boid in the store can come from
+	private static final int OWN = 0;
+	private static final int SHARED = 1;
+	private static final int HALO = 2;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final ShardLink link;
+	private final FlockingEngine engine = new FlockingEngine(1);
+	private final FlockStore store = engine.getStore();
+	//Grid wraps around the edges of the screen in the same way as FlockingEngine's
+	private final SpatialGrid grid = new SpatialGrid(Utils.SCREEN_X_SIZE, Utils.SCREEN_Y_SIZE, true);
+	//Working space for flocking, as every boid is run on this thread
+	private final FlockScratch scratch = new FlockScratch();
+	//Grid over this worker's own boids, used to find the nearest to each predator
+	private final SpatialGrid ownGrid = new SpatialGrid(Utils.SCREEN_X_SIZE, Utils.SCREEN_Y_SIZE, true);
+	private TileLayout layout;
+	private int tile;
+	private int deltaTime;
+	//Furthest any flocking boid can search, which is how far the halos reach
+	private int haloRadius;
+	//Largest search radius of any flocking boid in the simulation this tick
+	private int largestRadius;
+	//Number of boids, and of flocking boids, in the whole simulation
+	private int boidCount;
+	private int flockingCount;
+	//Flocking boids in this tile, every other boid, and the flocking boids in the halo
+	private final ShardRecords own = new ShardRecords();
+	private final ShardRecords shared = new ShardRecords();
+	private final ShardRecords halo = new ShardRecords();
+	private final ShardRecords arrivals = new ShardRecords();
+	private final ShardRemovals removals = new ShardRemovals();
+	private final ShardRemovals eaten = new ShardRemovals();
+	//Nearest prey of each predator in the whole simulation, by the predator's kind position
+	private double[] preyDistances = new double[0];
+	private double[] preyX = new double[0];
+	private double[] preyY = new double[0];
+	//List and position in it of the boid in each slot of the simulation (-1 if not held here)
+	private int[] slotSources = new int[0];
+	//Slot in the store of each own and shared boid, and the kind position of each store slot
+	private int[] ownSlots = new int[0];
+	private int[] sharedSlots = new int[0];
+	private int[] kindPositions = new int[0];
+	//Boids going to each tile, as new own boids or as halo boids
+	private ShardRecords[] handoffs;
+	private ShardRecords[] halos;
+	private final IntList tiles = new IntList();
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create a worker at the far end of a link from the coordinator
+    *
+    * @param link the link to the coordinator
+    */
+	public ShardWorker(ShardLink link) {
+		this.link = link;
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Runs ticks as the coordinator asks for them until it stops the worker, then closes the link
+	 *
+	 * @throws IOException if the link fails or a message can't be read
+	 */
+	public void run() throws IOException {
+		DataInputStream in = link.getInput();
+		try {
+			readSetup(in);
+			report();
+			while (true) {
+				byte message = in.readByte();
+				switch (message) {
+				case STEP:
+					readStep(in);
+					tick();
+					report();
+					break;
+				case GATHER:
+					own.write(link.getOutput());
+					shared.write(link.getOutput());
+					link.getOutput().flush();
+					break;
+				case STOP:
+					return;
+				default:
+					throw new IOException("Unknown shard message: " + message);
+				}
+			}
+		} finally {
+			link.close();
+		}
+	}
+
+	public static void main(String[] args) {
+		String host = InetAddress.getLoopbackAddress().getHostAddress();
+		int port = -1;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "--host":
+				host = args[i + 1];
+				break;
+			case "--port":
+				port = Integer.parseInt(args[i + 1]);
+				break;
+			default:
+				break;
+			}
+		}
+		if (port < 0) {
+			System.out.println("Usage: java simulation.ShardWorker --port port [--host host]");
+			System.exit(1);
+		}
+		try {
+			Socket socket = new Socket(host, port);
+			socket.setTcpNoDelay(true);
+			new ShardWorker(new ShardLink(socket.getInputStream(), socket.getOutputStream(), socket)).run();
+		} catch (IOException e) {
+			System.out.println("Shard worker stopped: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Reads the tile, settings, species and starting boids sent by ShardCoordinator.start
+	 */
+	private void readSetup(DataInputStream in) throws IOException {
+		tile = in.readInt();
+		layout = new TileLayout(Utils.SCREEN_X_SIZE, Utils.SCREEN_Y_SIZE, in.readInt(), in.readInt());
+		deltaTime = in.readInt();
+		haloRadius = in.readInt();
+		largestRadius = in.readInt();
+		store.setVectorSteering(in.readBoolean());
+		store.setFastTrig(in.readBoolean());
+		store.setNeighbourKernel(in.readBoolean());
+		int speciesCount = in.readInt();
+		for (int i = 0; i < speciesCount; i++) {
+			String name = in.readUTF();
+			int radius = in.readInt();
+			int speed = in.readInt();
+			double cohesion = in.readDouble();
+			double separation = in.readDouble();
+			double alignment = in.readDouble();
+			int neighbourLimit = in.readInt();
+			//The default species of each kind come first in every store, so the rest take the same places
+			Species species;
+			if (i <= FlockStore.STATIC_PREDATOR) {
+				species = store.getDefaultSpecies((byte) i);
+				species.set(radius, speed, cohesion, separation, alignment);
+			} else {
+				species = new Species(name, radius, speed, cohesion, separation, alignment);
+				store.indexOf(species);
+			}
+			species.setNeighbourLimit(neighbourLimit);
+		}
+		store.refreshSpecies();
+		boidCount = in.readInt();
+		flockingCount = in.readInt();
+		shared.readAppend(in);
+		own.readAppend(in);
+
+		int predators = 0;
+		for (int i = 0; i < shared.count; i++) {
+			if (shared.kinds[i] == FlockStore.PREDATOR) {
+				predators++;
+			}
+		}
+		preyDistances = new double[predators];
+		preyX = new double[predators];
+		preyY = new double[predators];
+		handoffs = new ShardRecords[layout.getTileCount()];
+		halos = new ShardRecords[layout.getTileCount()];
+		for (int i = 0; i < handoffs.length; i++) {
+			handoffs[i] = new ShardRecords();
+			halos[i] = new ShardRecords();
+		}
+	}
+
+	/**
+	 * Reads a STEP message: the boids eaten last tick, the prey each predator chases, and the
+	 * boids that have moved into this tile or are in its halo
+	 */
+	private void readStep(DataInputStream in) throws IOException {
+		largestRadius = in.readInt();
+		removals.read(in);
+		removals.apply();
+		own.renumber(removals);
+		shared.renumber(removals);
+		boidCount = removals.getBoidCountAfter();
+		flockingCount = removals.getFlockingCountAfter();
+
+		int predators = in.readInt();
+		if (predators != preyDistances.length) {
+			throw new IOException("Expected prey for " + preyDistances.length + " predators, not " + predators);
+		}
+		for (int i = 0; i < predators; i++) {
+			preyDistances[i] = in.readDouble();
+			preyX[i] = in.readDouble();
+			preyY[i] = in.readDouble();
+		}
+
+		//Both were sent before the removals were known, so they are renumbered in the same way
+		arrivals.clear();
+		arrivals.readAppend(in);
+		arrivals.renumber(removals);
+		for (int i = 0; i < arrivals.count; i++) {
+			own.addFrom(arrivals, i);
+		}
+		halo.clear();
+		halo.readAppend(in);
+		halo.renumber(removals);
+	}
+
+	/**
+	 * Runs one tick for the boids in this tile and the shared boids, in the same way as
+	 * FlockingEngine.tick, then removes any of this tile's boids that were eaten
+	 */
+	private void tick() {
+		fillStore();
+		store.snapshot();
+		grid.rebuild(store.getFrontXPositions(), store.getFrontYPositions(), store.size(), largestRadius);
+		store.sortNeighbourValues(grid);
+
+		for (int i = 0; i < own.count; i++) {
+			Boid boid = store.getBoid(ownSlots[i]);
+			boid.flee();
+			boid.flock(grid, scratch);
+			boid.hunt(grid);
+			boid.update(deltaTime);
+		}
+		for (int i = 0; i < shared.count; i++) {
+			Boid boid = store.getBoid(sharedSlots[i]);
+			boid.flee();
+			boid.flock(grid, scratch);
+			if (shared.kinds[i] == FlockStore.PREDATOR) {
+				//The nearest prey may belong to another tile, so the one found by the coordinator is chased
+				PredatorBoid predator = (PredatorBoid) boid;
+				int position = shared.kindPositions[i];
+				predator.catchPrey(grid);
+				predator.chase(preyDistances[position], preyX[position], preyY[position]);
+			} else {
+				boid.hunt(grid);
+			}
+			boid.update(deltaTime);
+		}
+		//Only the shared boids catch anything - boids caught in the halo are removed by their own tile
+		for (int i = 0; i < shared.count; i++) {
+			store.getBoid(sharedSlots[i]).applyEffects();
+		}
+
+		double[] x = store.getXPositions();
+		double[] y = store.getYPositions();
+		double[] headings = store.getHeadings();
+		long[] randomStates = store.getRandomStates();
+		for (int i = 0; i < shared.count; i++) {
+			int slot = sharedSlots[i];
+			shared.x[i] = x[slot];
+			shared.y[i] = y[slot];
+			shared.headings[i] = headings[slot];
+		}
+		eaten.clear(boidCount, flockingCount);
+		//Walked backwards, so the boid moved into a removed boid's place has already been copied
+		for (int i = own.count - 1; i >= 0; i--) {
+			int slot = ownSlots[i];
+			if (store.getBoid(slot).isEaten()) {
+				eaten.add(own.slots[i], own.kindPositions[i]);
+				own.remove(i);
+			} else {
+				own.x[i] = x[slot];
+				own.y[i] = y[slot];
+				own.headings[i] = headings[slot];
+				own.randomStates[i] = randomStates[slot];
+			}
+		}
+	}
+
+	/**
+	 * Replaces the boids in the store with the own, shared and halo boids, in the order of their
+	 * slots in the whole simulation
+	 */
+	private void fillStore() {
+		if (slotSources.length < boidCount) {
+			slotSources = new int[boidCount];
+		}
+		Arrays.fill(slotSources, 0, boidCount, -1);
+		markSources(own, OWN);
+		markSources(shared, SHARED);
+		markSources(halo, HALO);
+		if (ownSlots.length < own.count) {
+			ownSlots = new int[own.count * 2];
+		}
+		if (sharedSlots.length < shared.count) {
+			sharedSlots = new int[shared.count];
+		}
+		int total = own.count + shared.count + halo.count;
+		if (kindPositions.length < total) {
+			kindPositions = new int[total * 2];
+		}
+
+		engine.clear();
+		store.ensureCapacity(total);
+		for (int slot = 0; slot < boidCount; slot++) {
+			int source = slotSources[slot];
+			if (source < 0) {
+				continue;
+			}
+			ShardRecords records = source % 3 == OWN ? own : source % 3 == SHARED ? shared : halo;
+			int i = source / 3;
+			int storeSlot = store.size();
+			add(records.kinds[i], records.x[i], records.y[i]);
+			store.getHeadings()[storeSlot] = records.headings[i];
+			store.getSpeciesIndices()[storeSlot] = records.species[i];
+			store.getRandomStates()[storeSlot] = records.randomStates[i];
+			//Flocking boids only need an order of their own, but flee visits the predators in their saved order
+			kindPositions[storeSlot] = records.kinds[i] == FlockStore.FLOCKING ? store.count(FlockStore.FLOCKING) - 1
+					: records.kindPositions[i];
+			if (records == own) {
+				ownSlots[i] = storeSlot;
+			} else if (records == shared) {
+				sharedSlots[i] = storeSlot;
+			}
+		}
+		store.setKindPositions(kindPositions);
+	}
+
+	/**
+	 * Records which list each boid in a list of records comes from, by its slot in the simulation
+	 */
+	private void markSources(ShardRecords records, int source) {
+		for (int i = 0; i < records.count; i++) {
+			slotSources[records.slots[i]] = i * 3 + source;
+		}
+	}
+
+	/**
+	 * Adds a boid of a store kind to the end of the store
+	 */
+	private void add(byte kind, double xPos, double yPos) {
+		switch (kind) {
+		case FlockStore.FLOCKING:
+			engine.addFlockingBoid(xPos, yPos);
+			break;
+		case FlockStore.PREDATOR:
+			engine.addPredator(xPos, yPos);
+			break;
+		case FlockStore.FOOD:
+			engine.addFood(xPos, yPos);
+			break;
+		case FlockStore.STATIC_PREDATOR:
+			engine.addStaticPredator(xPos, yPos);
+			break;
+		default:
+			throw new IllegalStateException("Unknown boid kind: " + kind);
+		}
+	}
+
+	/**
+	 * Sends the coordinator the boids eaten this tick, the nearest of this tile's boids to each
+	 * predator, and the boids to hand off to other tiles or add to their halos
+	 */
+	private void report() throws IOException {
+		DataOutputStream out = link.getOutput();
+		int radius = 0;
+		for (int i = 0; i < own.count; i++) {
+			radius = Math.max(radius, store.getSpeciesRadius(own.species[i]));
+		}
+		out.writeInt(radius);
+		eaten.writeList(out);
+
+		//Found from where every boid is now, which is where the next tick will see them
+		ownGrid.rebuild(own.x, own.y, own.count, haloRadius);
+		out.writeInt(preyDistances.length);
+		for (int i = 0; i < shared.count; i++) {
+			if (shared.kinds[i] != FlockStore.PREDATOR) {
+				continue;
+			}
+			int prey = ownGrid.nearest(shared.x[i], shared.y[i], PredatorBoid.CATCH_DISTANCE, own.kinds, FlockStore.FLOCKING);
+			out.writeInt(shared.kindPositions[i]);
+			if (prey < 0) {
+				out.writeDouble(Double.POSITIVE_INFINITY);
+				out.writeDouble(0);
+				out.writeDouble(0);
+				out.writeInt(-1);
+			} else {
+				double dx = ownGrid.deltaX(shared.x[i], own.x[prey]);
+				double dy = ownGrid.deltaY(shared.y[i], own.y[prey]);
+				out.writeDouble(dx * dx + dy * dy);
+				out.writeDouble(dx);
+				out.writeDouble(dy);
+				out.writeInt(own.slots[prey]);
+			}
+		}
+
+		for (int i = 0; i < handoffs.length; i++) {
+			handoffs[i].clear();
+			halos[i].clear();
+		}
+		//Walked backwards, so the boid moved into a handed off boid's place has already been checked
+		for (int i = own.count - 1; i >= 0; i--) {
+			int owner = layout.tileOf(own.x[i], own.y[i]);
+			tiles.clear();
+			layout.haloTiles(own.x[i], own.y[i], haloRadius, tiles);
+			for (int t = 0; t < tiles.size(); t++) {
+				if (tiles.get(t) != owner) {
+					halos[tiles.get(t)].addFrom(own, i);
+				}
+			}
+			if (owner != tile) {
+				handoffs[owner].addFrom(own, i);
+				own.remove(i);
+			}
+		}
+		for (int i = 0; i < handoffs.length; i++) {
+			handoffs[i].write(out);
+			halos[i].write(out);
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,19 @@
+package simulation;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * A change to the simulation requested from outside the simulation thread, such as a button
+ * press adding a boid. Commands are posted with FlockingEngine.post and run on the simulation
+ * thread at the start of the next tick, so the thread posting them never waits for the boids.
+ */
+public interface SimulationCommand {
+	/**
+	 * Makes the change. Called on the simulation thread while it holds the boid list.
+	 *
+	 * @param engine the simulation to change
+	 */
+	void apply(FlockingEngine engine);
+}
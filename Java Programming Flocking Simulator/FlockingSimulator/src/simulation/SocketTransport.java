@@ -0,0 +1,85 @@
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * The default shard transport: each worker is a separate Java process, started with the same
+ * class path as this one, which connects back to the coordinator over a loopback TCP socket.
+ */
+public class SocketTransport implements ShardTransport {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Longest wait for a worker to start and connect, or to finish once stopped
+	private static final int TIMEOUT_MILLIS = 30000;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final List<Process> workers = new ArrayList<Process>();
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Starts the worker processes and waits for each to connect
+	 *
+	 * @param workerCount the number of workers to start
+	 * @return a link to each worker, in the order they connected
+	 * @throws IOException if a worker can't be started or doesn't connect in time
+	 */
+	public ShardLink[] open(int workerCount) throws IOException {
+		ShardLink[] links = new ShardLink[workerCount];
+		try (ServerSocket server = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout(TIMEOUT_MILLIS);
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			for (int i = 0; i < workerCount; i++) {
+				ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+						ShardWorker.class.getName(), "--port", Integer.toString(server.getLocalPort()));
+				//Workers print nothing unless they fail, which should be seen
+				builder.inheritIO();
+				workers.add(builder.start());
+			}
+			for (int i = 0; i < workerCount; i++) {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				links[i] = new ShardLink(socket.getInputStream(), socket.getOutputStream(), socket);
+			}
+		} catch (SocketTimeoutException e) {
+			close();
+			throw new IOException("Shard workers didn't connect within " + TIMEOUT_MILLIS / 1000 + " s");
+		}
+		return links;
+	}
+
+	/**
+	 * Waits for the worker processes to finish, ending any that don't
+	 */
+	public void close() throws IOException {
+		try {
+			for (Process worker : workers) {
+				if (!worker.waitFor(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+					worker.destroy();
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Process worker : workers) {
+				worker.destroy();
+			}
+			Thread.currentThread().interrupt();
+		}
+		workers.clear();
+	}
+}
@@ -0,0 +1,556 @@
+package simulation;
+
+import java.util.Arrays;
+
+import tools.IntList;
+import tools.NearestHeap;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Uniform grid used to find nearby boids without checking every boid in the simulation.
+ *
+ * <P>The grid is rebuilt once per frame from a snapshot of the boid positions. Boids are
+ * sorted into cells at least as large as the search radius (counting sort, so no per-cell
+ * lists are allocated), and a query only checks the cells overlapping the search circle.
+ * When wrapping is enabled the grid treats the world as a torus, matching Boid.screenBuffer,
+ * so boids near one edge find neighbours next to the opposite edge.
+ *
+ * <P>As well as finding every boid within a radius, the grid can find the nearest boid of a
+ * given kind by searching outwards ring by ring from the cell holding the search point, so
+ * the cost depends on how far away the nearest match is rather than on how many boids there are.
+ * The nearest few boids within a radius are found in the same way, into a NearestHeap.
+ *
+ * <P>Values handed to sortValues are copied into the same order as the cells, along with the
+ * positions, so the cells along a row of the grid sit next to each other in memory.
+ * sumNeighbours can then add up the values of every boid within a radius in one pass over a
+ * few unbroken runs of arrays, with no branches inside the loop, rather than listing the boids
+ * and looking each one up again.
+ */
+public class SpatialGrid {
+    // **************************************************
+    // Fields
+    // **************************************************
+	//Upper limit on the number of cells along each axis - stops tiny radii creating huge grids
+	private static final int MAX_CELLS_PER_AXIS = 512;
+	//Places in the array filled by sumNeighbours
+	public static final int SUM_X = 0;
+	public static final int SUM_Y = 1;
+	public static final int SUM_A = 2;
+	public static final int SUM_B = 3;
+	public static final int TAGS = 4;
+	public static final int SUM_COUNT = 5;
+
+	private final double width;
+	private final double height;
+	private final boolean wrap;
+
+	private int columns = 1;
+	private int rows = 1;
+	private double cellWidth;
+	private double cellHeight;
+
+	//Positions the grid was last built from - indices returned by queries refer to these
+	private double[] xs = new double[0];
+	private double[] ys = new double[0];
+	private int count = 0;
+
+	//cellStart[c] to cellStart[c + 1] is the range of cellEntries holding the boids in cell c
+	private int[] cellStart = new int[2];
+	private int[] cellCursor = new int[1];
+	private int[] cellEntries = new int[0];
+	private int[] cellOf = new int[0];
+
+	//Positions and values in the same order as cellEntries, filled by sortValues
+	private double[] sortedX = new double[0];
+	private double[] sortedY = new double[0];
+	private double[] sortedA = new double[0];
+	private double[] sortedB = new double[0];
+	private byte[] sortedTags = new byte[0];
+	private boolean valuesSorted = false;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create a grid covering the given area
+    *
+    * @param width the width of the world in pixels
+    * @param height the height of the world in pixels
+    * @param wrap true if boids near an edge should see boids on the opposite edge
+    */
+	public SpatialGrid(double width, double height, boolean wrap) {
+		this.width = width;
+		this.height = height;
+		this.wrap = wrap;
+		this.cellWidth = width;
+		this.cellHeight = height;
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Rebuilds the grid from arrays of positions. The arrays are referenced, not copied,
+	 * so they must not change until the grid has been queried.
+	 *
+	 * @param xPositions x position of each boid
+	 * @param yPositions y position of each boid
+	 * @param boidCount the number of positions to index
+	 * @param cellSize the minimum size of a cell, normally the largest search radius
+	 */
+	public void rebuild(double[] xPositions, double[] yPositions, int boidCount, double cellSize) {
+		this.xs = xPositions;
+		this.ys = yPositions;
+		this.count = boidCount;
+		valuesSorted = false;
+
+		//Cells are never smaller than the requested size, so a query only ever needs the surrounding cells
+		columns = cellsAlong(width, cellSize);
+		rows = cellsAlong(height, cellSize);
+		cellWidth = width / columns;
+		cellHeight = height / rows;
+
+		int cellCount = columns * rows;
+		if (cellStart.length < cellCount + 1) {
+			cellStart = new int[cellCount + 1];
+			cellCursor = new int[cellCount];
+		} else {
+			Arrays.fill(cellStart, 0, cellCount + 1, 0);
+		}
+		if (cellEntries.length < boidCount) {
+			cellEntries = new int[boidCount];
+			cellOf = new int[boidCount];
+		}
+
+		//Counting sort: count the boids in each cell, convert to start offsets, then place them
+		for (int i = 0; i < boidCount; i++) {
+			int cell = cellIndex(xPositions[i], yPositions[i]);
+			cellOf[i] = cell;
+			cellStart[cell + 1]++;
+		}
+		for (int c = 0; c < cellCount; c++) {
+			cellStart[c + 1] += cellStart[c];
+			cellCursor[c] = cellStart[c];
+		}
+		for (int i = 0; i < boidCount; i++) {
+			cellEntries[cellCursor[cellOf[i]]++] = i;
+		}
+	}
+
+	/**
+	 * Copies the positions and two values of every indexed boid into cell order, ready for
+	 * sumNeighbours. Must be called again after every rebuild.
+	 *
+	 * @param aValues the first value of each boid, indexed in the same way as the positions
+	 * @param bValues the second value of each boid, or null if only one value is needed
+	 * @param tags a tag from 0 to 31 for each boid (such as its kind), indexed in the same way
+	 */
+	public void sortValues(double[] aValues, double[] bValues, byte[] tags) {
+		if (sortedX.length < count) {
+			sortedX = new double[count];
+			sortedY = new double[count];
+			sortedA = new double[count];
+			sortedB = new double[count];
+			sortedTags = new byte[count];
+		}
+		for (int e = 0; e < count; e++) {
+			int i = cellEntries[e];
+			sortedX[e] = xs[i];
+			sortedY[e] = ys[i];
+			sortedA[e] = aValues[i];
+			sortedB[e] = bValues == null ? 0 : bValues[i];
+			sortedTags[e] = tags[i];
+		}
+		valuesSorted = true;
+	}
+
+	/**
+	 * Finds every indexed boid strictly within the radius of a point, as query does, and adds
+	 * up their values in the same pass. Positions are added relative to the point, taking the
+	 * shortest way around the world when wrapping is enabled. sortValues must have been called
+	 * since the last rebuild.
+	 *
+	 * <P>Every boid in the cells searched is added, multiplied by 1 if it is inside the radius
+	 * and 0 if not, so the loop has no branches to mispredict and the JIT is free to unroll it.
+	 * The sums come out in a different order from adding up the results of query, so they can
+	 * differ from it in the last bits.
+	 *
+	 * @param x x position of the centre of the search
+	 * @param y y position of the centre of the search
+	 * @param radius the radius in which to search for boids
+	 * @param skip index of a boid to leave out, normally the searching boid itself (-1 for none)
+	 * @param sums array of at least SUM_COUNT entries, filled with the sums of the x and y
+	 *             distances to the boids found and of their A and B values, and at TAGS the
+	 *             bits (1 << tag) of every tag found
+	 * @return the number of boids found
+	 */
+	public int sumNeighbours(double x, double y, double radius, int skip, double[] sums) {
+		sums[SUM_X] = 0;
+		sums[SUM_Y] = 0;
+		sums[SUM_A] = 0;
+		sums[SUM_B] = 0;
+		sums[TAGS] = 0;
+		if (!valuesSorted) {
+			throw new IllegalStateException("sortValues hasn't been called since the grid was rebuilt");
+		}
+		if (radius <= 0 || count == 0) {
+			return 0;
+		}
+		double radiusSq = radius * radius;
+		//Distances are wrapped by subtracting the nearest whole number of worlds, which is no world at all without wrapping
+		double wrapWidth = wrap ? width : 0;
+		double wrapHeight = wrap ? height : 0;
+		double inverseWidth = 1 / width;
+		double inverseHeight = 1 / height;
+
+		int minColumn = (int) Math.floor((x - radius) / cellWidth);
+		int maxColumn = (int) Math.floor((x + radius) / cellWidth);
+		int minRow = (int) Math.floor((y - radius) / cellHeight);
+		int maxRow = (int) Math.floor((y + radius) / cellHeight);
+		if (wrap) {
+			if (maxColumn - minColumn + 1 >= columns) {
+				minColumn = 0;
+				maxColumn = columns - 1;
+			}
+			if (maxRow - minRow + 1 >= rows) {
+				minRow = 0;
+				maxRow = rows - 1;
+			}
+		} else {
+			minColumn = clamp(minColumn, columns);
+			maxColumn = clamp(maxColumn, columns);
+			minRow = clamp(minRow, rows);
+			maxRow = clamp(maxRow, rows);
+		}
+
+		int found = 0;
+		int tags = 0;
+		double sumX = 0;
+		double sumY = 0;
+		double sumA = 0;
+		double sumB = 0;
+		int firstColumn = Math.floorMod(minColumn, columns);
+		//Can be past the last column when the search wraps around the side of the world
+		int lastColumn = firstColumn + maxColumn - minColumn;
+		for (int row = minRow; row <= maxRow; row++) {
+			int cellRow = Math.floorMod(row, rows) * columns;
+			//The cells of a row are next to each other in cellEntries, so each row is one run of
+			//boids, or two where the search wraps around
+			for (int run = 0; run < 2; run++) {
+				int from;
+				int to;
+				if (run == 0) {
+					from = cellStart[cellRow + firstColumn];
+					to = cellStart[cellRow + Math.min(lastColumn, columns - 1) + 1];
+				} else if (lastColumn >= columns) {
+					from = cellStart[cellRow];
+					to = cellStart[cellRow + lastColumn - columns + 1];
+				} else {
+					break;
+				}
+				for (int e = from; e < to; e++) {
+					double xDistance = sortedX[e] - x;
+					double yDistance = sortedY[e] - y;
+					xDistance -= wrapWidth * Math.rint(xDistance * inverseWidth);
+					yDistance -= wrapHeight * Math.rint(yDistance * inverseHeight);
+					int inside = (xDistance * xDistance + yDistance * yDistance < radiusSq) & (cellEntries[e] != skip) ? 1 : 0;
+					double weight = inside;
+					sumX += weight * xDistance;
+					sumY += weight * yDistance;
+					sumA += weight * sortedA[e];
+					sumB += weight * sortedB[e];
+					found += inside;
+					tags |= (1 << sortedTags[e]) & -inside;
+				}
+			}
+		}
+		sums[SUM_X] = sumX;
+		sums[SUM_Y] = sumY;
+		sums[SUM_A] = sumA;
+		sums[SUM_B] = sumB;
+		sums[TAGS] = tags;
+		return found;
+	}
+
+	/**
+	 * Finds every indexed boid strictly within the radius of a point. The boid at the point
+	 * itself is included, so callers should skip their own index.
+	 *
+	 * @param x x position of the centre of the search
+	 * @param y y position of the centre of the search
+	 * @param radius the radius in which to search for boids
+	 * @param result list the indices of boids found are appended to
+	 */
+	public void query(double x, double y, double radius, IntList result) {
+		if (radius <= 0 || count == 0) {
+			return;
+		}
+		double radiusSq = radius * radius;
+
+		int minColumn = (int) Math.floor((x - radius) / cellWidth);
+		int maxColumn = (int) Math.floor((x + radius) / cellWidth);
+		int minRow = (int) Math.floor((y - radius) / cellHeight);
+		int maxRow = (int) Math.floor((y + radius) / cellHeight);
+
+		if (wrap) {
+			//If the search covers the whole axis every cell is visited once, otherwise cells wrap around
+			if (maxColumn - minColumn + 1 >= columns) {
+				minColumn = 0;
+				maxColumn = columns - 1;
+			}
+			if (maxRow - minRow + 1 >= rows) {
+				minRow = 0;
+				maxRow = rows - 1;
+			}
+		} else {
+			minColumn = clamp(minColumn, columns);
+			maxColumn = clamp(maxColumn, columns);
+			minRow = clamp(minRow, rows);
+			maxRow = clamp(maxRow, rows);
+		}
+
+		for (int row = minRow; row <= maxRow; row++) {
+			int cellRow = Math.floorMod(row, rows) * columns;
+			for (int column = minColumn; column <= maxColumn; column++) {
+				int cell = cellRow + Math.floorMod(column, columns);
+				for (int e = cellStart[cell]; e < cellStart[cell + 1]; e++) {
+					int j = cellEntries[e];
+					double xDistance = deltaX(x, xs[j]);
+					double yDistance = deltaY(y, ys[j]);
+					if (xDistance * xDistance + yDistance * yDistance < radiusSq) {
+						result.add(j);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the nearest indexed boid with the given tag that is at least a minimum distance
+	 * from a point, searching outwards one ring of cells at a time until no closer boid is possible
+	 *
+	 * @param x x position of the centre of the search
+	 * @param y y position of the centre of the search
+	 * @param minRadius boids closer than this are ignored
+	 * @param tags a tag for each indexed boid (such as its kind), indexed in the same way as the positions
+	 * @param tag the tag a boid must have to be found
+	 * @return the index of the nearest matching boid, or -1 if there is none
+	 */
+	public int nearest(double x, double y, double minRadius, byte[] tags, byte tag) {
+		if (count == 0) {
+			return -1;
+		}
+		int column = (int) Math.floor(x / cellWidth);
+		int row = (int) Math.floor(y / cellHeight);
+		if (!wrap) {
+			column = clamp(column, columns);
+			row = clamp(row, rows);
+		}
+		double minRadiusSq = minRadius * minRadius;
+		double smallestCell = Math.min(cellWidth, cellHeight);
+		int nearestIndex = -1;
+		double nearestSq = Double.POSITIVE_INFINITY;
+
+		//Once every cell is covered there is nothing left to search
+		int lastRing = Math.max(columns, rows);
+		for (int ring = 0; ring <= lastRing; ring++) {
+			//Every boid in this ring is at least (ring - 1) cells away, so stop if that is further than the best so far
+			double reach = (ring - 1) * smallestCell;
+			if (nearestIndex >= 0 && reach > 0 && reach * reach >= nearestSq) {
+				break;
+			}
+			for (int dRow = -ring; dRow <= ring; dRow++) {
+				//The top and bottom rows of the ring are searched in full, the rows between only at each end
+				int step = (dRow == -ring || dRow == ring) ? 1 : 2 * ring;
+				for (int dColumn = -ring; dColumn <= ring; dColumn += step) {
+					int cellRow = row + dRow;
+					int cellColumn = column + dColumn;
+					if (wrap) {
+						cellRow = Math.floorMod(cellRow, rows);
+						cellColumn = Math.floorMod(cellColumn, columns);
+					} else if (cellRow < 0 || cellRow >= rows || cellColumn < 0 || cellColumn >= columns) {
+						continue;
+					}
+					int cell = cellRow * columns + cellColumn;
+					for (int e = cellStart[cell]; e < cellStart[cell + 1]; e++) {
+						int j = cellEntries[e];
+						if (tags[j] == tag) {
+							double xDistance = deltaX(x, xs[j]);
+							double yDistance = deltaY(y, ys[j]);
+							double distanceSq = xDistance * xDistance + yDistance * yDistance;
+							if (distanceSq >= minRadiusSq && distanceSq < nearestSq) {
+								nearestSq = distanceSq;
+								nearestIndex = j;
+							}
+						}
+					}
+				}
+			}
+		}
+		return nearestIndex;
+	}
+
+	/**
+	 * Finds the nearest indexed boids strictly within the radius of a point, as many as the
+	 * heap keeps. Rings of cells are searched outwards from the cell holding the point, and
+	 * the search stops once the heap is full and no boid in the next ring could be nearer than
+	 * the furthest one kept, so in a crowd only the cells close to the point are checked.
+	 *
+	 * <P>Where a wrapping grid is too small for the rings to reach the radius without coming
+	 * round to the same cells again, every boid is checked instead.
+	 *
+	 * @param x x position of the centre of the search
+	 * @param y y position of the centre of the search
+	 * @param radius the radius in which to search for boids
+	 * @param skip index of a boid to leave out (the searching boid itself), or -1
+	 * @param heap heap the boids found are offered to - cleared to the number wanted beforehand
+	 */
+	public void nearestWithin(double x, double y, double radius, int skip, NearestHeap heap) {
+		if (radius <= 0 || count == 0) {
+			return;
+		}
+		double radiusSq = radius * radius;
+		double smallestCell = Math.min(cellWidth, cellHeight);
+		//Boids in ring r are at least (r - 1) cells away, so no ring past this one can be within the radius
+		int lastRing = (int) Math.floor(radius / smallestCell) + 1;
+		if (wrap && 2 * lastRing + 1 > Math.min(columns, rows)) {
+			for (int j = 0; j < count; j++) {
+				double xDistance = deltaX(x, xs[j]);
+				double yDistance = deltaY(y, ys[j]);
+				double distanceSq = xDistance * xDistance + yDistance * yDistance;
+				if (distanceSq < radiusSq && j != skip) {
+					heap.offer(j, distanceSq);
+				}
+			}
+			return;
+		}
+
+		int column = (int) Math.floor(x / cellWidth);
+		int row = (int) Math.floor(y / cellHeight);
+		if (!wrap) {
+			column = clamp(column, columns);
+			row = clamp(row, rows);
+		}
+		for (int ring = 0; ring <= lastRing; ring++) {
+			double reach = (ring - 1) * smallestCell;
+			if (reach > 0 && reach * reach >= heap.getFurthestSq()) {
+				break;
+			}
+			for (int dRow = -ring; dRow <= ring; dRow++) {
+				//The top and bottom rows of the ring are searched in full, the rows between only at each end
+				int step = (dRow == -ring || dRow == ring) ? 1 : 2 * ring;
+				for (int dColumn = -ring; dColumn <= ring; dColumn += step) {
+					int cellRow = row + dRow;
+					int cellColumn = column + dColumn;
+					if (wrap) {
+						cellRow = Math.floorMod(cellRow, rows);
+						cellColumn = Math.floorMod(cellColumn, columns);
+					} else if (cellRow < 0 || cellRow >= rows || cellColumn < 0 || cellColumn >= columns) {
+						continue;
+					}
+					int cell = cellRow * columns + cellColumn;
+					for (int e = cellStart[cell]; e < cellStart[cell + 1]; e++) {
+						int j = cellEntries[e];
+						double xDistance = deltaX(x, xs[j]);
+						double yDistance = deltaY(y, ys[j]);
+						double distanceSq = xDistance * xDistance + yDistance * yDistance;
+						if (distanceSq < radiusSq && j != skip) {
+							heap.offer(j, distanceSq);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calculates the x distance from one position to another, taking the shortest way
+	 * around the world when wrapping is enabled
+	 *
+	 * @param fromX the x position to measure from
+	 * @param toX the x position to measure to
+	 * @return the signed x distance
+	 */
+	public double deltaX(double fromX, double toX) {
+		return wrapDistance(toX - fromX, width);
+	}
+
+	/**
+	 * Calculates the y distance from one position to another, taking the shortest way
+	 * around the world when wrapping is enabled
+	 *
+	 * @param fromY the y position to measure from
+	 * @param toY the y position to measure to
+	 * @return the signed y distance
+	 */
+	public double deltaY(double fromY, double toY) {
+		return wrapDistance(toY - fromY, height);
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	private double wrapDistance(double distance, double size) {
+		if (wrap) {
+			if (distance > size / 2) {
+				distance -= size;
+			} else if (distance < -size / 2) {
+				distance += size;
+			}
+		}
+		return distance;
+	}
+
+	private int cellIndex(double x, double y) {
+		int column = (int) Math.floor(x / cellWidth);
+		int row = (int) Math.floor(y / cellHeight);
+		if (wrap) {
+			//Boids sitting exactly on the far edge belong with those on the near edge
+			column = Math.floorMod(column, columns);
+			row = Math.floorMod(row, rows);
+		} else {
+			column = clamp(column, columns);
+			row = clamp(row, rows);
+		}
+		return row * columns + column;
+	}
+
+	private static int cellsAlong(double size, double cellSize) {
+		if (!(cellSize > 0)) {
+			return 1;
+		}
+		int cells = (int) Math.min(size / cellSize, MAX_CELLS_PER_AXIS);
+		return Math.max(cells, 1);
+	}
+
+	private static int clamp(int cell, int cells) {
+		return Math.min(Math.max(cell, 0), cells - 1);
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public double getWidth() {
+		return width;
+	}
+
+	public double getHeight() {
+		return height;
+	}
+
+	public boolean isWrapping() {
+		return wrap;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	//True once sortValues has been called since the last rebuild
+	public boolean hasSortedValues() {
+		return valuesSorted;
+	}
+}
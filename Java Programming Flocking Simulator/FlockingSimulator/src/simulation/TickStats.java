@@ -0,0 +1,341 @@
+package simulation;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import boid.FlockStore;
+import boid.NeighbourCache;
+import tools.LatencyHistogram;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Timers and counters for each phase of a frame, published over JMX and optionally printed
+ * at a fixed interval.
+ *
+ * <P>The engine times the phases of tick(), and the scheduler's wait for the boid list's lock
+ * is added to the same lock wait as the engine's. The GUI's render thread times drawing a frame
+ * and the event thread times painting it. Statistics are off by default: every timing point
+ * checks isEnabled() first, so a disabled tick only pays for that check. While they are on,
+ * the flee, flock, hunt and update behaviours are run as separate passes so each can be timed,
+ * which costs a little extra when the tick is spread across threads.
+ */
+public class TickStats implements TickStatsMBean {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Snapshot of the store and rebuild of the spatial grid
+	public static final int INDEX = 0;
+	public static final int FLEE = 1;
+	public static final int FLOCK = 2;
+	public static final int HUNT = 3;
+	public static final int UPDATE = 4;
+	//Applying catches and removing eaten boids
+	public static final int EAT = 5;
+	//Filling a frame from the render state on the render thread
+	public static final int DRAW = 6;
+	//Canvas.paint, run on the Swing event thread
+	public static final int PAINT = 7;
+	//Waits for the boid list's lock by tick() and by the scheduler publishing a render state
+	public static final int LOCK_WAIT = 8;
+	//The whole of tick(), from taking the lock to the end of the eat phase
+	public static final int TICK = 9;
+	private static final String[] PHASE_NAMES = { "index", "flee", "flock", "hunt", "update", "eat", "draw",
+			"paint", "lock wait", "tick" };
+	public static final String OBJECT_NAME = "simulation:type=TickStats";
+	//Period the tick rate is measured over
+	private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final LatencyHistogram[] phases = new LatencyHistogram[PHASE_NAMES.length];
+	private volatile boolean enabled = false;
+	//Counters below are only written by the thread running the simulation
+	private volatile long ticks;
+	private volatile double ticksPerSecond;
+	private volatile long rateWindowStart;
+	private volatile long rateWindowTicks;
+	private volatile double neighboursPerBoid;
+	private volatile int flockingBoids;
+	private volatile int predators;
+	private volatile int food;
+	private volatile int staticPredators;
+	private volatile int canvasLines;
+	private volatile long neighbourListRebuilds;
+	private volatile double neighbourListHitRate;
+	private volatile boolean neighbourLists;
+	private ScheduledExecutorService logger;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create empty, disabled statistics
+    */
+	public TickStats() {
+		for (int i = 0; i < phases.length; i++) {
+			phases[i] = new LatencyHistogram();
+		}
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Records the time since an earlier timestamp against a phase. Callers check isEnabled()
+	 * before taking the timestamp.
+	 *
+	 * @param phase the phase, one of the phase constants
+	 * @param since the System.nanoTime() the phase started at
+	 * @return the current System.nanoTime(), ready to time the next phase
+	 */
+	public long lap(int phase, long since) {
+		long now = System.nanoTime();
+		phases[phase].record(now - since);
+		return now;
+	}
+
+	/**
+	 * Publishes the statistics on the platform MBean server as OBJECT_NAME. Only one set is
+	 * published at a time - registering replaces any set published before.
+	 *
+	 * @throws IllegalStateException if the MBean server refuses the statistics
+	 */
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			throw new IllegalStateException("Tick statistics could not be published: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Prints the summary to standard output at a fixed interval, on a background thread
+	 *
+	 * @param periodSeconds the time between summaries
+	 */
+	public synchronized void startLogging(long periodSeconds) {
+		stopLogging();
+		logger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "Tick stats logger");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		logger.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				System.out.print(getSummary());
+			}
+		}, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops printing the summary, if startLogging was called
+	 */
+	public synchronized void stopLogging() {
+		if (logger != null) {
+			logger.shutdown();
+			logger = null;
+		}
+	}
+
+	public String getSummary() {
+		StringBuilder summary = new StringBuilder();
+		summary.append(String.format("Tick %d: %.1f ticks/s, %d flocking, %d predators, %d food, %d static predators, "
+				+ "%.1f neighbours per flocking boid, %d canvas lines%n", ticks, ticksPerSecond, flockingBoids,
+				predators, food, staticPredators, neighboursPerBoid, canvasLines));
+		if (neighbourLists) {
+			summary.append(String.format("Neighbour lists: built %d times, %.1f%% of flocking boid ticks reused one%n",
+					neighbourListRebuilds, neighbourListHitRate * 100));
+		}
+		summary.append(String.format("%-10s %10s %10s %10s %10s %10s%n", "phase", "count", "mean us", "p50 us",
+				"p99 us", "max us"));
+		for (int i = 0; i < phases.length; i++) {
+			LatencyHistogram phase = phases[i];
+			//Phases that never ran (paint in the headless runner, for example) are left out
+			if (phase.getCount() > 0) {
+				summary.append(String.format("%-10s %10d %10.1f %10.1f %10.1f %10.1f%n", PHASE_NAMES[i],
+						phase.getCount(), phase.getMean() / 1e3, phase.getPercentile(0.5) / 1e3,
+						phase.getPercentile(0.99) / 1e3, phase.getMax() / 1e3));
+			}
+		}
+		return summary.toString();
+	}
+
+	public void reset() {
+		for (LatencyHistogram phase : phases) {
+			phase.reset();
+		}
+		ticks = 0;
+		ticksPerSecond = 0;
+		rateWindowStart = 0;
+		rateWindowTicks = 0;
+	}
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	/**
+	 * Records the end of a tick: the time the whole tick took, the population of each kind
+	 * and the tick rate
+	 *
+	 * @param store the store the tick ran on
+	 * @param tickStart the System.nanoTime() the tick took the lock at
+	 */
+	void endTick(FlockStore store, long tickStart) {
+		long now = lap(TICK, tickStart);
+		flockingBoids = store.count(FlockStore.FLOCKING);
+		predators = store.count(FlockStore.PREDATOR);
+		food = store.count(FlockStore.FOOD);
+		staticPredators = store.count(FlockStore.STATIC_PREDATOR);
+		NeighbourCache cache = store.getNeighbourCache();
+		neighbourLists = cache != null;
+		if (cache != null) {
+			neighbourListRebuilds = cache.getRebuilds();
+			neighbourListHitRate = cache.getHitRate();
+		}
+
+		long tickTotal = ++ticks;
+		if (rateWindowStart == 0) {
+			rateWindowStart = now;
+			rateWindowTicks = tickTotal;
+		} else if (now - rateWindowStart >= RATE_WINDOW_NANOS) {
+			ticksPerSecond = (tickTotal - rateWindowTicks) * 1e9 / (now - rateWindowStart);
+			rateWindowStart = now;
+			rateWindowTicks = tickTotal;
+		}
+	}
+
+	/**
+	 * Records how many neighbours the flocking boids found this tick
+	 *
+	 * @param neighbours the total found by all flocking boids
+	 * @param boids the number of flocking boids
+	 */
+	void recordNeighbours(long neighbours, int boids) {
+		neighboursPerBoid = boids == 0 ? 0 : (double) neighbours / boids;
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	private double[] percentileMicros(double fraction) {
+		double[] values = new double[phases.length];
+		for (int i = 0; i < phases.length; i++) {
+			values[i] = phases[i].getPercentile(fraction) / 1e3;
+		}
+		return values;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	//Histogram for a phase, so code outside the engine (the Canvas, for example) can record into it
+	public LatencyHistogram getHistogram(int phase) {
+		return phases[phase];
+	}
+
+	public void setCanvasLines(int canvasLines) {
+		this.canvasLines = canvasLines;
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+
+	public double getTicksPerSecond() {
+		return ticksPerSecond;
+	}
+
+	public double getNeighboursPerBoid() {
+		return neighboursPerBoid;
+	}
+
+	public int getFlockingBoids() {
+		return flockingBoids;
+	}
+
+	public int getPredators() {
+		return predators;
+	}
+
+	public int getFood() {
+		return food;
+	}
+
+	public int getStaticPredators() {
+		return staticPredators;
+	}
+
+	public long getNeighbourListRebuilds() {
+		return neighbourListRebuilds;
+	}
+
+	public double getNeighbourListHitRate() {
+		return neighbourListHitRate;
+	}
+
+	public int getCanvasLines() {
+		return canvasLines;
+	}
+
+	public String[] getPhaseNames() {
+		return PHASE_NAMES.clone();
+	}
+
+	public long[] getPhaseCounts() {
+		long[] counts = new long[phases.length];
+		for (int i = 0; i < phases.length; i++) {
+			counts[i] = phases[i].getCount();
+		}
+		return counts;
+	}
+
+	public double[] getMeanMicros() {
+		double[] means = new double[phases.length];
+		for (int i = 0; i < phases.length; i++) {
+			means[i] = phases[i].getMean() / 1e3;
+		}
+		return means;
+	}
+
+	public double[] getMedianMicros() {
+		return percentileMicros(0.5);
+	}
+
+	public double[] getP99Micros() {
+		return percentileMicros(0.99);
+	}
+
+	public double[] getMaxMicros() {
+		double[] maxima = new double[phases.length];
+		for (int i = 0; i < phases.length; i++) {
+			maxima[i] = phases[i].getMax() / 1e3;
+		}
+		return maxima;
+	}
+}
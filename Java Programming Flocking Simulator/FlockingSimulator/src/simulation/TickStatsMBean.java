@@ -0,0 +1,55 @@
+package simulation;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Management interface for TickStats, shown by JMX tools such as JConsole and VisualVM under
+ * simulation:type=TickStats.
+ *
+ * <P>The per-phase arrays all follow the order of getPhaseNames(). Times are in microseconds.
+ */
+public interface TickStatsMBean {
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	long getTicks();
+
+	double getTicksPerSecond();
+
+	double getNeighboursPerBoid();
+
+	int getFlockingBoids();
+
+	int getPredators();
+
+	int getFood();
+
+	int getStaticPredators();
+
+	//Times the Verlet neighbour lists have been built, and the share of flocking boid ticks that reused one (0 when off)
+	long getNeighbourListRebuilds();
+
+	double getNeighbourListHitRate();
+
+	//Lines and stamped shapes in the last frame drawn
+	int getCanvasLines();
+
+	String[] getPhaseNames();
+
+	long[] getPhaseCounts();
+
+	double[] getMeanMicros();
+
+	double[] getMedianMicros();
+
+	double[] getP99Micros();
+
+	double[] getMaxMicros();
+
+	String getSummary();
+
+	void reset();
+}
@@ -0,0 +1,133 @@
+package simulation;
+
+import tools.IntList;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Cuts the world into a grid of equal tiles for a simulation spread over shard workers, one
+ * worker to a tile. Tiles are numbered along each row in turn, starting from the top left.
+ *
+ * <P>The world wraps around in the same way as the boids do, so the tiles on one edge are next
+ * to the tiles on the opposite edge. A boid belongs to the tile its position is in, and boids
+ * sitting exactly on the far edge of the world (where Boid.screenBuffer can put them) belong to
+ * the last tile along it.
+ */
+public class TileLayout {
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final double width;
+	private final double height;
+	private final int columns;
+	private final int rows;
+	private final double tileWidth;
+	private final double tileHeight;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create a layout of tiles
+    *
+    * @param width the width of the world in pixels
+    * @param height the height of the world in pixels
+    * @param columns the number of tiles across the world
+    * @param rows the number of tiles down the world
+    */
+	public TileLayout(double width, double height, int columns, int rows) {
+		if (columns < 1 || rows < 1) {
+			throw new IllegalArgumentException("Need at least one tile each way: " + columns + "x" + rows);
+		}
+		this.width = width;
+		this.height = height;
+		this.columns = columns;
+		this.rows = rows;
+		this.tileWidth = width / columns;
+		this.tileHeight = height / rows;
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Reads a layout written as columns x rows, such as "2x2"
+	 *
+	 * @param tiles the layout
+	 * @param width the width of the world in pixels
+	 * @param height the height of the world in pixels
+	 * @return the layout
+	 * @throws IllegalArgumentException if the layout can't be read
+	 */
+	public static TileLayout parse(String tiles, double width, double height) {
+		String[] parts = tiles.toLowerCase().split("x");
+		if (parts.length != 2) {
+			throw new IllegalArgumentException("Tiles should be given as columns x rows, such as 2x2: " + tiles);
+		}
+		return new TileLayout(width, height, Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+	}
+
+	/**
+	 * Finds the tile a position belongs to
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @return the number of the tile
+	 */
+	public int tileOf(double x, double y) {
+		int column = Math.min(Math.max((int) Math.floor(x / tileWidth), 0), columns - 1);
+		int row = Math.min(Math.max((int) Math.floor(y / tileHeight), 0), rows - 1);
+		return row * columns + column;
+	}
+
+	/**
+	 * Finds every tile that overlaps the square reaching a distance either side of a position,
+	 * which includes every tile with a point closer to the position than the distance. Each
+	 * tile is listed once, even where the square wraps all the way round the world.
+	 *
+	 * @param x the x position
+	 * @param y the y position
+	 * @param distance how far either side of the position to look
+	 * @param tiles list the numbers of the tiles found are appended to
+	 */
+	public void haloTiles(double x, double y, double distance, IntList tiles) {
+		int minColumn = (int) Math.floor((x - distance) / tileWidth);
+		int maxColumn = (int) Math.floor((x + distance) / tileWidth);
+		int minRow = (int) Math.floor((y - distance) / tileHeight);
+		int maxRow = (int) Math.floor((y + distance) / tileHeight);
+		//A square wider than the world would come round to the same tiles again
+		maxColumn = Math.min(maxColumn, minColumn + columns - 1);
+		maxRow = Math.min(maxRow, minRow + rows - 1);
+		for (int row = minRow; row <= maxRow; row++) {
+			int tileRow = Math.floorMod(row, rows) * columns;
+			for (int column = minColumn; column <= maxColumn; column++) {
+				tiles.add(tileRow + Math.floorMod(column, columns));
+			}
+		}
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public double getWidth() {
+		return width;
+	}
+
+	public double getHeight() {
+		return height;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getTileCount() {
+		return columns * rows;
+	}
+}
@@ -0,0 +1,101 @@
+package simulation;
+
+import java.util.Arrays;
+
+import boid.FlockStore;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * The id, position, heading and kind of every boid in one frame of a recorded run.
+ *
+ * <P>Frames are reused: the recorder copies each tick into a free frame, and a replay decodes
+ * into whichever frame it is given, so the arrays only grow when a frame holds more boids than
+ * it has before.
+ */
+public class TrajectoryFrame {
+    // **************************************************
+    // Fields
+    // **************************************************
+	long tick;
+	int count;
+	int[] ids = new int[0];
+	double[] xPositions = new double[0];
+	double[] yPositions = new double[0];
+	double[] headings = new double[0]; //radians
+	byte[] kinds = new byte[0];
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Copies the current state of every boid in a store into this frame. The store must not
+	 * change while it is copied.
+	 *
+	 * @param store the store to copy
+	 * @param tickCount the tick the state belongs to
+	 */
+	public void copyFrom(FlockStore store, long tickCount) {
+		resize(store.size());
+		tick = tickCount;
+		for (int i = 0; i < count; i++) {
+			ids[i] = store.getBoid(i).getId();
+		}
+		System.arraycopy(store.getXPositions(), 0, xPositions, 0, count);
+		System.arraycopy(store.getYPositions(), 0, yPositions, 0, count);
+		System.arraycopy(store.getHeadings(), 0, headings, 0, count);
+		System.arraycopy(store.getKinds(), 0, kinds, 0, count);
+	}
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	/**
+	 * Sets the number of boids in the frame, growing the arrays if they are too small
+	 *
+	 * @param boidCount the number of boids
+	 */
+	void resize(int boidCount) {
+		if (ids.length < boidCount) {
+			ids = Arrays.copyOf(ids, boidCount);
+			xPositions = Arrays.copyOf(xPositions, boidCount);
+			yPositions = Arrays.copyOf(yPositions, boidCount);
+			headings = Arrays.copyOf(headings, boidCount);
+			kinds = Arrays.copyOf(kinds, boidCount);
+		}
+		count = boidCount;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public long getTick() {
+		return tick;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getId(int index) {
+		return ids[index];
+	}
+
+	public double getX(int index) {
+		return xPositions[index];
+	}
+
+	public double getY(int index) {
+		return yPositions[index];
+	}
+
+	public double getHeading(int index) {
+		return headings[index];
+	}
+
+	public byte getKind(int index) {
+		return kinds[index];
+	}
+}
@@ -0,0 +1,286 @@
+package simulation;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Records the id, position, heading and kind of every boid at the end of each tick to a file
+ * that can be played back with TrajectoryReplay.
+ *
+ * <P>record() only copies the boids into a free frame and queues it - quantising the values
+ * and writing them into the memory-mapped file happens on a background thread. If the writer
+ * falls behind, record() waits for a frame to be freed rather than dropping frames.
+ *
+ * <P>File format (little endian): the int MAGIC, the int format version, the world width and
+ * height (doubles), then one block per frame - the int FRAME_MARKER, the tick (long), the number
+ * of boids (int), and the columns id (int), x, y, heading (unsigned shorts) and kind (byte).
+ * Positions are stored as fractions of the world size and headings as fractions of a full turn,
+ * both in 65535ths, so a boid takes 11 bytes. close() adds an index of where each frame starts,
+ * followed by the index position (long), the number of frames (int) and MAGIC. Each frame can be
+ * decoded on its own, so with the index any frame can be read without reading the ones before it.
+ */
+public class TrajectoryRecorder {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	static final int MAGIC = 0x464C5452; //"FLTR"
+	static final int VERSION = 1;
+	static final int FRAME_MARKER = 0x4652414D; //"FRAM"
+	static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+	static final int FRAME_HEADER_SIZE = 4 + 8 + 4;
+	static final int BYTES_PER_BOID = 4 + 2 + 2 + 2 + 1;
+	static final int TRAILER_SIZE = 8 + 4 + 4;
+	private static final double STEPS = 65535;
+	//Amount of the file mapped at a time
+	private static final int REGION_SIZE = 64 << 20;
+	//Number of frames that can wait to be written before record() has to wait
+	private static final int QUEUE_LENGTH = 8;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final FileChannel channel;
+	private final double width;
+	private final double height;
+	private final BlockingQueue<TrajectoryFrame> freeFrames = new ArrayBlockingQueue<TrajectoryFrame>(QUEUE_LENGTH);
+	//One more place than there are frames, for the marker that tells the writer to stop
+	private final BlockingQueue<TrajectoryFrame> pendingFrames = new ArrayBlockingQueue<TrajectoryFrame>(QUEUE_LENGTH + 1);
+	private final TrajectoryFrame endMarker = new TrajectoryFrame();
+	private final Thread writer;
+	private volatile IOException failure;
+	private boolean closed = false;
+
+	//Only used by the writer thread until it has finished
+	private MappedByteBuffer region;
+	private long regionStart;
+	private long position;
+	private long[] frameOffsets = new long[1024];
+	private int frameCount = 0;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to create a recorder writing to a new file, replacing any existing one
+    *
+    * @param file the file to record to
+    * @param width the width of the world, used to scale the stored x positions
+    * @param height the height of the world, used to scale the stored y positions
+    * @throws IOException if the file can't be created
+    */
+	public TrajectoryRecorder(Path file, double width, double height) throws IOException {
+		this.width = width;
+		this.height = height;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		ByteBuffer header = reserve(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putDouble(width);
+		header.putDouble(height);
+		position += HEADER_SIZE;
+
+		for (int i = 0; i < QUEUE_LENGTH; i++) {
+			freeFrames.add(new TrajectoryFrame());
+		}
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeFrames();
+			}
+		}, "Trajectory writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Records the current state of a simulation. Called at the end of each tick - frames
+	 * recorded after close() are ignored.
+	 *
+	 * @param engine the simulation to record
+	 * @throws IOException if writing an earlier frame failed, or the thread was interrupted
+	 */
+	public synchronized void record(FlockingEngine engine) throws IOException {
+		if (closed) {
+			return;
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		TrajectoryFrame frame;
+		try {
+			frame = freeFrames.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the trajectory writer");
+		}
+		synchronized (engine.getBoids()) {
+			frame.copyFrom(engine.getStore(), engine.getTickCount());
+		}
+		pendingFrames.add(frame);
+	}
+
+	/**
+	 * Waits for every recorded frame to be written, then adds the frame index and closes the file
+	 *
+	 * @throws IOException if any frame or the index couldn't be written
+	 */
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		boolean interrupted = false;
+		while (true) {
+			try {
+				pendingFrames.put(endMarker);
+				writer.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		try {
+			if (failure == null) {
+				//The mapped region runs past the last frame, so the file is cut back before the index is added
+				region.force();
+				region = null;
+				channel.truncate(position);
+				ByteBuffer index = ByteBuffer.allocate(frameCount * 8 + TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				for (int i = 0; i < frameCount; i++) {
+					index.putLong(frameOffsets[i]);
+				}
+				index.putLong(position);
+				index.putInt(frameCount);
+				index.putInt(MAGIC);
+				index.flip();
+				while (index.hasRemaining()) {
+					channel.write(index, position + index.position());
+				}
+			}
+		} finally {
+			channel.close();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+    // **************************************************
+    // Package methods
+    // **************************************************
+	static int quantisePosition(double value, double size) {
+		long steps = Math.round(value / size * STEPS);
+		return (int) Math.min(Math.max(steps, 0), (long) STEPS);
+	}
+
+	static double positionOf(int steps, double size) {
+		return steps * size / STEPS;
+	}
+
+	static int quantiseHeading(double radians) {
+		double turns = radians / (2 * Math.PI);
+		turns -= Math.floor(turns);
+		return (int) Math.round(turns * (STEPS + 1)) & 0xFFFF;
+	}
+
+	static double headingOf(int steps) {
+		return steps * (2 * Math.PI / (STEPS + 1));
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Run by the writer thread: writes queued frames until the end marker arrives. After a
+	 * failure frames are still taken from the queue, so record() never waits forever.
+	 */
+	private void writeFrames() {
+		while (true) {
+			TrajectoryFrame frame;
+			try {
+				frame = pendingFrames.take();
+			} catch (InterruptedException e) {
+				//Only close() stops the writer, so the frames already queued are never lost
+				continue;
+			}
+			if (frame == endMarker) {
+				return;
+			}
+			if (failure == null) {
+				try {
+					write(frame);
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+			freeFrames.add(frame);
+		}
+	}
+
+	private void write(TrajectoryFrame frame) throws IOException {
+		int count = frame.count;
+		ByteBuffer out = reserve(FRAME_HEADER_SIZE + count * BYTES_PER_BOID);
+		out.putInt(FRAME_MARKER);
+		out.putLong(frame.tick);
+		out.putInt(count);
+		for (int i = 0; i < count; i++) {
+			out.putInt(frame.ids[i]);
+		}
+		for (int i = 0; i < count; i++) {
+			out.putShort((short) quantisePosition(frame.xPositions[i], width));
+		}
+		for (int i = 0; i < count; i++) {
+			out.putShort((short) quantisePosition(frame.yPositions[i], height));
+		}
+		for (int i = 0; i < count; i++) {
+			out.putShort((short) quantiseHeading(frame.headings[i]));
+		}
+		out.put(frame.kinds, 0, count);
+
+		if (frameCount == frameOffsets.length) {
+			frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+		}
+		frameOffsets[frameCount++] = position;
+		position += FRAME_HEADER_SIZE + count * BYTES_PER_BOID;
+	}
+
+	/**
+	 * Makes sure the next bytes of the file are mapped, mapping a new region starting at the
+	 * current position if they aren't
+	 *
+	 * @param bytes the number of bytes about to be written
+	 * @return the mapped region, positioned at the current end of the file
+	 */
+	private ByteBuffer reserve(int bytes) throws IOException {
+		if (region == null || position + bytes > regionStart + region.capacity()) {
+			if (region != null) {
+				region.force();
+			}
+			regionStart = position;
+			region = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(REGION_SIZE, bytes));
+			region.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		region.position((int) (position - regionStart));
+		return region;
+	}
+}
@@ -0,0 +1,231 @@
+package simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import boid.FlockStore;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Reads back a file written by TrajectoryRecorder, one frame at a time in any order.
+ *
+ * <P>The start of every frame is read from the index at the end of the file, so reading frame
+ * n costs the same as reading frame 0. If the recording was never closed (the program was
+ * killed, for example) there is no index, and it is rebuilt by stepping from frame to frame.
+ * The file is read through a memory-mapped window that is moved when a frame falls outside it.
+ */
+public class TrajectoryReplay implements Closeable {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Amount of the file mapped at a time
+	private static final int WINDOW_SIZE = 64 << 20;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final FileChannel channel;
+	private final long fileSize;
+	private final double width;
+	private final double height;
+	private final long[] frameOffsets;
+	private ByteBuffer window;
+	private long windowStart;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Constructor to open a recording
+    *
+    * @param file the file written by TrajectoryRecorder
+    * @throws IOException if the file can't be read, isn't a recording or is a newer version
+    */
+	public TrajectoryReplay(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			fileSize = channel.size();
+			if (fileSize < TrajectoryRecorder.HEADER_SIZE) {
+				throw new IOException("Not a flocking simulation recording: " + file);
+			}
+			ByteBuffer header = map(0, TrajectoryRecorder.HEADER_SIZE);
+			if (header.getInt(0) != TrajectoryRecorder.MAGIC) {
+				throw new IOException("Not a flocking simulation recording: " + file);
+			}
+			int version = header.getInt(4);
+			if (version > TrajectoryRecorder.VERSION) {
+				throw new IOException("Recording version " + version + " is newer than this program supports");
+			}
+			width = header.getDouble(8);
+			height = header.getDouble(16);
+
+			long[] offsets = readIndex();
+			frameOffsets = offsets != null ? offsets : scanFrames();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Decodes a frame, replacing the contents of a frame object
+	 *
+	 * @param index the frame to read, from 0 to getFrameCount() - 1
+	 * @param into the frame to decode into
+	 * @throws IOException if the frame can't be read or is corrupt
+	 * @throws IndexOutOfBoundsException if there is no frame with that index
+	 */
+	public void readFrame(int index, TrajectoryFrame into) throws IOException {
+		if (index < 0 || index >= frameOffsets.length) {
+			throw new IndexOutOfBoundsException("Frame " + index + " of " + frameOffsets.length);
+		}
+		long offset = frameOffsets[index];
+		ByteBuffer header = map(offset, TrajectoryRecorder.FRAME_HEADER_SIZE);
+		int start = (int) (offset - windowStart);
+		long tick = header.getLong(start + 4);
+		int count = header.getInt(start + 12);
+		//A frame too big to map in one go can only come from a corrupt count
+		if (header.getInt(start) != TrajectoryRecorder.FRAME_MARKER || count < 0
+				|| count > (Integer.MAX_VALUE - TrajectoryRecorder.FRAME_HEADER_SIZE) / TrajectoryRecorder.BYTES_PER_BOID) {
+			throw new IOException("Recording is corrupt at frame " + index);
+		}
+
+		ByteBuffer in = map(offset, TrajectoryRecorder.FRAME_HEADER_SIZE + count * TrajectoryRecorder.BYTES_PER_BOID);
+		in.position((int) (offset - windowStart) + TrajectoryRecorder.FRAME_HEADER_SIZE);
+		into.resize(count);
+		into.tick = tick;
+		for (int i = 0; i < count; i++) {
+			into.ids[i] = in.getInt();
+		}
+		for (int i = 0; i < count; i++) {
+			into.xPositions[i] = TrajectoryRecorder.positionOf(in.getShort() & 0xFFFF, width);
+		}
+		for (int i = 0; i < count; i++) {
+			into.yPositions[i] = TrajectoryRecorder.positionOf(in.getShort() & 0xFFFF, height);
+		}
+		for (int i = 0; i < count; i++) {
+			into.headings[i] = TrajectoryRecorder.headingOf(in.getShort() & 0xFFFF);
+		}
+		in.get(into.kinds, 0, count);
+		for (int i = 0; i < count; i++) {
+			if (into.kinds[i] < FlockStore.FLOCKING || into.kinds[i] > FlockStore.STATIC_PREDATOR) {
+				throw new IOException("Recording is corrupt: unknown boid kind " + into.kinds[i]);
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Reads the frame index written when the recording was closed
+	 *
+	 * @return the start of every frame, or null if the file has no index
+	 */
+	private long[] readIndex() throws IOException {
+		int trailerSize = TrajectoryRecorder.TRAILER_SIZE;
+		if (fileSize < TrajectoryRecorder.HEADER_SIZE + trailerSize) {
+			return null;
+		}
+		ByteBuffer trailer = map(fileSize - trailerSize, trailerSize);
+		int start = (int) (fileSize - trailerSize - windowStart);
+		long indexOffset = trailer.getLong(start);
+		int frameCount = trailer.getInt(start + 8);
+		if (trailer.getInt(start + 12) != TrajectoryRecorder.MAGIC || frameCount < 0
+				|| indexOffset + frameCount * 8L + trailerSize != fileSize) {
+			return null;
+		}
+
+		long[] offsets = new long[frameCount];
+		ByteBuffer index = ByteBuffer.allocate(frameCount * 8).order(ByteOrder.LITTLE_ENDIAN);
+		while (index.hasRemaining()) {
+			if (channel.read(index, indexOffset + index.position()) < 0) {
+				throw new IOException("Recording index is truncated");
+			}
+		}
+		index.flip();
+		index.asLongBuffer().get(offsets);
+		return offsets;
+	}
+
+	/**
+	 * Finds the start of every frame by stepping through them, for a recording with no index.
+	 * Stops at the first frame that is missing or incomplete.
+	 *
+	 * @return the start of every whole frame
+	 */
+	private long[] scanFrames() throws IOException {
+		long[] offsets = new long[1024];
+		int frameCount = 0;
+		long offset = TrajectoryRecorder.HEADER_SIZE;
+		while (offset + TrajectoryRecorder.FRAME_HEADER_SIZE <= fileSize) {
+			ByteBuffer header = map(offset, TrajectoryRecorder.FRAME_HEADER_SIZE);
+			int start = (int) (offset - windowStart);
+			int count = header.getInt(start + 12);
+			if (header.getInt(start) != TrajectoryRecorder.FRAME_MARKER || count < 0) {
+				break;
+			}
+			long end = offset + TrajectoryRecorder.FRAME_HEADER_SIZE + (long) count * TrajectoryRecorder.BYTES_PER_BOID;
+			if (end > fileSize) {
+				break;
+			}
+			if (frameCount == offsets.length) {
+				offsets = Arrays.copyOf(offsets, frameCount * 2);
+			}
+			offsets[frameCount++] = offset;
+			offset = end;
+		}
+		return Arrays.copyOf(offsets, frameCount);
+	}
+
+	/**
+	 * Makes sure part of the file is mapped, moving the window to start there if it isn't
+	 *
+	 * @param offset the position of the first byte needed
+	 * @param bytes the number of bytes needed
+	 * @return the mapped window, which starts at windowStart
+	 */
+	private ByteBuffer map(long offset, int bytes) throws IOException {
+		if (offset + bytes > fileSize) {
+			throw new IOException("Recording is truncated");
+		}
+		if (window == null || offset < windowStart || offset + bytes > windowStart + window.capacity()) {
+			windowStart = offset;
+			long length = Math.min(Math.max(WINDOW_SIZE, bytes), fileSize - offset);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return window;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public int getFrameCount() {
+		return frameOffsets.length;
+	}
+
+	public double getWidth() {
+		return width;
+	}
+
+	public double getHeight() {
+		return height;
+	}
+}
@@ -0,0 +1,86 @@
+package tools;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Approximate trigonometry for the vector steering mode, trading a little accuracy for speed.
+ *
+ * <P>sin and cos are read from a table with linear interpolation (error below 3e-7) and
+ * atan2 uses a polynomial (error below 1.2e-5 radians, about 0.0007 degrees), which are both
+ * far smaller than the random turn added to every boid each frame.
+ */
+public class FastTrig {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	private static final int TABLE_SIZE = 4096;
+	private static final double TABLE_STEPS_PER_RADIAN = TABLE_SIZE / (2 * Math.PI);
+	//One extra entry so the interpolation never needs to wrap around the end of the table
+	private static final double[] SINE_TABLE = new double[TABLE_SIZE + 1];
+
+	static {
+		for (int i = 0; i <= TABLE_SIZE; i++) {
+			SINE_TABLE[i] = Math.sin(i / TABLE_STEPS_PER_RADIAN);
+		}
+	}
+
+    // **************************************************
+    // Methods
+    // **************************************************
+	/**
+	 * Approximates the sine of an angle
+	 *
+	 * @param radians the angle, of any size
+	 * @return the sine of the angle
+	 */
+	public static double sin(double radians) {
+		double position = radians * TABLE_STEPS_PER_RADIAN;
+		double floor = Math.floor(position);
+		//Masking the whole number of steps wraps negative and very large angles into the table
+		int index = (int) ((long) floor & (TABLE_SIZE - 1));
+		double fraction = position - floor;
+		return SINE_TABLE[index] + (SINE_TABLE[index + 1] - SINE_TABLE[index]) * fraction;
+	}
+
+	/**
+	 * Approximates the cosine of an angle
+	 *
+	 * @param radians the angle, of any size
+	 * @return the cosine of the angle
+	 */
+	public static double cos(double radians) {
+		return sin(radians + Math.PI / 2);
+	}
+
+	/**
+	 * Approximates Math.atan2, taking the arguments in the same order
+	 *
+	 * @param y the first argument of Math.atan2
+	 * @param x the second argument of Math.atan2
+	 * @return the angle in radians, between -PI and PI
+	 */
+	public static double atan2(double y, double x) {
+		double absX = Math.abs(x);
+		double absY = Math.abs(y);
+		if (absX == 0 && absY == 0) {
+			return 0;
+		}
+		//Polynomial is only accurate between 0 and 1, so the result is mirrored into the right octant
+		double ratio = Math.min(absX, absY) / Math.max(absX, absY);
+		double squared = ratio * ratio;
+		double angle = ratio * (0.9998660 + squared * (-0.3302995
+				+ squared * (0.1801410 + squared * (-0.0851330 + squared * 0.0208351))));
+		if (absY > absX) {
+			angle = Math.PI / 2 - angle;
+		}
+		if (x < 0) {
+			angle = Math.PI - angle;
+		}
+		if (y < 0) {
+			angle = -angle;
+		}
+		return angle;
+	}
+}
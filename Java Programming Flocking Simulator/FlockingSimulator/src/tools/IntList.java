@@ -0,0 +1,96 @@
+package tools;
+
+import java.util.Arrays;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Growable list of primitive ints - used to hold boid indices without boxing.
+ * The backing array is kept when the list is cleared so it can be reused every frame.
+ */
+public class IntList {
+    // **************************************************
+    // Fields
+    // **************************************************
+	private int[] values;
+	private int size;
+
+    // **************************************************
+    // Constructors
+    // **************************************************
+    /**
+    * Default constructor to create a list with a small initial capacity
+    */
+	public IntList() {
+		this(16);
+	}
+
+    /**
+    * Constructor to create a list with the given initial capacity
+    *
+    * @param capacity the number of values the list can hold before growing
+    */
+	public IntList(int capacity) {
+		values = new int[Math.max(capacity, 1)];
+		size = 0;
+	}
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Appends a value to the end of the list, growing the backing array if needed
+	 *
+	 * @param value the value to append
+	 */
+	public void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	/**
+	 * Grows the backing array so the list can hold a number of values without growing again
+	 *
+	 * @param capacity the number of values the list must be able to hold
+	 */
+	public void ensureCapacity(int capacity) {
+		if (values.length < capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	/**
+	 * Removes the value at the end of the list
+	 *
+	 * @return the value removed
+	 */
+	public int removeLast() {
+		return values[--size];
+	}
+
+	/**
+	 * Empties the list without releasing the backing array
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public int get(int index) {
+		return values[index];
+	}
+
+	public void set(int index, int value) {
+		values[index] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,140 @@
+package tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Histogram of durations in nanoseconds that any number of threads can add to without locking.
+ *
+ * <P>Each power of two is split into 8 buckets, so a percentile is accurate to within about 6%
+ * of its value whether it is 50 nanoseconds or 5 seconds. Recording a value is a few atomic
+ * additions and never creates objects. Readers see a slightly blurred picture if values are
+ * recorded or the histogram is reset while they read, which is fine for monitoring.
+ */
+public class LatencyHistogram {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    // **************************************************
+    // Fields
+    // **************************************************
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Adds a duration to the histogram
+	 *
+	 * @param nanos the duration in nanoseconds (negative values count as 0)
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		long currentMax = max.get();
+		while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Finds the duration that a given fraction of the recorded durations are no longer than
+	 *
+	 * @param fraction the fraction, between 0 and 1 (0.99 for the 99th percentile)
+	 * @return the middle of the bucket holding that duration in nanoseconds, or 0 if nothing
+	 *         has been recorded
+	 */
+	public long getPercentile(double fraction) {
+		long recorded = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			recorded += buckets.get(i);
+		}
+		if (recorded == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(fraction * recorded));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= target) {
+				//Reported as the middle of the bucket, but never above the largest value seen
+				return Math.min(lowestIn(i) + (widthOf(i) - 1) / 2, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Empties the histogram
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Finds the bucket for a duration: values below 8 have a bucket each, and above that
+	 * the bucket is picked by the highest set bit and the three bits after it
+	 */
+	private static int bucketOf(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int highestBit = 63 - Long.numberOfLeadingZeros(nanos);
+		int shift = highestBit - SUB_BUCKET_BITS;
+		int subBucket = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long lowestIn(int bucket) {
+		int shift = bucket / SUB_BUCKETS - 1;
+		if (shift < 0) {
+			return bucket;
+		}
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+	}
+
+	private static long widthOf(int bucket) {
+		int shift = bucket / SUB_BUCKETS - 1;
+		return shift < 0 ? 1 : 1L << shift;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public long getCount() {
+		return count.get();
+	}
+
+	//Mean duration in nanoseconds, or 0 if nothing has been recorded
+	public double getMean() {
+		long recorded = count.get();
+		return recorded == 0 ? 0 : (double) total.get() / recorded;
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+}
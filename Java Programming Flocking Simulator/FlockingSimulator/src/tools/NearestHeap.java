@@ -0,0 +1,148 @@
+package tools;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Keeps the nearest few of a stream of boid indices, each offered with its squared distance.
+ *
+ * <P>The indices are held in a max-heap on distance, so the furthest one kept is always at the
+ * top and an offer that is further away than it is turned down straight away. Offering n boids
+ * to a heap that keeps k costs at most n log k, and nothing is created after the heap is made,
+ * so one heap can be reused every frame. The indices kept are in heap order until sort() puts
+ * them nearest first.
+ */
+public class NearestHeap {
+    // **************************************************
+    // Fields
+    // **************************************************
+	private int[] indices = new int[0];
+	private double[] distancesSq = new double[0];
+	private int limit = 0;
+	private int size = 0;
+	private boolean sorted = false;
+
+    // **************************************************
+    // Public methods
+    // **************************************************
+	/**
+	 * Empties the heap and sets how many indices it keeps, growing the arrays if needed
+	 *
+	 * @param limit the number of nearest indices to keep
+	 */
+	public void clear(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Heap must keep at least one index: " + limit);
+		}
+		if (indices.length < limit) {
+			indices = new int[limit];
+			distancesSq = new double[limit];
+		}
+		this.limit = limit;
+		size = 0;
+		sorted = false;
+	}
+
+	/**
+	 * Offers an index to the heap, which keeps it if the heap isn't full or if it is nearer
+	 * than the furthest index kept (which is then dropped)
+	 *
+	 * @param index the index of the boid
+	 * @param distanceSq the squared distance to the boid
+	 */
+	public void offer(int index, double distanceSq) {
+		if (sorted) {
+			throw new IllegalStateException("Heap has been sorted - clear it before offering more");
+		}
+		if (size < limit) {
+			//Added at the bottom and moved up past any nearer parents
+			int child = size++;
+			while (child > 0) {
+				int parent = (child - 1) / 2;
+				if (distancesSq[parent] >= distanceSq) {
+					break;
+				}
+				indices[child] = indices[parent];
+				distancesSq[child] = distancesSq[parent];
+				child = parent;
+			}
+			indices[child] = index;
+			distancesSq[child] = distanceSq;
+		} else if (distanceSq < distancesSq[0]) {
+			//Replaces the furthest at the top
+			siftDown(index, distanceSq, size);
+		}
+	}
+
+	/**
+	 * Puts the indices kept in order, nearest first, by taking the furthest off the top of
+	 * the heap one at a time. Nothing more can be offered until the heap is cleared.
+	 */
+	public void sort() {
+		for (int end = size - 1; end > 0; end--) {
+			int index = indices[end];
+			double distanceSq = distancesSq[end];
+			indices[end] = indices[0];
+			distancesSq[end] = distancesSq[0];
+			siftDown(index, distanceSq, end);
+		}
+		sorted = true;
+	}
+
+    // **************************************************
+    // Private methods
+    // **************************************************
+	/**
+	 * Puts an index at the top of the heap and moves it down past any further children
+	 *
+	 * @param index the index to put in
+	 * @param distanceSq its squared distance
+	 * @param end the number of positions the heap takes up
+	 */
+	private void siftDown(int index, double distanceSq, int end) {
+		int parent = 0;
+		while (true) {
+			int child = 2 * parent + 1;
+			if (child >= end) {
+				break;
+			}
+			if (child + 1 < end && distancesSq[child + 1] > distancesSq[child]) {
+				child++;
+			}
+			if (distancesSq[child] <= distanceSq) {
+				break;
+			}
+			indices[parent] = indices[child];
+			distancesSq[parent] = distancesSq[child];
+			parent = child;
+		}
+		indices[parent] = index;
+		distancesSq[parent] = distanceSq;
+	}
+
+    // **************************************************
+    // Getters/setters
+    // **************************************************
+	public int size() {
+		return size;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public boolean isFull() {
+		return size == limit;
+	}
+
+	//Index at a position in the heap, from 0 to size() - 1
+	public int get(int position) {
+		return indices[position];
+	}
+
+	//Squared distance of the furthest index kept, or infinity while the heap isn't full - only before sort()
+	public double getFurthestSq() {
+		return size < limit ? Double.POSITIVE_INFINITY : distancesSq[0];
+	}
+}
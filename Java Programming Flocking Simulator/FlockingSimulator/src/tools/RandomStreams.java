@@ -0,0 +1,87 @@
+package tools;
+
+/**
+ * @author Y3848937
+ */
+
+/**
+ * Independent random number streams whose whole state is a single long, so a stream can be
+ * kept in a primitive array next to the rest of a boid's state.
+ *
+ * <P>Each stream is a SplitMix64 generator (the algorithm behind java.util.SplittableRandom).
+ * The starting state of stream n is worked out from the master seed and n alone, so a stream
+ * never depends on how many numbers other streams have drawn or on which thread draws them.
+ * Drawing a number only touches the one array entry it is given, so streams in the same array
+ * can be used from different threads as long as each entry is only used by one thread at a time.
+ */
+public class RandomStreams {
+    // **************************************************
+    // Definitions
+    // **************************************************
+	//Odd constant added to the state for every number drawn (2^64 divided by the golden ratio)
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+	private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+    // **************************************************
+    // Methods
+    // **************************************************
+	/**
+	 * Works out the starting state of a stream
+	 *
+	 * @param masterSeed the seed shared by every stream in a simulation
+	 * @param stream the number of the stream
+	 * @return the state to store for the stream
+	 */
+	public static long streamState(long masterSeed, long stream) {
+		return mix(masterSeed ^ mix((stream + 1) * GAMMA));
+	}
+
+	/**
+	 * Draws a random long from a stream, advancing the stream
+	 *
+	 * @param states the array holding the stream's state
+	 * @param index the position of the stream in the array
+	 * @return a random long, with every value equally likely
+	 */
+	public static long nextLong(long[] states, int index) {
+		long state = states[index] + GAMMA;
+		states[index] = state;
+		return mix(state);
+	}
+
+	/**
+	 * Draws a random double from a stream, advancing the stream
+	 *
+	 * @param states the array holding the stream's state
+	 * @param index the position of the stream in the array
+	 * @return a random double from 0 (inclusive) to 1 (exclusive)
+	 */
+	public static double nextDouble(long[] states, int index) {
+		return (nextLong(states, index) >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * Draws a random int below a bound from a stream, advancing the stream
+	 *
+	 * @param states the array holding the stream's state
+	 * @param index the position of the stream in the array
+	 * @param bound the upper bound (exclusive), greater than 0
+	 * @return a random int from 0 to bound - 1
+	 */
+	public static int nextInt(long[] states, int index, int bound) {
+		//The top 31 bits are scaled to the bound rather than taking a remainder, which needs no division
+		return (int) (((nextLong(states, index) >>> 33) * bound) >>> 31);
+	}
+
+	/**
+	 * Scrambles the bits of a long so that nearby inputs give unrelated outputs
+	 *
+	 * @param value the value to scramble
+	 * @return the scrambled value
+	 */
+	public static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+}